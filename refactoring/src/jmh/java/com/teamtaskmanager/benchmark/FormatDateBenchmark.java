@@ -0,0 +1,34 @@
+package com.teamtaskmanager.benchmark;
+
+import com.teamtaskmanager.utilities.FormatDate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FormatDateBenchmark {
+
+    private final String text = "2525-08-26";
+
+    private final LocalDate date = LocalDate.of(2525, 8, 26);
+
+    @Benchmark
+    public LocalDate toDate() {
+        return FormatDate.toDate(text);
+    }
+
+    @Benchmark
+    public String format() {
+        return FormatDate.format(date);
+    }
+
+}
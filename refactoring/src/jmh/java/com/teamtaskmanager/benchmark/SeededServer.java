@@ -0,0 +1,113 @@
+package com.teamtaskmanager.benchmark;
+
+import com.teamtaskmanager.Server;
+import com.teamtaskmanager.model.Task;
+import com.teamtaskmanager.repositories.TaskRepository;
+import com.teamtaskmanager.service.TaskService;
+import com.teamtaskmanager.service.UserService;
+import com.teamtaskmanager.utilities.FormatDate;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The application, without the web server, over the chosen store engine seeded with tasks spread evenly across
+ * users, due dates and topics, a quarter of them completed
+ */
+@State(Scope.Benchmark)
+public class SeededServer {
+
+    private static final LocalDate FIRST_DUE = LocalDate.of(2525, 1, 1);
+
+    private static final int SEED_CHUNK = 10000;
+
+    @Param({"1000", "100000", "1000000"})
+    public int tasks;
+
+    @Param({"10", "1000", "100000"})
+    public int users;
+
+    /**
+     * The taskstore.engine - run with -p engine=memory,log,jpa to compare them
+     */
+    @Param({"jpa"})
+    public String engine;
+
+    public ConfigurableApplicationContext context;
+
+    public TaskService taskService;
+
+    public UserService userService;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        // a fresh journal each trial, for the log engine
+        Path journal = Files.createTempDirectory("taskmanager-journal");
+        context = new SpringApplicationBuilder(Server.class)
+                .web(WebApplicationType.NONE)
+                .properties("logging.level.root=WARN", "taskstore.engine=" + engine,
+                        "application.journal.dir=" + journal)
+                .run();
+        taskService = context.getBean(TaskService.class);
+        userService = context.getBean(UserService.class);
+
+        Map<String, Long> userIds = userService.getOrCreateUserIds(
+                IntStream.range(0, users).mapToObj(SeededServer::userName).collect(Collectors.toList()));
+
+        TaskRepository repository = context.getBean(TaskRepository.class);
+        for (int from = 0; from < tasks; from += SEED_CHUNK) {
+            List<Task> chunk = new ArrayList<>(SEED_CHUNK);
+            for (int i = from; i != Math.min(tasks, from + SEED_CHUNK); i++) {
+                chunk.add(new Task(userIds.get(userName(i % users)), text(i), due(i), i % 4 == 0));
+            }
+            repository.persistAll(chunk);
+        }
+        // the tasks went straight into the store, so the indexes haven't seen them
+        taskService.reindex();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    /**
+     * @return the description of task i - its number, and one of 1000 topics
+     */
+    public static String text(int i) {
+        return "task " + i + " about topic" + (i % 1000);
+    }
+
+    public static String userName(int i) {
+        return "user" + i;
+    }
+
+    /**
+     * @return a due date spread over three years, so a dateAfter in the middle selects about half of the tasks
+     */
+    public static LocalDate due(int i) {
+        return FIRST_DUE.plusDays((i * 7919L) % 1095);
+    }
+
+    public static String middleDue() {
+        return FormatDate.format(FIRST_DUE.plusDays(547));
+    }
+
+}
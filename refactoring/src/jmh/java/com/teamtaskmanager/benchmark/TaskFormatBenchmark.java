@@ -0,0 +1,91 @@
+package com.teamtaskmanager.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.teamtaskmanager.dto.TaskColumnsDTO;
+import com.teamtaskmanager.dto.TaskDTO;
+import com.teamtaskmanager.utilities.FormatDate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The CPU and the bytes on the wire of each format a search can be answered in - JSON, column by column JSON and
+ * Smile, each as it is and gzipped as the server compresses it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TaskFormatBenchmark {
+
+    @Param({"10000"})
+    public int tasks;
+
+    @Param({"false", "true"})
+    public boolean gzip;
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+
+    private final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+
+    private List<TaskDTO> dtos;
+
+    @Setup
+    public void setup() {
+        dtos = new ArrayList<>(tasks);
+        for (int i = 0; i != tasks; i++) {
+            TaskDTO dto = new TaskDTO();
+            dto.id = (long) i;
+            dto.user = SeededServer.userName(i % 100);
+            dto.task = "task " + i;
+            dto.due = FormatDate.format(SeededServer.due(i));
+            dto.isCompleted = i % 4 == 0;
+            dtos.add(dto);
+        }
+    }
+
+    @Benchmark
+    public byte[] json() throws IOException {
+        return write(jsonMapper, dtos);
+    }
+
+    @Benchmark
+    public byte[] jsonColumns() throws IOException {
+        return write(jsonMapper, TaskColumnsDTO.of(dtos));
+    }
+
+    @Benchmark
+    public byte[] smile() throws IOException {
+        return write(smileMapper, dtos);
+    }
+
+    @Benchmark
+    public byte[] smileColumns() throws IOException {
+        return write(smileMapper, TaskColumnsDTO.of(dtos));
+    }
+
+    private byte[] write(ObjectMapper mapper, Object value) throws IOException {
+        if (!gzip) {
+            return mapper.writeValueAsBytes(value);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream compressed = new GZIPOutputStream(out)) {
+            mapper.writeValue(compressed, value);
+        }
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.teamtaskmanager.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.teamtaskmanager.dto.TaskDTO;
+import com.teamtaskmanager.utilities.FormatDate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializing TaskDTOs to JSON, with a shared mapper and with a new mapper per call as the controller used to
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TaskJsonBenchmark {
+
+    @Param({"1", "1000", "10000"})
+    public int tasks;
+
+    private final ObjectMapper sharedMapper = new ObjectMapper();
+
+    private List<TaskDTO> dtos;
+
+    @Setup
+    public void setup() {
+        dtos = new ArrayList<>(tasks);
+        for (int i = 0; i != tasks; i++) {
+            TaskDTO dto = new TaskDTO();
+            dto.id = (long) i;
+            dto.user = SeededServer.userName(i % 100);
+            dto.task = "task " + i;
+            dto.due = FormatDate.format(SeededServer.due(i));
+            dto.isCompleted = i % 4 == 0;
+            dtos.add(dto);
+        }
+    }
+
+    @Benchmark
+    public byte[] sharedMapper() throws JsonProcessingException {
+        return sharedMapper.writeValueAsBytes(dtos);
+    }
+
+    @Benchmark
+    public byte[] newMapperPerCall() throws JsonProcessingException {
+        return new ObjectMapper().writeValueAsBytes(dtos);
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.teamtaskmanager.benchmark;
+
+import com.teamtaskmanager.dto.TaskDTO;
+import com.teamtaskmanager.model.Task;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TaskService.taskToDTO for a single task, which resolves its user name through the user name cache
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TaskMappingBenchmark {
+
+    private Task task;
+
+    @Setup
+    public void setup(SeededServer server) {
+        task = new Task(server.userService.findUserId(SeededServer.userName(1)), "task", SeededServer.due(1), false);
+        task.id = 1L;
+    }
+
+    @Benchmark
+    public TaskDTO taskToDTO(SeededServer server) {
+        return server.taskService.taskToDTO(task);
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.teamtaskmanager.benchmark;
+
+import com.teamtaskmanager.dto.TaskDTO;
+import com.teamtaskmanager.search.TaskSort;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TaskService.search across combinations of filters and sorts
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TaskSearchBenchmark {
+
+    @Param({"none", "user", "dateAfter", "includeCompleted", "user,dateAfter,includeCompleted"})
+    public String filter;
+
+    @Param({"id", "due:desc", "user,due:desc"})
+    public String sortBy;
+
+    private String user;
+
+    private String dateAfter;
+
+    private Boolean includeCompleted;
+
+    private TaskSort sort;
+
+    @Setup
+    public void setup() {
+        user = filter.contains("user") ? SeededServer.userName(1) : null;
+        dateAfter = filter.contains("dateAfter") ? SeededServer.middleDue() : null;
+        includeCompleted = filter.contains("includeCompleted");
+        sort = TaskSort.parse(sortBy);
+    }
+
+    @Benchmark
+    public List<TaskDTO> search(SeededServer server) {
+        return server.taskService.search(user, dateAfter, null, null, null, null, sort, includeCompleted);
+    }
+
+    @Benchmark
+    public List<TaskDTO> firstPage(SeededServer server) {
+        return server.taskService.searchPage(user, dateAfter, null, null, null, null, sort, includeCompleted, null, 100).tasks;
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.teamtaskmanager.benchmark;
+
+import com.teamtaskmanager.dto.TaskDTO;
+import com.teamtaskmanager.search.TaskSort;
+import com.teamtaskmanager.utilities.FormatDate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing sortBy and sorting DTOs in memory with the compiled comparator - what replaced TaskService.sort and
+ * selectField
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TaskSortBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int tasks;
+
+    @Param({"id", "due:desc", "user,due:desc", "task,user:desc,due"})
+    public String sortBy;
+
+    private List<TaskDTO> dtos;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        dtos = new ArrayList<>(tasks);
+        for (int i = 0; i != tasks; i++) {
+            TaskDTO dto = new TaskDTO();
+            dto.id = (long) i;
+            dto.user = SeededServer.userName(random.nextInt(1000));
+            dto.task = "task " + random.nextInt(tasks);
+            dto.due = FormatDate.format(SeededServer.due(random.nextInt()));
+            dtos.add(dto);
+        }
+        Collections.shuffle(dtos, random);
+    }
+
+    @Benchmark
+    public TaskSort parse() {
+        return TaskSort.parse(sortBy);
+    }
+
+    @Benchmark
+    public List<TaskDTO> sort() {
+        List<TaskDTO> sorted = new ArrayList<>(dtos);
+        sorted.sort(TaskSort.parse(sortBy).comparator());
+        return sorted;
+    }
+
+}
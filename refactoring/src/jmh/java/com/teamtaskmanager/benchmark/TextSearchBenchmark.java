@@ -0,0 +1,58 @@
+package com.teamtaskmanager.benchmark;
+
+import com.teamtaskmanager.dto.TaskDTO;
+import com.teamtaskmanager.search.TaskSort;
+import com.teamtaskmanager.search.TaskTextIndex;
+import com.teamtaskmanager.search.TextQuery;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches of the task descriptions - a phrase matching one task, a word in a thousandth of them, a prefix of
+ * words in about a ninth, and one of those words together with a word in every task
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TextSearchBenchmark {
+
+    @Param({"\"task 777\"", "topic7", "topic7*", "task topic7"})
+    public String q;
+
+    private TextQuery query;
+
+    private TaskSort sort;
+
+    private TaskTextIndex index;
+
+    @Setup
+    public void setup(SeededServer server) {
+        index = server.context.getBean(TaskTextIndex.class);
+        query = TextQuery.parse(q);
+        sort = TaskSort.parse("due:desc");
+    }
+
+    /**
+     * Only the index
+     */
+    @Benchmark
+    public long[] match() {
+        return index.search(query);
+    }
+
+    @Benchmark
+    public List<TaskDTO> firstPage(SeededServer server) {
+        return server.taskService.searchPage(null, null, null, null, null, q, sort, true, null, 100).tasks;
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.teamtaskmanager.benchmark;
+
+import com.teamtaskmanager.model.User;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UserService.getOrCreateUser for users that already exist, from one thread and from several at once
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserServiceBenchmark {
+
+    @Benchmark
+    public User getOrCreateUser(SeededServer server) {
+        return server.userService.getOrCreateUser(SeededServer.userName(ThreadLocalRandom.current().nextInt(server.users)));
+    }
+
+    @Benchmark
+    public Long getOrCreateUserId(SeededServer server) {
+        return server.userService.getOrCreateUserId(SeededServer.userName(ThreadLocalRandom.current().nextInt(server.users)));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Long getOrCreateUserIdContended(SeededServer server) {
+        return server.userService.getOrCreateUserId(SeededServer.userName(ThreadLocalRandom.current().nextInt(server.users)));
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.teamtaskmanager.bulkhead;
+
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.core.task.TaskDecorator;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+
+/**
+ * A fixed pool of threads with a bounded queue in front of it, so that one kind of request can only ever tie up
+ * its own threads.
+ * <p>
+ * When the queue is full, work is turned away at once rather than waiting. The time each piece of work spends
+ * queued is recorded as taskmanager.bulkhead.queue.wait, and work turned away as taskmanager.bulkhead.rejected,
+ * both tagged with the name of the bulkhead.
+ */
+public class Bulkhead {
+
+	private final String name;
+
+	private final ThreadPoolExecutor executor;
+
+	private final TaskDecorator decorator;
+
+	private final Timer queueWait;
+
+	private final Counter rejected;
+
+	/**
+	 * @param name       names the threads and tags the metrics
+	 * @param size       the number of threads
+	 * @param queueDepth the most work that can be waiting for a thread
+	 * @param decorator  wraps each piece of work when it's submitted, to carry over state from the submitting thread
+	 * @param registry
+	 */
+	public Bulkhead(String name, int size, int queueDepth, TaskDecorator decorator, MeterRegistry registry) {
+		this.name = name;
+		this.decorator = decorator;
+		AtomicInteger threads = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueDepth),
+				work -> new Thread(work, name + "-" + threads.incrementAndGet()), new ThreadPoolExecutor.AbortPolicy());
+
+		this.queueWait = Timer.builder("taskmanager.bulkhead.queue.wait").tag("bulkhead", name).register(registry);
+		this.rejected = Counter.builder("taskmanager.bulkhead.rejected").tag("bulkhead", name).register(registry);
+		new ExecutorServiceMetrics(executor, name, Collections.<Tag>emptyList()).bindTo(registry);
+	}
+
+	/**
+	 * Runs the work on one of the threads of this bulkhead
+	 *
+	 * @param work
+	 * @return completes with the result of the work, or what it threw
+	 * @throws BulkheadFullException if all the threads are busy and the queue is full
+	 */
+	public <T> CompletableFuture<T> submit(Callable<T> work) {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		long queued = System.nanoTime();
+		try {
+			executor.execute(decorator.decorate(() -> {
+				queueWait.record(System.nanoTime() - queued, TimeUnit.NANOSECONDS);
+				try {
+					result.complete(work.call());
+				} catch (Throwable e) {
+					result.completeExceptionally(e);
+				}
+			}));
+		} catch (RejectedExecutionException e) {
+			rejected.increment();
+			throw new BulkheadFullException(name);
+		}
+		return result;
+	}
+
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+}
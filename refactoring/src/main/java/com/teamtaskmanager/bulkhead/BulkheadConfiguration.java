@@ -0,0 +1,40 @@
+package com.teamtaskmanager.bulkhead;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.teamtaskmanager.metrics.HibernateRequestCounter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * The bulkheads the controllers run their requests on - searches, which can be slow, are kept apart from
+ * reads of single tasks, and both from writes, so a burst of one can't hold up the others. The SQL each request
+ * runs on a bulkhead is still counted against it.
+ */
+@Configuration
+public class BulkheadConfiguration {
+
+	@Bean(destroyMethod = "shutdown")
+	public Bulkhead searchBulkhead(MeterRegistry registry,
+			@Value("${application.bulkhead.search.size:4}") int size,
+			@Value("${application.bulkhead.search.queue-depth:16}") int queueDepth) {
+		return new Bulkhead("search", size, queueDepth, HibernateRequestCounter::propagate, registry);
+	}
+
+	@Bean(destroyMethod = "shutdown")
+	public Bulkhead readBulkhead(MeterRegistry registry,
+			@Value("${application.bulkhead.read.size:16}") int size,
+			@Value("${application.bulkhead.read.queue-depth:256}") int queueDepth) {
+		return new Bulkhead("read", size, queueDepth, HibernateRequestCounter::propagate, registry);
+	}
+
+	@Bean(destroyMethod = "shutdown")
+	public Bulkhead writeBulkhead(MeterRegistry registry,
+			@Value("${application.bulkhead.write.size:8}") int size,
+			@Value("${application.bulkhead.write.queue-depth:128}") int queueDepth) {
+		return new Bulkhead("write", size, queueDepth, HibernateRequestCounter::propagate, registry);
+	}
+
+}
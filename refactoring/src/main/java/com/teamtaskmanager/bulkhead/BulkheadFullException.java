@@ -0,0 +1,14 @@
+package com.teamtaskmanager.bulkhead;
+
+/**
+ * Thrown when work is turned away because a bulkhead has no thread or queue space for it
+ */
+public class BulkheadFullException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public BulkheadFullException(String bulkhead) {
+		super("Too busy to handle " + bulkhead + " requests, try again later");
+	}
+
+}
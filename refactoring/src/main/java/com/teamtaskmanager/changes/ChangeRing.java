@@ -0,0 +1,80 @@
+package com.teamtaskmanager.changes;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.teamtaskmanager.model.Task;
+
+/**
+ * The latest changes, in a ring of slots that the newest changes overwrite - publishing takes a number and sets
+ * one slot, so writers never wait for each other or for readers.
+ * <p>
+ * A reader keeps the number of the last change it read and reads on from there. It stops at a slot whose change
+ * hasn't been set yet, and knows it has fallen behind when a slot already holds a later change than the one it
+ * wants.
+ */
+class ChangeRing {
+
+	private final AtomicReferenceArray<TaskChange> slots;
+
+	private final int mask;
+
+	private final long firstSeq;
+
+	private final AtomicLong last;
+
+	/**
+	 * @param capacity  rounded up to a power of 2
+	 * @param firstSeq  the number of the first change
+	 */
+	ChangeRing(int capacity, long firstSeq) {
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		this.slots = new AtomicReferenceArray<>(size);
+		this.mask = size - 1;
+		this.firstSeq = firstSeq;
+		this.last = new AtomicLong(firstSeq - 1);
+	}
+
+	/**
+	 * @return the number of the change
+	 */
+	long publish(TaskChange.Type type, Task task) {
+		long seq = last.incrementAndGet();
+		slots.set((int) (seq & mask), new TaskChange(seq, type, task));
+		return seq;
+	}
+
+	/**
+	 * @return the number of the latest change taken, which might not be readable yet
+	 */
+	long last() {
+		return last.get();
+	}
+
+	/**
+	 * @param after the number of the last change read
+	 * @param max   the most changes to read
+	 * @param into  gets the changes after it, in order, up to the first that isn't readable yet
+	 * @return false if changes after it have already been overwritten or were from before the ring, or it is a
+	 *         number that hasn't been reached
+	 */
+	boolean read(long after, int max, List<TaskChange> into) {
+		long latest = last.get();
+		if (after > latest || after < firstSeq - 1 || after < latest - slots.length()) {
+			return false;
+		}
+		for (long seq = after + 1; into.size() < max; seq++) {
+			TaskChange change = slots.get((int) (seq & mask));
+			if (null == change || change.seq < seq) {
+				break;
+			}
+			if (change.seq > seq) {
+				return false;
+			}
+			into.add(change);
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,36 @@
+package com.teamtaskmanager.changes;
+
+import com.teamtaskmanager.model.Task;
+
+/**
+ * A change to the tasks, numbered in the order it was published
+ */
+public class TaskChange {
+
+	public enum Type {
+		CREATED, COMPLETED, DELETED, CLEARED;
+
+		/**
+		 * @return the name of the server-sent event
+		 */
+		public String eventName() {
+			return name().toLowerCase();
+		}
+	}
+
+	public final long seq;
+
+	public final Type type;
+
+	/**
+	 * The task as it was after the change, or as it was when it was deleted - null when all the tasks were cleared
+	 */
+	public final Task task;
+
+	TaskChange(long seq, Type type, Task task) {
+		this.seq = seq;
+		this.type = type;
+		this.task = task;
+	}
+
+}
@@ -0,0 +1,238 @@
+package com.teamtaskmanager.changes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.teamtaskmanager.model.Task;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Streams the changes to the tasks to subscribers as server-sent events.
+ * <p>
+ * Changes are published into a {@link ChangeRing} of the latest application.changes.capacity changes and nothing
+ * else, so a writer never waits for a subscriber. Every application.changes.poll-interval-ms the dispatcher hands
+ * each subscriber with changes to read to the sender threads, one send at a time per subscriber. A subscriber too
+ * slow to keep up falls off the end of the ring, and is sent a resync event and carried on from the latest change.
+ */
+@Component
+public class TaskChangeFeed {
+
+	private static final Logger LOG = LoggerFactory.getLogger(TaskChangeFeed.class);
+
+	public static final String RESYNC = "resync";
+
+	private class Subscriber {
+
+		final SseEmitter emitter;
+
+		final Function<TaskChange, Object> render;
+
+		/**
+		 * The number of the last change read
+		 */
+		volatile long last;
+
+		volatile long lastSentMillis = System.currentTimeMillis();
+
+		final AtomicBoolean isSending = new AtomicBoolean();
+
+		Subscriber(SseEmitter emitter, Function<TaskChange, Object> render, long last) {
+			this.emitter = emitter;
+			this.render = render;
+			this.last = last;
+		}
+
+		/**
+		 * Sends what there is to read - on a sender thread, and never on two at once
+		 */
+		void send() {
+			try {
+				List<TaskChange> changes = new ArrayList<>();
+				if (!ring.read(last, batchSize, changes)) {
+					long latest = ring.last();
+					resyncs.increment();
+					emitter.send(SseEmitter.event().id(Long.toString(latest)).name(RESYNC).data(Collections.emptyMap(), MediaType.APPLICATION_JSON));
+					last = latest;
+					lastSentMillis = System.currentTimeMillis();
+					return;
+				}
+				for (TaskChange change : changes) {
+					Object data = render.apply(change);
+					if (null != data) {
+						emitter.send(SseEmitter.event().id(Long.toString(change.seq)).name(change.type.eventName()).data(data, MediaType.APPLICATION_JSON));
+						lastSentMillis = System.currentTimeMillis();
+					}
+					last = change.seq;
+				}
+				if (System.currentTimeMillis() - lastSentMillis >= heartbeatMillis) {
+					// an event with only an id moves the client's Last-Event-ID past the changes it was filtered from
+					emitter.send(SseEmitter.event().id(Long.toString(last)));
+					lastSentMillis = System.currentTimeMillis();
+				}
+			} catch (IOException | IllegalStateException e) {
+				// gone, or completed in the meantime
+				remove(this);
+			} catch (RuntimeException e) {
+				LOG.warn("Failed sending changes", e);
+				remove(this);
+				emitter.completeWithError(e);
+			} finally {
+				isSending.set(false);
+			}
+		}
+
+		boolean hasToSend() {
+			return last != ring.last() || System.currentTimeMillis() - lastSentMillis >= heartbeatMillis;
+		}
+
+	}
+
+	private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+	private final AtomicInteger subscriberCount = new AtomicInteger();
+
+	private ChangeRing ring;
+
+	private ScheduledExecutorService dispatcher;
+
+	private ExecutorService senders;
+
+	private Counter resyncs;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	@Value("${application.changes.capacity:65536}")
+	private int capacity;
+
+	@Value("${application.changes.poll-interval-ms:100}")
+	private long pollIntervalMillis;
+
+	@Value("${application.changes.heartbeat-ms:15000}")
+	private long heartbeatMillis;
+
+	@Value("${application.changes.timeout-ms:1800000}")
+	private long timeoutMillis;
+
+	@Value("${application.changes.max-subscribers:1000}")
+	private int maxSubscribers;
+
+	@Value("${application.changes.sender-threads:2}")
+	private int senderThreads;
+
+	@Value("${application.changes.batch-size:500}")
+	private int batchSize;
+
+	@PostConstruct
+	public void start() {
+		// numbered from the time it started, so the numbers go on rising after a restart
+		ring = new ChangeRing(capacity, System.currentTimeMillis() * 1000);
+		resyncs = Counter.builder("taskmanager.changes.resyncs")
+				.description("Subscribers sent a resync event because the changes they asked for had gone")
+				.register(registry);
+		Gauge.builder("taskmanager.changes.subscribers", subscriberCount, AtomicInteger::get)
+				.description("Subscribers to the changes")
+				.register(registry);
+		AtomicInteger threads = new AtomicInteger();
+		senders = Executors.newFixedThreadPool(senderThreads, runnable -> {
+			Thread thread = new Thread(runnable, "changes-sender-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "changes-dispatcher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		dispatcher.scheduleWithFixedDelay(this::dispatch, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		dispatcher.shutdownNow();
+		senders.shutdownNow();
+		subscribers.forEach(subscriber -> subscriber.emitter.complete());
+	}
+
+	/**
+	 * Never blocks
+	 *
+	 * @param task the task after the change, null for {@link TaskChange.Type#CLEARED}
+	 * @return the number of the change
+	 */
+	public long publish(TaskChange.Type type, Task task) {
+		return ring.publish(type, task);
+	}
+
+	/**
+	 * @param lastEventId optional - the number of the last change the subscriber has, to send the changes after it,
+	 *                    otherwise only changes from now on are sent
+	 * @param render      turns a change into the data of its event, or null to leave it out
+	 * @return null if there are already application.changes.max-subscribers
+	 */
+	public SseEmitter subscribe(Long lastEventId, Function<TaskChange, Object> render) throws IOException {
+		if (subscriberCount.incrementAndGet() > maxSubscribers) {
+			subscriberCount.decrementAndGet();
+			return null;
+		}
+		SseEmitter emitter = new SseEmitter(timeoutMillis);
+		Subscriber subscriber = new Subscriber(emitter, render, null == lastEventId ? ring.last() : lastEventId);
+		emitter.onCompletion(() -> remove(subscriber));
+		emitter.onTimeout(() -> remove(subscriber));
+		subscribers.add(subscriber);
+		// sent as soon as the response starts, so the client knows it is subscribed
+		emitter.send(SseEmitter.event().comment("subscribed"));
+		return emitter;
+	}
+
+	public int getSubscriberCount() {
+		return subscriberCount.get();
+	}
+
+	private void remove(Subscriber subscriber) {
+		if (subscribers.remove(subscriber)) {
+			subscriberCount.decrementAndGet();
+		}
+	}
+
+	private void dispatch() {
+		try {
+			for (Subscriber subscriber : subscribers) {
+				if (subscriber.hasToSend() && subscriber.isSending.compareAndSet(false, true)) {
+					senders.execute(subscriber::send);
+				}
+			}
+		} catch (RejectedExecutionException e) {
+			// stopping
+		} catch (RuntimeException e) {
+			LOG.warn("Failed dispatching changes", e);
+		}
+	}
+
+}
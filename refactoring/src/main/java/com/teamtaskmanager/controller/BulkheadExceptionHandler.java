@@ -0,0 +1,25 @@
+package com.teamtaskmanager.controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import com.teamtaskmanager.bulkhead.BulkheadFullException;
+
+/**
+ * Answers requests turned away by a full bulkhead with 503 Service Unavailable
+ */
+@RestControllerAdvice
+public class BulkheadExceptionHandler {
+
+	@ExceptionHandler(BulkheadFullException.class)
+	public ResponseEntity busy(BulkheadFullException e) {
+		return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+				.header(HttpHeaders.RETRY_AFTER, "1")
+				.header("Error", e.getMessage())
+				.build();
+	}
+
+}
@@ -1,24 +1,51 @@
 package com.teamtaskmanager.controller;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.teamtaskmanager.bulkhead.Bulkhead;
+import com.teamtaskmanager.changes.TaskChange;
+import com.teamtaskmanager.changes.TaskChangeFeed;
+import com.teamtaskmanager.dto.BatchResultDTO;
+import com.teamtaskmanager.dto.TaskColumnsDTO;
 import com.teamtaskmanager.dto.TaskDTO;
+import com.teamtaskmanager.dto.TaskStatsDTO;
 import com.teamtaskmanager.model.Task;
+import com.teamtaskmanager.search.TaskCursor;
+import com.teamtaskmanager.search.TaskPage;
+import com.teamtaskmanager.search.TaskSort;
+import com.teamtaskmanager.service.TaskJsonCache;
 import com.teamtaskmanager.service.TaskService;
+import com.teamtaskmanager.utilities.FormatDate;
 
 @RestController
 public class TaskController {
@@ -29,22 +56,82 @@ public class TaskController {
 	@Value("${application.host}")
     private String appRoot;
 	
+	@Autowired
+	private ObjectMapper objectMapper;
+	
+	@Autowired
+	private TaskChangeFeed taskChangeFeed;
+	
+	@Autowired
+	@Qualifier("searchBulkhead")
+	private Bulkhead searchBulkhead;
+	
+	@Autowired
+	@Qualifier("readBulkhead")
+	private Bulkhead readBulkhead;
+	
+	@Autowired
+	@Qualifier("writeBulkhead")
+	private Bulkhead writeBulkhead;
+	
+	@Value("${application.search.max-page-size:1000}")
+    private int maxPageSize;
+	
+	// a streamed search is cut off after this long, rather than the container's default async timeout
+	@Value("${application.search.stream-timeout-ms:1800000}")
+    private long streamTimeoutMillis;
+	
+	private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+	
+	private static final String SMILE = "application/x-jackson-smile";
+	
+	private static final String COLUMNS = "application/vnd.teamtaskmanager.columns+json";
+	
+	private static final SmileFactory SMILE_FACTORY = new SmileFactory();
+	
 	/**
      * Get a task by its id - returns {"id": 4324324, "user": "billybob", "task": "do this", "due": "yyyy-MM-dd", "isCompleted" : true}
+     * <p>
+     * The response has an ETag, and if it's sent back in If-None-Match while the task is unchanged the response is 304 Not Modified.
      *
      * @param id
+     * @param ifNoneMatch optional - the ETag of a previous response
      * @return
-     * @throws JsonProcessingException
      */
 	@RequestMapping(method = RequestMethod.GET, path = "tasks/{id}")
-    public ResponseEntity get(@PathVariable Long id) throws JsonProcessingException {
-        TaskDTO result = taskService.get(id);
-        
-        if (null != result) {
-            return ResponseEntity.ok(new ObjectMapper().writeValueAsString(result));
-        } else {
-            return ResponseEntity.notFound().build();
-        }
+    public CompletableFuture<ResponseEntity<byte[]>> get(@PathVariable Long id, @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return readBulkhead.submit(() -> {
+            TaskJsonCache.Entry result = taskService.getJson(id);
+            
+            if (null == result) {
+                return ResponseEntity.notFound().build();
+            } else if (isNotModified(ifNoneMatch, result.eTag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(result.eTag).varyBy(HttpHeaders.ACCEPT).build();
+            } else {
+                return ResponseEntity.ok().eTag(result.eTag).varyBy(HttpHeaders.ACCEPT).contentType(MediaType.APPLICATION_JSON_UTF8).body(result.json);
+            }
+        });
+    }
+	
+	/**
+     * Get a task by its id as {@link #get}, in the binary Smile encoding of the same JSON, when the request accepts
+     * application/x-jackson-smile - the cached JSON is re-encoded, and the ETag differs from the JSON one
+     */
+	@RequestMapping(method = RequestMethod.GET, path = "tasks/{id}", produces = SMILE)
+    public CompletableFuture<ResponseEntity<byte[]>> getSmile(@PathVariable Long id, @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return readBulkhead.submit(() -> {
+            TaskJsonCache.Entry result = taskService.getJson(id);
+            
+            if (null == result) {
+                return ResponseEntity.notFound().build();
+            }
+            String eTag = variant(result.eTag, "s");
+            if (isNotModified(ifNoneMatch, eTag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).varyBy(HttpHeaders.ACCEPT).build();
+            } else {
+                return ResponseEntity.ok().eTag(eTag).varyBy(HttpHeaders.ACCEPT).contentType(MediaType.parseMediaType(SMILE)).body(toSmile(result.json));
+            }
+        });
     }
 	
 	/**
@@ -52,36 +139,294 @@ public class TaskController {
      *
      * @param id
      * @return
-     * @throws JsonProcessingException
      */
     @RequestMapping(method = RequestMethod.DELETE, path = "tasks/{id}")
-    public ResponseEntity delete(@PathVariable Long id) throws JsonProcessingException {
-        Task result = taskService.taskFilter(id);
-        
-        if (taskService.isDeleted(result)) {
-            return ResponseEntity.ok().build();
-        } else {
-            return ResponseEntity.notFound().build();
+    public CompletableFuture<ResponseEntity> delete(@PathVariable Long id) {
+        return writeBulkhead.submit(() -> {
+            if (taskService.isDeleted(id)) {
+                return ResponseEntity.ok().build();
+            } else {
+                return ResponseEntity.notFound().build();
+            }
+        });
+    }
+
+    /**
+     * Count the tasks - returns {"open": 3, "completed": 1, "overdue": 0, "byDueMonth": {"yyyy-MM": 2, ...}, "byUser": {"billybob": 4, ...}}
+     * <p>
+     * Overdue tasks are open tasks due before today, and byDueMonth and byUser count all tasks, open or completed.
+     *
+     * @param user optional - if set then only this user's tasks are counted - if the user doesn't exist the counts are 0
+     * @return
+     */
+    @RequestMapping(method = RequestMethod.GET, path = "tasks/stats")
+    public CompletableFuture<ResponseEntity<TaskStatsDTO>> stats(@RequestParam(required = false) String user) {
+        return readBulkhead.submit(() -> ResponseEntity.ok(taskService.getStats(user)));
+    }
+
+    /**
+     * Follow the changes to the tasks - a stream of server-sent events named created, completed or deleted, with the task as it was after the change
+     * as the data, and cleared, with {} as the data, when all the tasks are cleared. Each event's id is the number of the change, and the numbers only rise.
+     * <p>
+     * Reconnecting with the id of the last event in Last-Event-ID sends the changes after it. If those changes have already gone, which also happens
+     * to a client too slow to keep up, a resync event is sent - the client should fetch the tasks again, and the changes carry on after the resync.
+     *
+     * @param user        optional - if set then only changes to this user's tasks are sent, as well as cleared
+     * @param lastEventId optional - the id of the last event the client has - otherwise only changes from now on are sent
+     * @return
+     */
+    @RequestMapping(method = RequestMethod.GET, path = "tasks/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> changes(@RequestParam(required = false) String user, @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) throws IOException {
+        Long after;
+        try {
+            after = null == lastEventId ? null : Long.valueOf(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().header("Error", "Last-Event-ID must be the id of an event").build();
         }
+
+        SseEmitter emitter = taskChangeFeed.subscribe(after, change -> {
+            if (TaskChange.Type.CLEARED == change.type) {
+                return Collections.emptyMap();
+            }
+            TaskDTO dto = taskService.taskToDTO(change.task);
+            return null == user || user.equals(dto.user) ? dto : null;
+        });
+        if (null == emitter) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Error", "Too many subscribers to changes").build();
+        }
+        return ResponseEntity.ok(emitter);
     }
 
     /**
      * Search for tasks - returns values in a list of  {"id": 4324324, "user": "billybob", "task": "do this", "due": "tyyyy-MM-dd", "isCompleted" : true}
      *
-     * @param user      optional - if set then only tasks for this user are returned - if the user doesn't exist return nothing
-     * @param dateAfter optional - if set then only tasks _after_ this date are returned
-     * @param sortBy    sort by the field, in the form: fieldName:asc , fieldName:desc, fieldName (defaults to ascending) - optional, defaults to id:asc
+     * @param user          optional - if set then only tasks for this user are returned - if the user doesn't exist return nothing
+     * @param dateAfter     optional - if set then only tasks _after_ this date are returned
+     * @param dateBefore    optional - if set then only tasks _before_ this date are returned
+     * @param dueWithinDays optional - if set then only open tasks due from today to this many days from today are returned
+     * @param overdue       optional - if true then only open tasks due before today are returned
+     * @param q             optional - if set then only tasks with all of these words are returned - "quoted words" must be together, and word* matches words starting with word
+     * @param sortBy        sort by the fields, a comma separated list in the form: fieldName:asc , fieldName:desc, fieldName (defaults to ascending) - optional, defaults to id:asc
+     * @param limit         optional - if set then at most this many tasks are returned, and an X-Next-Cursor header is set if there are more
+     * @param cursor        optional - the X-Next-Cursor of the previous page, to continue a search with the same parameters
      * @return
-     * @throws IOException
      */
     @RequestMapping(method = RequestMethod.GET, path = "tasks")
-    public List<TaskDTO> search(@RequestParam(required = false) String user, @RequestParam(required = false) String dateAfter, @RequestParam(required = false) String sortBy, @RequestParam(required = false) Boolean includeCompleted
-    ) throws IOException {
-        return taskService.search(user, dateAfter, sortBy, includeCompleted);
+    public CompletableFuture<ResponseEntity<List<TaskDTO>>> search(@RequestParam(required = false) String user, @RequestParam(required = false) String dateAfter, @RequestParam(required = false) String dateBefore, @RequestParam(required = false) Integer dueWithinDays, @RequestParam(required = false) Boolean overdue, @RequestParam(required = false) String q, @RequestParam(required = false) String sortBy, @RequestParam(required = false) Boolean includeCompleted,
+            @RequestParam(required = false) Integer limit, @RequestParam(required = false) String cursor,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+    ) {
+        return searchBulkhead.submit(() -> searchNow(user, dateAfter, dateBefore, dueWithinDays, overdue, q, sortBy, includeCompleted, limit, cursor, ifNoneMatch, ""));
+    }
+    
+    /**
+     * Search for tasks as {@link #search}, in the binary Smile encoding of the same JSON, when the request accepts
+     * application/x-jackson-smile
+     */
+    @RequestMapping(method = RequestMethod.GET, path = "tasks", produces = SMILE)
+    public CompletableFuture<ResponseEntity<List<TaskDTO>>> searchSmile(@RequestParam(required = false) String user, @RequestParam(required = false) String dateAfter, @RequestParam(required = false) String dateBefore, @RequestParam(required = false) Integer dueWithinDays, @RequestParam(required = false) Boolean overdue, @RequestParam(required = false) String q, @RequestParam(required = false) String sortBy, @RequestParam(required = false) Boolean includeCompleted,
+            @RequestParam(required = false) Integer limit, @RequestParam(required = false) String cursor,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+    ) {
+        return searchBulkhead.submit(() -> searchNow(user, dateAfter, dateBefore, dueWithinDays, overdue, q, sortBy, includeCompleted, limit, cursor, ifNoneMatch, "-s"));
+    }
+    
+    /**
+     * Search for tasks as {@link #search}, but column by column when the request accepts
+     * application/vnd.teamtaskmanager.columns+json - returns {"id": [4324324, ...], "user": ["billybob", ...], "task": [...], "due": [...], "isCompleted": [...]}
+     */
+    @RequestMapping(method = RequestMethod.GET, path = "tasks", produces = COLUMNS)
+    public CompletableFuture<ResponseEntity<TaskColumnsDTO>> searchColumns(@RequestParam(required = false) String user, @RequestParam(required = false) String dateAfter, @RequestParam(required = false) String dateBefore, @RequestParam(required = false) Integer dueWithinDays, @RequestParam(required = false) Boolean overdue, @RequestParam(required = false) String q, @RequestParam(required = false) String sortBy, @RequestParam(required = false) Boolean includeCompleted,
+            @RequestParam(required = false) Integer limit, @RequestParam(required = false) String cursor,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+    ) {
+        return searchBulkhead.submit(() -> {
+            ResponseEntity<List<TaskDTO>> result = searchNow(user, dateAfter, dateBefore, dueWithinDays, overdue, q, sortBy, includeCompleted, limit, cursor, ifNoneMatch, "-c");
+            return ResponseEntity.status(result.getStatusCode()).headers(result.getHeaders())
+                    .body(null == result.getBody() ? null : TaskColumnsDTO.of(result.getBody()));
+        });
+    }
+    
+    /**
+     * @param variant added to the ETag, so each encoding of the results has its own
+     */
+    private ResponseEntity<List<TaskDTO>> searchNow(String user, String dateAfter, String dateBefore, Integer dueWithinDays, Boolean overdue, String q, String sortBy, Boolean includeCompleted, Integer limit, String cursor, String ifNoneMatch, String variant) {
+        TaskSort sort;
+        TaskCursor after;
+        try {
+            sort = TaskSort.parse(sortBy);
+            after = null == cursor ? null : TaskCursor.decode(cursor, sort);
+            checkDates(dateAfter, dateBefore, dueWithinDays);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).header("Error", e.getMessage()).build();
+        }
+        
+        // read before searching, so that a write during the search can only make the ETag older than the results
+        // overdue and due within days also change with the day, without any writes
+        String day = null != dueWithinDays || Boolean.TRUE.equals(overdue) ? "-d" + LocalDate.now().toEpochDay() : "";
+        String eTag = "\"g" + taskService.getWriteGeneration() + day + variant + "\"";
+        if (isNotModified(ifNoneMatch, eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).varyBy(HttpHeaders.ACCEPT).build();
+        }
+        
+        if (null == limit && null == after) {
+            return ResponseEntity.ok().eTag(eTag).varyBy(HttpHeaders.ACCEPT).body(taskService.search(user, dateAfter, dateBefore, dueWithinDays, overdue, q, sort, includeCompleted));
+        }
+        
+        int pageSize = null == limit ? maxPageSize : limit;
+        if (pageSize < 1 || pageSize > maxPageSize) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).header("Error", "Limit must be between 1 and " + maxPageSize).build();
+        }
+        
+        TaskPage page = taskService.searchPage(user, dateAfter, dateBefore, dueWithinDays, overdue, q, sort, includeCompleted, after, pageSize);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(eTag).varyBy(HttpHeaders.ACCEPT);
+        if (null != page.next) {
+            response.header("X-Next-Cursor", page.next.encode());
+        }
+        return response.body(page.tasks);
 
     }
     
     
+    /**
+     * Search for tasks as {@link #search}, but write the results as they are read from the database rather than
+     * collecting them first - as a JSON array when called with stream=true, or as newline delimited JSON, one task
+     * per line, when the request accepts application/x-ndjson
+     * <p>
+     * The search and the writes run on the search bulkhead, so a burst of streamed searches is turned away with 503
+     * rather than queueing on the request threads.
+     *
+     * @return
+     */
+    @RequestMapping(method = RequestMethod.GET, path = "tasks", params = "stream=true")
+    public ResponseEntity<ResponseBodyEmitter> streamSearch(@RequestParam(required = false) String user, @RequestParam(required = false) String dateAfter, @RequestParam(required = false) String dateBefore, @RequestParam(required = false) Integer dueWithinDays, @RequestParam(required = false) Boolean overdue, @RequestParam(required = false) String q, @RequestParam(required = false) String sortBy, @RequestParam(required = false) Boolean includeCompleted,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept
+    ) {
+        boolean isNdjson = null != accept && MediaType.parseMediaTypes(accept).stream().anyMatch(NDJSON::equalsTypeAndSubtype);
+        return streamSearch(user, dateAfter, dateBefore, dueWithinDays, overdue, q, sortBy, includeCompleted, isNdjson);
+    }
+    
+    @RequestMapping(method = RequestMethod.GET, path = "tasks", produces = "application/x-ndjson")
+    public ResponseEntity<ResponseBodyEmitter> streamSearchLines(@RequestParam(required = false) String user, @RequestParam(required = false) String dateAfter, @RequestParam(required = false) String dateBefore, @RequestParam(required = false) Integer dueWithinDays, @RequestParam(required = false) Boolean overdue, @RequestParam(required = false) String q, @RequestParam(required = false) String sortBy, @RequestParam(required = false) Boolean includeCompleted
+    ) {
+        return streamSearch(user, dateAfter, dateBefore, dueWithinDays, overdue, q, sortBy, includeCompleted, true);
+    }
+    
+    private ResponseEntity<ResponseBodyEmitter> streamSearch(String user, String dateAfter, String dateBefore, Integer dueWithinDays, Boolean overdue, String q, String sortBy, Boolean includeCompleted, boolean isNdjson) {
+        TaskSort sort;
+        try {
+            sort = TaskSort.parse(sortBy);
+            checkDates(dateAfter, dateBefore, dueWithinDays);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).header("Error", e.getMessage()).build();
+        }
+        
+        MediaType contentType = isNdjson ? NDJSON : MediaType.APPLICATION_JSON_UTF8;
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(streamTimeoutMillis);
+        searchBulkhead.submit(() -> {
+            try {
+                // each chunk is written into the buffer, then sent on as it is
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                JsonGenerator generator = objectMapper.getFactory().createGenerator(buffer);
+                generator.setRootValueSeparator(null);
+                if (!isNdjson) {
+                    generator.writeStartArray();
+                }
+                
+                taskService.searchChunks(user, dateAfter, dateBefore, dueWithinDays, overdue, q, sort, includeCompleted, chunk -> {
+                    try {
+                        for (TaskDTO dto : chunk) {
+                            generator.writeObject(dto);
+                            if (isNdjson) {
+                                generator.writeRaw('\n');
+                            }
+                        }
+                        send(emitter, generator, buffer, contentType);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                
+                if (!isNdjson) {
+                    generator.writeEndArray();
+                }
+                send(emitter, generator, buffer, contentType);
+                emitter.complete();
+            } catch (IOException | RuntimeException e) {
+                // the client has gone, the response timed out, or the search failed
+                emitter.completeWithError(e);
+            }
+            return null;
+        });
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .body(emitter);
+    }
+    
+    /**
+     * Sends what has been written to the buffer since the last send, if anything
+     */
+    private static void send(ResponseBodyEmitter emitter, JsonGenerator generator, ByteArrayOutputStream buffer, MediaType contentType) throws IOException {
+        generator.flush();
+        if (buffer.size() > 0) {
+            emitter.send(buffer.toByteArray(), contentType);
+            buffer.reset();
+        }
+    }
+    
+    /**
+     * @param ifNoneMatch optional - the If-None-Match header, a comma separated list of ETags or *
+     * @param eTag        the current ETag
+     * @return whether the client already has the current version
+     */
+    private boolean isNotModified(String ifNoneMatch, String eTag) {
+        if (null == ifNoneMatch) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.equals("*") || trimmed.equals(eTag) || trimmed.equals("W/" + eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * @return the strong ETag with the variant added inside its quotes
+     */
+    private static String variant(String eTag, String variant) {
+        return eTag.substring(0, eTag.length() - 1) + "-" + variant + "\"";
+    }
+    
+    /**
+     * Re-encodes JSON as Smile, token by token, without binding it to objects
+     */
+    private byte[] toSmile(byte[] json) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length);
+        try (JsonParser parser = objectMapper.getFactory().createParser(json);
+                JsonGenerator generator = SMILE_FACTORY.createGenerator(out)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        }
+        return out.toByteArray();
+    }
+    
+    private void checkDate(String date) {
+        if (null != date) {
+            FormatDate.toDate(date);
+        }
+    }
+    
+    private void checkDates(String dateAfter, String dateBefore, Integer dueWithinDays) {
+        checkDate(dateAfter);
+        checkDate(dateBefore);
+        if (null != dueWithinDays && dueWithinDays < 0) {
+            throw new IllegalArgumentException("dueWithinDays can't be negative");
+        }
+    }
+    
+    
     /**
      * Create a task; expects the form {"user": "billybob", "task": "do this", "due": "yyyy-MM-dd"}
      * <p>
@@ -91,39 +436,115 @@ public class TaskController {
      *
      * @param taskJson
      * @return the body will be empty, but there will be a "Location" header that will contain a URL to the new resource
-     * @throws IOException
      */
     @RequestMapping(method = RequestMethod.POST, path = "tasks")
-    public ResponseEntity create(@RequestBody String taskJson) throws IOException {
-        TaskDTO dto = new ObjectMapper().readValue(taskJson, TaskDTO.class);
-        String errorMessage = taskService.checkBadRequest(dto);
-        
-        if (errorMessage!=null) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).header("Error", errorMessage).build();
-        }
-        
-        Task task = taskService.createTask(dto);
-        return ResponseEntity
-                .status(HttpStatus.OK)
-                .header("Location", appRoot + "/tasks/" + task.id)
-                .build();
+    public CompletableFuture<ResponseEntity> create(@RequestBody String taskJson) {
+        return writeBulkhead.submit(() -> {
+            TaskDTO dto = objectMapper.readValue(taskJson, TaskDTO.class);
+            String errorMessage = taskService.checkBadRequest(dto);
+            
+            if (errorMessage!=null) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).header("Error", errorMessage).build();
+            }
+            
+            Task task = taskService.createTask(dto);
+            return ResponseEntity
+                    .status(HttpStatus.OK)
+                    .header("Location", appRoot + "/tasks/" + task.id)
+                    .build();
+        });
+    }
+
+    /**
+     * Create many tasks at once; expects a list of the form [{"user": "billybob", "task": "do this", "due": "yyyy-MM-dd"}, ...]
+     * <p>
+     * Each task is checked as it would be by {@link #create(String)}, and the good ones are created even if others are rejected.
+     *
+     * @param tasksJson
+     * @return for each task, in the same order, either {"id": 4324324} or {"error": "Due can't be in the past"}
+     */
+    @RequestMapping(method = RequestMethod.POST, path = "tasks/batch")
+    public CompletableFuture<ResponseEntity<List<BatchResultDTO>>> createBatch(@RequestBody String tasksJson) {
+        return writeBulkhead.submit(() -> {
+            TaskDTO[] dtos = objectMapper.readValue(tasksJson, TaskDTO[].class);
+            return ResponseEntity.ok(taskService.createTasks(Arrays.asList(dtos)));
+        });
+    }
+
+    /**
+     * Rebuilds the views searches read from the tasks, and the indexes - after tasks have been loaded straight into
+     * the database, or if searches and the tasks disagree. Changes to tasks wait until it is done.
+     */
+    @RequestMapping(method = RequestMethod.POST, path = "tasks/rebuild")
+    public CompletableFuture<ResponseEntity<Void>> rebuild() {
+        return writeBulkhead.submit(() -> {
+            taskService.rebuild();
+            return ResponseEntity.noContent().build();
+        });
+    }
+
+    /**
+     * Completes many tasks at once - the ids of the tasks as a list [4324324, 4324325, ...], or the tasks of a user,
+     * or those due before a date, or any of these together
+     *
+     * @param idsJson    optional - only the tasks with these ids
+     * @param user       optional - only this user's tasks
+     * @param dateBefore optional - only tasks due _before_ this date
+     * @return the ids of the tasks that were completed - tasks that already were, or aren't there, are left out
+     */
+    @RequestMapping(method = RequestMethod.PUT, path = "tasks/complete")
+    public CompletableFuture<ResponseEntity<List<Long>>> completeAll(@RequestBody(required = false) String idsJson, @RequestParam(required = false) String user, @RequestParam(required = false) String dateBefore) {
+        return writeBulkhead.submit(() -> {
+            if (null == idsJson && null == user && null == dateBefore) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).header("Error", "Ids, user or dateBefore must be given").build();
+            }
+            try {
+                checkDate(dateBefore);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).header("Error", e.getMessage()).build();
+            }
+            
+            List<Long> ids;
+            try {
+                ids = null == idsJson ? null : Arrays.asList(objectMapper.readValue(idsJson, Long[].class));
+            } catch (JsonProcessingException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).header("Error", "Ids must be a list of task ids").build();
+            }
+            List<Task> completed = taskService.completeTasks(ids, user, dateBefore);
+            return ResponseEntity.ok(completed.stream().map(task -> task.id).collect(Collectors.toList()));
+        });
     }
 
     /**
      * Completes a task - i.e. marks isCompleted = true
+     * <p>
+     * If application.complete.coalesce-window-ms is set, tasks completed within that window of each other are
+     * completed together in one transaction - the write thread is let go while the task waits for the others.
      *
      * @param id
      * @return
-     * @throws JsonProcessingException
      */
     @RequestMapping(method = RequestMethod.PUT, path = "tasks/{id}/complete")
-    public ResponseEntity complete(@PathVariable Long id) throws JsonProcessingException {
-        Task result = taskService.taskFilter(id);
-                                  
-        if (taskService.isTaskSetToComplete(result)) {
-            return ResponseEntity.ok(new ObjectMapper().writeValueAsString(result));
-        } else {
-            return ResponseEntity.notFound().build();
+    public CompletableFuture<ResponseEntity> complete(@PathVariable Long id) {
+        return writeBulkhead.submit(() -> taskService.completeTaskCoalesced(id))
+                .thenCompose(completion -> completion)
+                .thenApply(result -> {
+                    if (null != result) {
+                        return ResponseEntity.ok()
+                                .eTag(TaskJsonCache.eTag(result.id, result.version))
+                                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                                .body(taskJson(result));
+                    } else {
+                        return ResponseEntity.notFound().build();
+                    }
+                });
+    }
+    
+    private byte[] taskJson(Task task) {
+        try {
+            return objectMapper.writeValueAsBytes(taskService.taskToDTO(task));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 	
@@ -1,15 +1,19 @@
 package com.teamtaskmanager.controller;
 
-import java.io.IOException;
 import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.teamtaskmanager.bulkhead.Bulkhead;
 import com.teamtaskmanager.model.User;
 import com.teamtaskmanager.service.TaskService;
 import com.teamtaskmanager.service.UserService;
@@ -23,14 +27,29 @@ public class UserController {
 	@Autowired
 	private TaskService taskService;
 	
+	@Autowired
+	@Qualifier("searchBulkhead")
+	private Bulkhead searchBulkhead;
+	
+	@Autowired
+	@Qualifier("writeBulkhead")
+	private Bulkhead writeBulkhead;
+	
 	/**
-     * Get a list of all users in the form {"id": 12345, "name": "billybob"}
+     * Get a list of the users that have tasks, sorted by name, in the form {"id": 12345, "name": "billybob"}
      *
+     * @param prefix optional - if set then only users whose names start with this are returned
+     * @param limit  optional - if set then at most this many users are returned
      * @return
      */
     @RequestMapping(method = RequestMethod.GET, path = "users")
-    public ResponseEntity getUsers() {
-        return ResponseEntity.ok(userService.getAllUsers());
+    public CompletableFuture<ResponseEntity> getUsers(@RequestParam(required = false) String prefix, @RequestParam(required = false) Integer limit) {
+        return searchBulkhead.submit(() -> {
+            if (null != limit && limit < 1) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).header("Error", "Limit must be at least 1").build();
+            }
+            return ResponseEntity.ok(userService.getUsers(prefix, limit));
+        });
     }
 
 	
@@ -38,12 +57,15 @@ public class UserController {
     /**
      * Used for testing - should clear down all the database entities
      *
-     * @throws IOException
+     * @return
      */
     @RequestMapping(method = RequestMethod.DELETE, path = "clear")
-    public void clear() throws IOException {
-		taskService.clear();
-        userService.clear();
+    public CompletableFuture<Void> clear() {
+        return writeBulkhead.submit(() -> {
+            taskService.clear();
+            userService.clear();
+            return null;
+        });
     }
     
 }
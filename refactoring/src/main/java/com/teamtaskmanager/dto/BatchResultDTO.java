@@ -0,0 +1,25 @@
+package com.teamtaskmanager.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * The outcome of one task in a batch create - either the id of the new task, or why it wasn't created
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchResultDTO {
+    public Long id;
+    public String error;
+
+    public static BatchResultDTO created(Long id) {
+        BatchResultDTO result = new BatchResultDTO();
+        result.id = id;
+        return result;
+    }
+
+    public static BatchResultDTO failed(String error) {
+        BatchResultDTO result = new BatchResultDTO();
+        result.error = error;
+        return result;
+    }
+
+}
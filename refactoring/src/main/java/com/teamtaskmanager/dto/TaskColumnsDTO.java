@@ -0,0 +1,33 @@
+package com.teamtaskmanager.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tasks column by column - the nth task is made of the nth value of each list, so each field name is sent once
+ * rather than once per task
+ */
+public class TaskColumnsDTO {
+    public List<Long> id;
+    public List<String> user;
+    public List<String> task;
+    public List<String> due;
+    public List<Boolean> isCompleted;
+
+    public static TaskColumnsDTO of(List<TaskDTO> dtos) {
+        TaskColumnsDTO columns = new TaskColumnsDTO();
+        columns.id = new ArrayList<>(dtos.size());
+        columns.user = new ArrayList<>(dtos.size());
+        columns.task = new ArrayList<>(dtos.size());
+        columns.due = new ArrayList<>(dtos.size());
+        columns.isCompleted = new ArrayList<>(dtos.size());
+        for (TaskDTO dto : dtos) {
+            columns.id.add(dto.id);
+            columns.user.add(dto.user);
+            columns.task.add(dto.task);
+            columns.due.add(dto.due);
+            columns.isCompleted.add(dto.isCompleted);
+        }
+        return columns;
+    }
+}
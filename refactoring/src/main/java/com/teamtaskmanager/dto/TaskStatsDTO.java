@@ -0,0 +1,15 @@
+package com.teamtaskmanager.dto;
+
+import java.util.Map;
+
+/**
+ * Counts of tasks - open and completed, the open ones past their due date, and all of them by due month
+ * (yyyy-MM) and by user
+ */
+public class TaskStatsDTO {
+    public long open;
+    public long completed;
+    public long overdue;
+    public Map<String, Long> byDueMonth;
+    public Map<String, Long> byUser;
+}
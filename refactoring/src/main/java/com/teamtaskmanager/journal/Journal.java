@@ -0,0 +1,409 @@
+package com.teamtaskmanager.journal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of records, in memory-mapped segment files of a fixed size, with snapshots of the state the
+ * records build up so that the segments before a snapshot can be deleted.
+ * <p>
+ * A record is its length, its type and body, then a CRC32 of the type and body. Segments start zero filled, so a
+ * zero length marks the end of a segment, and a record with a bad CRC is one a crash tore, which ends the log.
+ * <p>
+ * Appending only copies a record into the mapped segment, which survives the process dying but not the machine.
+ * A flusher thread forces the segment to disk, and all the writers waiting in {@link #awaitDurable()} while it
+ * does share the one fsync - a group commit.
+ */
+public class Journal implements Closeable {
+
+	public interface RecordWriter {
+		void write(DataOutput out) throws IOException;
+	}
+
+	public interface RecordReader {
+		void read(byte type, DataInput in) throws IOException;
+	}
+
+	public interface SnapshotReader {
+		void read(DataInput in) throws IOException;
+	}
+
+	/**
+	 * Exposes the buffer, so records can be checksummed and copied without another copy being made
+	 */
+	private static class RecordBuffer extends ByteArrayOutputStream {
+		byte[] bytes() {
+			return buf;
+		}
+	}
+
+	private static final String SEGMENT = "segment-%010d.log";
+
+	private static final String SNAPSHOT = "snapshot-%010d.bin";
+
+	/**
+	 * The length before a record and the CRC after it
+	 */
+	private static final int FRAMING = 8;
+
+	private final Path directory;
+
+	private final int segmentSize;
+
+	private final boolean isSync;
+
+	private final long flushIntervalMillis;
+
+	private final RecordBuffer record = new RecordBuffer();
+
+	private final DataOutputStream recordOut = new DataOutputStream(record);
+
+	private final CRC32 crc = new CRC32();
+
+	private long segment;
+
+	private MappedByteBuffer buffer;
+
+	private long written;
+
+	private long durable;
+
+	private long writtenAtSnapshot;
+
+	private long recordsReplayed;
+
+	private boolean isTailTorn;
+
+	private boolean isClosed = true;
+
+	private RuntimeException flushFailure;
+
+	private Thread flusher;
+
+	/**
+	 * @param directory           where the segments and snapshots are kept
+	 * @param segmentSize         the size of each segment file, and so the biggest record
+	 * @param isSync              whether {@link #awaitDurable()} waits for the records to be forced to disk, or
+	 *                            they are left for the flusher to force in the background
+	 * @param flushIntervalMillis if not isSync, the time between the flusher forcing the records to disk
+	 */
+	public Journal(Path directory, int segmentSize, boolean isSync, long flushIntervalMillis) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.isSync = isSync;
+		this.flushIntervalMillis = flushIntervalMillis;
+	}
+
+	/**
+	 * Reads the latest snapshot, if there is one, and every record written after it, then opens the journal for
+	 * appending after the last whole record
+	 *
+	 * @param snapshot reads the state from a snapshot
+	 * @param records  applies each record in turn
+	 * @throws IOException
+	 */
+	public synchronized void recover(SnapshotReader snapshot, RecordReader records) throws IOException {
+		Files.createDirectories(directory);
+		TreeSet<Long> snapshots = numbers(SNAPSHOT);
+		TreeSet<Long> segments = numbers(SEGMENT);
+
+		long first = 0;
+		if (!snapshots.isEmpty()) {
+			first = snapshots.last();
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotPath(first)), 1 << 16))) {
+				snapshot.read(in);
+			}
+		}
+
+		long last = first;
+		int end = 0;
+		for (long number : segments.tailSet(first)) {
+			if (isTailTorn) {
+				throw new IOException("Journal segment " + last + " is corrupt before the end of the journal");
+			}
+			end = replay(number, records);
+			last = number;
+		}
+
+		open(last, end);
+		if (isTailTorn) {
+			// clear what's left of the torn record, so it can't be mistaken for part of a later one
+			for (int i = end; i < buffer.limit(); i++) {
+				buffer.put(i, (byte) 0);
+			}
+			buffer.force();
+		}
+
+		isClosed = false;
+		flusher = new Thread(this::flush, "journal-flusher");
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	/**
+	 * @return the position after the last whole record in the segment
+	 */
+	private int replay(long number, RecordReader records) throws IOException {
+		MappedByteBuffer segmentBuffer;
+		try (FileChannel channel = FileChannel.open(segmentPath(number), StandardOpenOption.READ)) {
+			segmentBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		int position = 0;
+		while (position + FRAMING < segmentBuffer.limit()) {
+			int length = segmentBuffer.getInt(position);
+			if (length == 0) {
+				break;
+			}
+			if (length < 0 || position + FRAMING + length > segmentBuffer.limit()) {
+				isTailTorn = true;
+				break;
+			}
+
+			byte[] body = new byte[length];
+			segmentBuffer.position(position + 4);
+			segmentBuffer.get(body);
+			crc.reset();
+			crc.update(body, 0, length);
+			if ((int) crc.getValue() != segmentBuffer.getInt()) {
+				isTailTorn = true;
+				break;
+			}
+
+			records.read(body[0], new DataInputStream(new ByteArrayInputStream(body, 1, length - 1)));
+			recordsReplayed++;
+			position += FRAMING + length;
+		}
+		return position;
+	}
+
+	/**
+	 * Appends a record. It will survive the process dying at once, and a crash of the machine once
+	 * {@link #awaitDurable()} returns.
+	 *
+	 * @param type identifies the kind of record to whoever reads it back
+	 * @param body writes the rest of the record
+	 * @throws IOException
+	 */
+	public synchronized void append(byte type, RecordWriter body) throws IOException {
+		checkOpen();
+		record.reset();
+		recordOut.writeByte(type);
+		body.write(recordOut);
+
+		int length = record.size();
+		if (FRAMING + length > segmentSize) {
+			throw new IOException("A record of " + length + " bytes doesn't fit in a journal segment");
+		}
+		if (buffer.remaining() < FRAMING + length) {
+			roll();
+		}
+
+		crc.reset();
+		crc.update(record.bytes(), 0, length);
+		buffer.putInt(length);
+		buffer.put(record.bytes(), 0, length);
+		buffer.putInt((int) crc.getValue());
+		written += FRAMING + length;
+	}
+
+	/**
+	 * Waits until everything appended so far has been forced to disk, along with whatever else the other writers
+	 * appended in the meantime - returns at once if the journal isn't sync
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void awaitDurable() throws IOException {
+		if (!isSync) {
+			return;
+		}
+		long target = written;
+		while (durable < target) {
+			checkOpen();
+			notifyAll();
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted waiting for the journal");
+			}
+		}
+	}
+
+	private void flush() {
+		try {
+			while (true) {
+				MappedByteBuffer toForce;
+				long target;
+				synchronized (this) {
+					if (!isSync && !isClosed) {
+						wait(flushIntervalMillis);
+					}
+					while (!isClosed && durable == written) {
+						wait(isSync ? 0 : flushIntervalMillis);
+					}
+					if (isClosed) {
+						return;
+					}
+					toForce = buffer;
+					target = written;
+				}
+
+				// appends carry on into the segment while it's forced, and wait for the next force
+				toForce.force();
+
+				synchronized (this) {
+					durable = Math.max(durable, target);
+					notifyAll();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			synchronized (this) {
+				flushFailure = e;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Starts a new segment, writes a snapshot of the state as of the start of it, then deletes the segments and
+	 * snapshots before it. Nothing may be appended while the state is being written.
+	 *
+	 * @param state writes the state
+	 * @throws IOException
+	 */
+	public void snapshot(RecordWriter state) throws IOException {
+		long number;
+		synchronized (this) {
+			checkOpen();
+			roll();
+			number = segment;
+			writtenAtSnapshot = written;
+		}
+
+		Path temp = directory.resolve(String.format(SNAPSHOT, number) + ".tmp");
+		try (FileOutputStream file = new FileOutputStream(temp.toFile());
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+			state.write(out);
+			out.flush();
+			file.getFD().sync();
+		}
+		Files.move(temp, snapshotPath(number), StandardCopyOption.ATOMIC_MOVE);
+
+		for (long old : numbers(SEGMENT).headSet(number)) {
+			Files.deleteIfExists(segmentPath(old));
+		}
+		for (long old : numbers(SNAPSHOT).headSet(number)) {
+			Files.deleteIfExists(snapshotPath(old));
+		}
+	}
+
+	/**
+	 * @return the bytes appended since the last snapshot, or since the journal was opened
+	 */
+	public synchronized long getSizeSinceSnapshot() {
+		return written - writtenAtSnapshot;
+	}
+
+	/**
+	 * @return the number of records read back by {@link #recover}
+	 */
+	public synchronized long getRecordsReplayed() {
+		return recordsReplayed;
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (isClosed) {
+				return;
+			}
+			isClosed = true;
+			notifyAll();
+		}
+		try {
+			flusher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			buffer.force();
+			durable = written;
+		}
+	}
+
+	/**
+	 * Forces the current segment to disk and moves on to the next
+	 */
+	private void roll() throws IOException {
+		buffer.force();
+		durable = written;
+		notifyAll();
+		open(segment + 1, 0);
+	}
+
+	private void open(long number, int position) throws IOException {
+		try (FileChannel channel = FileChannel.open(segmentPath(number),
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentSize, channel.size()));
+		}
+		buffer.position(position);
+		segment = number;
+	}
+
+	private void checkOpen() throws IOException {
+		if (null != flushFailure) {
+			throw new IOException("The journal couldn't be forced to disk", flushFailure);
+		}
+		if (isClosed) {
+			throw new IOException("The journal is closed");
+		}
+	}
+
+	private Path segmentPath(long number) {
+		return directory.resolve(String.format(SEGMENT, number));
+	}
+
+	private Path snapshotPath(long number) {
+		return directory.resolve(String.format(SNAPSHOT, number));
+	}
+
+	/**
+	 * @param pattern {@link #SEGMENT} or {@link #SNAPSHOT}
+	 * @return the numbers of the files of that kind in the directory
+	 */
+	private TreeSet<Long> numbers(String pattern) throws IOException {
+		String prefix = pattern.substring(0, pattern.indexOf('%'));
+		String suffix = pattern.substring(pattern.lastIndexOf('.'));
+		TreeSet<Long> numbers = new TreeSet<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				numbers.add(Long.valueOf(name.substring(prefix.length(), name.length() - suffix.length())));
+			}
+		}
+		return numbers;
+	}
+
+}
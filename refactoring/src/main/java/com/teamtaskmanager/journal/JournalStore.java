@@ -0,0 +1,217 @@
+package com.teamtaskmanager.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Makes the in-memory store engine durable, for taskstore.engine=log - every change to the tasks and users is
+ * appended to a {@link Journal}, and on startup the store is rebuilt from the latest snapshot and the records
+ * after it.
+ * <p>
+ * Once the journal has grown by application.journal.snapshot-every bytes since the last snapshot, a new one is
+ * taken in the background, which holds up changes, but not reads, while it's written.
+ */
+@Component
+@ConditionalOnProperty(name = "taskstore.engine", havingValue = "log")
+public class JournalStore implements SmartInitializingSingleton, DisposableBean {
+
+	private static final Logger LOG = LoggerFactory.getLogger(JournalStore.class);
+
+	private final Map<String, Journaled> journaled = new LinkedHashMap<>();
+
+	private final Journal journal;
+
+	private final long snapshotEvery;
+
+	private final Timer commits;
+
+	private final ReadWriteLock changes = new ReentrantReadWriteLock();
+
+	private final ExecutorService snapshots = Executors.newSingleThreadExecutor(work -> {
+		Thread thread = new Thread(work, "journal-snapshot");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final AtomicBoolean isSnapshotDue = new AtomicBoolean();
+
+	private volatile boolean isReplaying;
+
+	private long recoveryNanos;
+
+	public JournalStore(MeterRegistry registry,
+			@Value("${application.journal.dir:data/journal}") String directory,
+			@Value("${application.journal.segment-size:16777216}") int segmentSize,
+			@Value("${application.journal.sync:true}") boolean isSync,
+			@Value("${application.journal.async-flush-interval-ms:10}") long flushIntervalMillis,
+			@Value("${application.journal.snapshot-every:67108864}") long snapshotEvery) {
+		this.journal = new Journal(Paths.get(directory), segmentSize, isSync, flushIntervalMillis);
+		this.snapshotEvery = snapshotEvery;
+		this.commits = Timer.builder("taskmanager.journal.commit").register(registry);
+	}
+
+	/**
+	 * Adds something to recover from the journal and snapshot - the repositories register themselves, rather than
+	 * through their proxies, so replaying isn't timed and translated a record at a time
+	 *
+	 * @param name      identifies its part of a snapshot
+	 * @param recovered
+	 */
+	public void register(String name, Journaled recovered) {
+		journaled.put(name, recovered);
+	}
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		long start = System.nanoTime();
+		isReplaying = true;
+		try {
+			journal.recover(
+					in -> {
+						for (int i = in.readInt(); i != 0; i--) {
+							String name = in.readUTF();
+							Journaled recovered = journaled.get(name);
+							if (null == recovered) {
+								throw new IOException("Nothing to read the snapshot of " + name);
+							}
+							recovered.readFrom(in);
+						}
+					},
+					(type, in) -> {
+						for (Journaled recovered : journaled.values()) {
+							if (recovered.replay(type, in)) {
+								return;
+							}
+						}
+						throw new IOException("Not a journal record type: " + type);
+					});
+		} catch (IOException e) {
+			throw new UncheckedIOException("Couldn't recover from the journal", e);
+		} finally {
+			isReplaying = false;
+		}
+		recoveryNanos = System.nanoTime() - start;
+	}
+
+	/**
+	 * Makes a change to the store, which appends its records, and waits for them to be durable
+	 *
+	 * @param change
+	 * @return what the change returns
+	 */
+	public <T> T write(Supplier<T> change) {
+		T result;
+		changes.readLock().lock();
+		try {
+			result = change.get();
+		} finally {
+			changes.readLock().unlock();
+		}
+
+		long start = System.nanoTime();
+		try {
+			journal.awaitDurable();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		commits.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+		if (journal.getSizeSinceSnapshot() >= snapshotEvery && isSnapshotDue.compareAndSet(false, true)) {
+			snapshots.execute(() -> {
+				try {
+					snapshot();
+				} catch (RuntimeException e) {
+					LOG.warn("Couldn't snapshot the journal", e);
+				} finally {
+					isSnapshotDue.set(false);
+				}
+			});
+		}
+		return result;
+	}
+
+	/**
+	 * Appends the record of a change - the repositories call this while they hold their own locks, so the records
+	 * are in the order the changes were made. Nothing is appended while the journal is being replayed.
+	 *
+	 * @param type
+	 * @param body
+	 */
+	public void append(byte type, Journal.RecordWriter body) {
+		if (isReplaying) {
+			return;
+		}
+		try {
+			journal.append(type, body);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Snapshots the users and tasks, and deletes the journal before the snapshot
+	 */
+	public void snapshot() {
+		changes.writeLock().lock();
+		try {
+			journal.snapshot(out -> {
+				out.writeInt(journaled.size());
+				for (Map.Entry<String, Journaled> entry : journaled.entrySet()) {
+					out.writeUTF(entry.getKey());
+					entry.getValue().writeTo(out);
+				}
+			});
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			changes.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return how long the store took to recover at startup
+	 */
+	public long getRecoveryNanos() {
+		return recoveryNanos;
+	}
+
+	/**
+	 * @return the number of records replayed at startup, after the snapshot
+	 */
+	public long getRecordsReplayed() {
+		return journal.getRecordsReplayed();
+	}
+
+	@Override
+	public void destroy() throws IOException {
+		snapshots.shutdown();
+		try {
+			snapshots.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		journal.close();
+	}
+
+}
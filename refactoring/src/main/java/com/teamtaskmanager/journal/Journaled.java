@@ -0,0 +1,32 @@
+package com.teamtaskmanager.journal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Something whose changes are kept in the journal of the {@link JournalStore}
+ */
+public interface Journaled {
+
+	/**
+	 * Writes out the whole state, for a snapshot
+	 */
+	void writeTo(DataOutput out) throws IOException;
+
+	/**
+	 * Replaces the whole state with one written by {@link #writeTo(DataOutput)}
+	 */
+	void readFrom(DataInput in) throws IOException;
+
+	/**
+	 * Makes the change a journal record describes, if it's one of its records
+	 *
+	 * @param type
+	 * @param in   the body of the record
+	 * @return whether it was one of its records
+	 * @throws IOException
+	 */
+	boolean replay(byte type, DataInput in) throws IOException;
+
+}
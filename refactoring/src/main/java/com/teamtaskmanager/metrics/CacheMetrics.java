@@ -0,0 +1,54 @@
+package com.teamtaskmanager.metrics;
+
+import java.util.function.ToDoubleFunction;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.teamtaskmanager.service.TaskJsonCache;
+import com.teamtaskmanager.service.UserIdIndex;
+import com.teamtaskmanager.service.UserNameCache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Publishes the hits, misses, hit ratio and size of the in-memory caches, tagged by cache.
+ * The Hibernate second-level cache regions, when enabled, are published with the other hibernate metrics.
+ */
+@Component
+public class CacheMetrics implements MeterBinder {
+
+	@Autowired
+	public TaskJsonCache taskJsonCache;
+
+	@Autowired
+	public UserNameCache userNameCache;
+
+	@Autowired
+	public UserIdIndex userIdIndex;
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		bind(registry, "task-json", taskJsonCache, TaskJsonCache::getHits, TaskJsonCache::getMisses, TaskJsonCache::size);
+		bind(registry, "user-name", userNameCache, UserNameCache::getHits, UserNameCache::getMisses, UserNameCache::size);
+		bind(registry, "user-id", userIdIndex, UserIdIndex::getHits, UserIdIndex::getMisses, UserIdIndex::size);
+	}
+
+	private static <T> void bind(MeterRegistry registry, String name, T cache,
+			ToDoubleFunction<T> hits, ToDoubleFunction<T> misses, ToDoubleFunction<T> size) {
+		FunctionCounter.builder("taskmanager.cache.gets", cache, hits)
+				.tags("cache", name, "result", "hit").register(registry);
+		FunctionCounter.builder("taskmanager.cache.gets", cache, misses)
+				.tags("cache", name, "result", "miss").register(registry);
+		Gauge.builder("taskmanager.cache.hit.ratio", cache, c -> {
+			double gets = hits.applyAsDouble(c) + misses.applyAsDouble(c);
+			return gets == 0 ? 0 : hits.applyAsDouble(c) / gets;
+		}).tag("cache", name).register(registry);
+		Gauge.builder("taskmanager.cache.size", cache, size)
+				.tag("cache", name).register(registry);
+	}
+
+}
@@ -0,0 +1,68 @@
+package com.teamtaskmanager.metrics;
+
+import java.io.Serializable;
+
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.hibernate.type.Type;
+
+/**
+ * Counts the SQL statements Hibernate prepares and the entities it loads, against the counts of the request
+ * the current thread is working for.
+ * <p>
+ * Hibernate creates this itself from the hibernate.session_factory.statement_inspector and
+ * hibernate.session_factory.interceptor properties, so the counts are found through a thread local. Work handed
+ * to another thread takes the counts with it through {@link #propagate(Runnable)}.
+ */
+public class HibernateRequestCounter extends EmptyInterceptor implements StatementInspector {
+
+	private static final long serialVersionUID = 1L;
+
+	public static class Counts {
+		public long statements;
+		public long entities;
+	}
+
+	private static final ThreadLocal<Counts> CURRENT = ThreadLocal.withInitial(Counts::new);
+
+	/**
+	 * Starts counting afresh on this thread
+	 *
+	 * @return the new counts
+	 */
+	public static Counts start() {
+		Counts counts = new Counts();
+		CURRENT.set(counts);
+		return counts;
+	}
+
+	/**
+	 * @param work
+	 * @return the work, counting against the counts of the thread that called this, whichever thread runs it
+	 */
+	public static Runnable propagate(Runnable work) {
+		Counts counts = CURRENT.get();
+		return () -> {
+			Counts previous = CURRENT.get();
+			CURRENT.set(counts);
+			try {
+				work.run();
+			} finally {
+				CURRENT.set(previous);
+			}
+		};
+	}
+
+	@Override
+	public String inspect(String sql) {
+		CURRENT.get().statements++;
+		return sql;
+	}
+
+	@Override
+	public boolean onLoad(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+		CURRENT.get().entities++;
+		return false;
+	}
+
+}
@@ -0,0 +1,62 @@
+package com.teamtaskmanager.metrics;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Times every public method of the services and repositories, as taskmanager.service and
+ * taskmanager.repository tagged with the class and method.
+ * <p>
+ * Calls a service makes to its own methods don't go through the proxy, so aren't timed separately.
+ */
+@Aspect
+@Component
+@ConditionalOnProperty(name = "application.metrics.method-timers", matchIfMissing = true)
+public class MethodTimingAspect {
+
+	@Autowired
+	public MeterRegistry meterRegistry;
+
+	private final Map<Method, Timer> timers = new ConcurrentHashMap<>();
+
+	@Around("execution(public * com.teamtaskmanager.service.*Service.*(..))")
+	public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+		return time("taskmanager.service", joinPoint);
+	}
+
+	@Around("execution(public * com.teamtaskmanager.repositories.*Repository.*(..))")
+	public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+		return time("taskmanager.repository", joinPoint);
+	}
+
+	private Object time(String name, ProceedingJoinPoint joinPoint) throws Throwable {
+		// tag with the implementation, not the interface the method was called through
+		Method invoked = AopUtils.getMostSpecificMethod(((MethodSignature) joinPoint.getSignature()).getMethod(), AopUtils.getTargetClass(joinPoint.getTarget()));
+		Timer timer = timers.computeIfAbsent(invoked, method -> Timer.builder(name)
+				.tag("class", method.getDeclaringClass().getSimpleName())
+				.tag("method", method.getName())
+				.register(meterRegistry));
+
+		long start = System.nanoTime();
+		try {
+			return joinPoint.proceed();
+		} finally {
+			timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+}
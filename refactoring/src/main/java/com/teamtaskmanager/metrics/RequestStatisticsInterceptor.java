@@ -0,0 +1,55 @@
+package com.teamtaskmanager.metrics;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Records the SQL statements and entities each request needed, as taskmanager.request.statements and
+ * taskmanager.request.entities tagged with the method and uri pattern like http.server.requests.
+ * <p>
+ * Work done on a bulkhead is counted against the request that submitted it. A streamed search writes its
+ * results from a thread of its own, so only what it did before the response started is counted.
+ */
+@Component
+public class RequestStatisticsInterceptor extends HandlerInterceptorAdapter {
+
+	private static final String COUNTS = RequestStatisticsInterceptor.class.getName() + ".COUNTS";
+
+	@Autowired
+	public MeterRegistry meterRegistry;
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		// an asynchronous request is dispatched again when its result is ready, and carries on with the same counts
+		if (request.getDispatcherType() != DispatcherType.ASYNC) {
+			request.setAttribute(COUNTS, HibernateRequestCounter.start());
+		}
+		return true;
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+		HibernateRequestCounter.Counts counts = (HibernateRequestCounter.Counts) request.getAttribute(COUNTS);
+		if (null == counts || !(handler instanceof HandlerMethod)) {
+			return;
+		}
+		Object uri = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+		String[] tags = {"method", request.getMethod(), "uri", null == uri ? "UNKNOWN" : uri.toString()};
+
+		DistributionSummary.builder("taskmanager.request.statements").tags(tags).register(meterRegistry)
+				.record(counts.statements);
+		DistributionSummary.builder("taskmanager.request.entities").tags(tags).register(meterRegistry)
+				.record(counts.entities);
+	}
+
+}
@@ -1,26 +1,48 @@
 package com.teamtaskmanager.model;
 
+import java.time.LocalDate;
+
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "task")
+@Table(indexes = {
+		@Index(name = "idx_task_user_id", columnList = "userId"),
+		@Index(name = "idx_task_due", columnList = "due"),
+		@Index(name = "idx_task_is_completed", columnList = "isCompleted")
+})
 public class Task {
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "task_seq")
+    @SequenceGenerator(name = "task_seq", sequenceName = "task_seq", allocationSize = 50)
     public Long id;
     
     public Long userId;
     
     public String task;
     
-    public String due;
+    public LocalDate due;
     
     public boolean isCompleted;
+    
+    @Version
+    public long version;
 
     public Task() {}
     
-	public Task(Long userId, String task, String due, boolean isCompleted) {
+	public Task(Long userId, String task, LocalDate due, boolean isCompleted) {
 		super();
 		this.userId = userId;
 		this.task = task;
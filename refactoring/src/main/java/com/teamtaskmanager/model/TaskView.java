@@ -0,0 +1,55 @@
+package com.teamtaskmanager.model;
+
+import java.time.LocalDate;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * A task as searches return it, with its user's name alongside - the read side of the database engines, kept up to
+ * date in the same transaction as the {@link Task} it mirrors, so a search reads one table and looks up nothing else
+ */
+@Entity
+@Table(indexes = {
+		@Index(name = "idx_task_view_user_id", columnList = "userId"),
+		@Index(name = "idx_task_view_user_name", columnList = "userName"),
+		@Index(name = "idx_task_view_due", columnList = "due"),
+		@Index(name = "idx_task_view_is_completed", columnList = "isCompleted")
+})
+public class TaskView {
+	/**
+	 * The id of the task
+	 */
+	@Id
+	public Long id;
+
+	public Long userId;
+
+	public String userName;
+
+	public String task;
+
+	public LocalDate due;
+
+	public boolean isCompleted;
+
+	/**
+	 * The version of the task
+	 */
+	public long version;
+
+	public TaskView() {}
+
+	public TaskView(Task task, String userName) {
+		this.id = task.id;
+		this.userId = task.userId;
+		this.userName = userName;
+		this.task = task.task;
+		this.due = task.due;
+		this.isCompleted = task.isCompleted;
+		this.version = task.version;
+	}
+
+}
@@ -1,32 +1,467 @@
 package com.teamtaskmanager.repositories;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
 
 import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
 import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
 import javax.transaction.Transactional;
 
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.query.Query;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.stereotype.Repository;
 
 import com.teamtaskmanager.model.Task;
+import com.teamtaskmanager.model.TaskView;
+import com.teamtaskmanager.model.User;
+import com.teamtaskmanager.search.TaskCursor;
+import com.teamtaskmanager.search.TaskSort;
+import com.teamtaskmanager.utilities.FormatDate;
 
 @Repository
 @Transactional
-public class JpaTaskRepository {
+// the sharded engine keeps each shard's part through this repository too
+@ConditionalOnExpression("'${taskstore.engine:jpa}'.matches('jpa|sharded')")
+public class JpaTaskRepository implements TaskRepository {
 
 	@PersistenceContext
 	private EntityManager entityManager;
 	
+	@Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+	private int batchSize;
+	
+	/**
+	 * The most ids bound into one statement - the ids from the indexes can be most of the tasks
+	 */
+	@Value("${application.search.max-bound-ids:1000}")
+	private int maxBoundIds;
+	
+	/**
+	 * The tasks read at a time when there are too many ids to bind
+	 */
+	@Value("${application.search.stream-chunk-size:500}")
+	private int readChunkSize;
+	
 	public List<Task> findAll(Class<Task> type) {
 		return entityManager.createQuery("from " + type.getSimpleName(), type).getResultList();
 	}
 	
+	/**
+	 * Loads only the tasks matching the search, already ordered, so that filtering and sorting run
+	 * against the indexes on userId, due and isCompleted rather than in memory.
+	 *
+	 * @param userId           optional - only tasks belonging to this user
+	 * @param dateAfter        optional - only tasks due strictly after this date
+	 * @param dateBefore       optional - only tasks due strictly before this date
+	 * @param ids              optional - only tasks with these ids - up to application.search.max-bound-ids of them
+	 *                         are passed to the database as a list, and with more the tasks matching the other
+	 *                         filters are read in order and those with the ids kept
+	 * @param sort             the order of the results
+	 * @param includeCompleted whether completed tasks are returned
+	 * @return
+	 */
+	public List<Task> search(Long userId, LocalDate dateAfter, LocalDate dateBefore, long[] ids, TaskSort sort, boolean includeCompleted) {
+		return search(userId, dateAfter, dateBefore, ids, sort, includeCompleted, null, null);
+	}
+	
+	/**
+	 * As {@link #search(Long, LocalDate, LocalDate, long[], TaskSort, boolean)}, but only the tasks sorted after the cursor, and no
+	 * more than limit of them - the cursor becomes a range condition on the sort keys, so the database seeks to the
+	 * start of the page rather than reading and discarding everything before it.
+	 *
+	 * @param after optional - only tasks sorted after this position
+	 * @param limit optional - the most tasks to return
+	 * @return
+	 */
+	public List<Task> search(Long userId, LocalDate dateAfter, LocalDate dateBefore, long[] ids, TaskSort sort, boolean includeCompleted, TaskCursor after, Integer limit) {
+		return search(Task.class, t -> t.id, userId, dateAfter, dateBefore, ids, sort, includeCompleted, after, limit);
+	}
+	
+	/**
+	 * Searches the task_view table alone - the user names are in it, so sorting by user needs no join and the
+	 * results need nothing else looked up
+	 */
+	public List<TaskView> searchViews(Long userId, LocalDate dateAfter, LocalDate dateBefore, long[] ids, TaskSort sort, boolean includeCompleted, TaskCursor after, Integer limit) {
+		return search(TaskView.class, v -> v.id, userId, dateAfter, dateBefore, ids, sort, includeCompleted, after, limit);
+	}
+	
+	private <T> List<T> search(Class<T> type, ToLongFunction<T> idOf, Long userId, LocalDate dateAfter, LocalDate dateBefore, long[] ids, TaskSort sort, boolean includeCompleted, TaskCursor after, Integer limit) {
+		if (null == ids || ids.length <= maxBoundIds) {
+			TypedQuery<T> query = createSearchQuery(type, userId, dateAfter, dateBefore, ids, sort, includeCompleted, after);
+			if (null != limit) {
+				query.setMaxResults(limit);
+			}
+			return query.getResultList();
+		}
+		
+		List<T> found = new ArrayList<>();
+		scroll(createSearchQuery(type, userId, dateAfter, dateBefore, null, sort, includeCompleted, after), type, idOf, sorted(ids),
+				null == limit ? Integer.MAX_VALUE : limit, readChunkSize, found::addAll);
+		return found;
+	}
+	
+	/**
+	 * Runs the search through a forward-only cursor, handing the tasks over a chunk at a time and then detaching
+	 * them, so that only one chunk of entities is ever held in memory however many tasks match.
+	 *
+	 * @param chunkSize the number of tasks handed over at once
+	 * @param chunks    called with each chunk of tasks, in order
+	 */
+	public void scroll(Long userId, LocalDate dateAfter, LocalDate dateBefore, long[] ids, TaskSort sort, boolean includeCompleted, int chunkSize, Consumer<List<Task>> chunks) {
+		scroll(Task.class, t -> t.id, userId, dateAfter, dateBefore, ids, sort, includeCompleted, chunkSize, chunks);
+	}
+	
+	public void scrollViews(Long userId, LocalDate dateAfter, LocalDate dateBefore, long[] ids, TaskSort sort, boolean includeCompleted, int chunkSize, Consumer<List<TaskView>> chunks) {
+		scroll(TaskView.class, v -> v.id, userId, dateAfter, dateBefore, ids, sort, includeCompleted, chunkSize, chunks);
+	}
+	
+	private <T> void scroll(Class<T> type, ToLongFunction<T> idOf, Long userId, LocalDate dateAfter, LocalDate dateBefore, long[] ids, TaskSort sort, boolean includeCompleted, int chunkSize, Consumer<List<T>> chunks) {
+		if (null == ids || ids.length <= maxBoundIds) {
+			scroll(createSearchQuery(type, userId, dateAfter, dateBefore, ids, sort, includeCompleted, null), type, idOf, null, Integer.MAX_VALUE, chunkSize, chunks);
+		} else {
+			scroll(createSearchQuery(type, userId, dateAfter, dateBefore, null, sort, includeCompleted, null), type, idOf, sorted(ids), Integer.MAX_VALUE, chunkSize, chunks);
+		}
+	}
+	
+	/**
+	 * Reads the results through a forward-only cursor, detaching them every chunk read, so that only a chunk of
+	 * entities is held in memory however many there are
+	 *
+	 * @param ids    optional - only keep the results with these ids, sorted
+	 * @param max    stops reading once this many results are kept
+	 * @param chunks called with each chunk of the results kept, in order
+	 */
+	private <T> void scroll(TypedQuery<T> typedQuery, Class<T> type, ToLongFunction<T> idOf, long[] ids, int max, int chunkSize, Consumer<List<T>> chunks) {
+		// Hibernate's TypedQuery<T> is its Query<T>, but unwrap can only name the raw class
+		@SuppressWarnings("unchecked")
+		Query<T> query = typedQuery.unwrap(Query.class);
+		query.setReadOnly(true);
+		query.setFetchSize(chunkSize);
+		
+		try (ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY)) {
+			List<T> chunk = new ArrayList<>(chunkSize);
+			int read = 0;
+			int kept = 0;
+			while (kept != max && results.next()) {
+				T result = type.cast(results.get(0));
+				if (null == ids || Arrays.binarySearch(ids, idOf.applyAsLong(result)) >= 0) {
+					chunk.add(result);
+					kept++;
+				}
+				if (++read % chunkSize == 0) {
+					if (!chunk.isEmpty()) {
+						chunks.accept(chunk);
+						chunk = new ArrayList<>(chunkSize);
+					}
+					entityManager.clear();
+				}
+			}
+			if (!chunk.isEmpty()) {
+				chunks.accept(chunk);
+				entityManager.clear();
+			}
+		}
+	}
+	
+	private static long[] sorted(long[] ids) {
+		for (int i = 1; i < ids.length; i++) {
+			if (ids[i - 1] > ids[i]) {
+				long[] copy = ids.clone();
+				Arrays.sort(copy);
+				return copy;
+			}
+		}
+		return ids;
+	}
+	
+	/**
+	 * @param type {@link Task} or {@link TaskView}, which have the same fields to search on
+	 */
+	private <T> TypedQuery<T> createSearchQuery(Class<T> type, Long userId, LocalDate dateAfter, LocalDate dateBefore, long[] ids, TaskSort sort, boolean includeCompleted, TaskCursor after) {
+		// the user table is only needed to sort tasks by user name - views have the names in them
+		boolean isView = type == TaskView.class;
+		boolean isSortedByUser = !isView && sort.getKeys().stream().anyMatch(key -> key.field == TaskSort.Field.USER);
+		
+		List<String> conditions = new ArrayList<>();
+		if (isSortedByUser) {
+			conditions.add("u.id = t.userId");
+		}
+		if (null != userId) {
+			conditions.add("t.userId = :userId");
+		}
+		if (null != dateAfter) {
+			conditions.add("t.due > :dateAfter");
+		}
+		if (null != dateBefore) {
+			conditions.add("t.due < :dateBefore");
+		}
+		if (null != ids) {
+			conditions.add("t.id in :ids");
+		}
+		if (!includeCompleted) {
+			conditions.add("t.isCompleted = false");
+		}
+		if (null != after) {
+			conditions.add("(" + keysetCondition(sort, isView) + ")");
+		}
+		
+		StringBuilder jpql = new StringBuilder("select t from ").append(type.getSimpleName()).append(isSortedByUser ? " t, User u" : " t");
+		if (!conditions.isEmpty()) {
+			jpql.append(" where ").append(String.join(" and ", conditions));
+		}
+		jpql.append(" order by ").append(sort.getKeys().stream()
+				.map(key -> sortColumn(key.field, isView) + (key.isDescending ? " desc" : " asc"))
+				.collect(Collectors.joining(", ")));
+		
+		TypedQuery<T> query = entityManager.createQuery(jpql.toString(), type);
+		if (null != userId) {
+			query.setParameter("userId", userId);
+		}
+		if (null != dateAfter) {
+			query.setParameter("dateAfter", dateAfter);
+		}
+		if (null != dateBefore) {
+			query.setParameter("dateBefore", dateBefore);
+		}
+		if (null != ids) {
+			query.setParameter("ids", Arrays.stream(ids).boxed().collect(Collectors.toList()));
+		}
+		if (null != after) {
+			for (int i = 0; i != sort.getKeys().size(); i++) {
+				query.setParameter("after" + i, cursorValue(sort.getKeys().get(i).field, after.getValues().get(i)));
+			}
+		}
+		return query;
+	}
+	
+	/**
+	 * For keys k0, k1, k2 builds (k0 > :after0) or (k0 = :after0 and k1 > :after1) or (k0 = :after0 and k1 = :after1 and k2 > :after2),
+	 * with &lt; in place of &gt; for descending keys
+	 */
+	private String keysetCondition(TaskSort sort, boolean isView) {
+		List<String> disjuncts = new ArrayList<>();
+		List<TaskSort.Key> keys = sort.getKeys();
+		for (int i = 0; i != keys.size(); i++) {
+			StringBuilder conjunct = new StringBuilder("(");
+			for (int j = 0; j != i; j++) {
+				conjunct.append(sortColumn(keys.get(j).field, isView)).append(" = :after").append(j).append(" and ");
+			}
+			conjunct.append(sortColumn(keys.get(i).field, isView)).append(keys.get(i).isDescending ? " < " : " > ").append(":after").append(i).append(")");
+			disjuncts.add(conjunct.toString());
+		}
+		return String.join(" or ", disjuncts);
+	}
+	
+	private Object cursorValue(TaskSort.Field field, String value) {
+		switch (field) {
+		case ID:
+			return Long.valueOf(value);
+		case DUE:
+			return FormatDate.toDate(value);
+		default:
+			return value;
+		}
+	}
+	
+	private String sortColumn(TaskSort.Field field, boolean isView) {
+		switch (field) {
+		case USER:
+			return isView ? "t.userName" : "u.name";
+		case ID:
+			return "t.id";
+		case DUE:
+			return "t.due";
+		case TASK:
+			return "t.task";
+		default:
+			throw new IllegalArgumentException("Not a field: " + field);
+		}
+	}
+	
+	public Task findById(Long id) {
+		return entityManager.find(Task.class, id);
+	}
+	
+	public TaskView findViewById(Long id) {
+		return entityManager.find(TaskView.class, id);
+	}
+	
+	/**
+	 * Replaces all the views with ones made from the tasks and users, in one statement
+	 */
+	public void rebuildViews() {
+		entityManager.createQuery("delete from TaskView").executeUpdate();
+		entityManager.createQuery("insert into TaskView (id, userId, userName, task, due, isCompleted, version)"
+				+ " select t.id, t.userId, u.name, t.task, t.due, t.isCompleted, t.version from Task t, User u where u.id = t.userId")
+				.executeUpdate();
+	}
+	
+	public void removeAll() {
+		entityManager.createQuery("delete from TaskView").executeUpdate();
+		entityManager.createQuery("delete from Task").executeUpdate();
+	}
+	
 	public void remove(Task t) {
 		entityManager.remove(t);
+		removeView(t.id);
 	}
 	
+	/**
+	 * Finds and removes a task in one transaction
+	 *
+	 * @param id
+	 * @return the task that was removed, or null if there was none
+	 */
+	public Task removeById(Long id) {
+		Task t = entityManager.find(Task.class, id);
+		if (null != t) {
+			entityManager.remove(t);
+			removeView(id);
+		}
+		return t;
+	}
+	
+	/**
+	 * Finds an open task and marks it as completed in one transaction - if another transaction completes it at the
+	 * same time, the version check fails the later of the two
+	 *
+	 * @param id
+	 * @return the task as it was saved, with its new version, or null if there is no open task with the id
+	 */
+	public Task complete(Long id) {
+		Task t = entityManager.find(Task.class, id);
+		if (null == t || t.isCompleted) {
+			return null;
+		}
+		t.isCompleted = true;
+		entityManager.flush();
+		TaskView view = entityManager.find(TaskView.class, id);
+		if (null != view) {
+			view.isCompleted = true;
+			view.version = t.version;
+		}
+		return t;
+	}
+	
+	/**
+	 * Locks the open tasks matching the filters, then completes them with an update per application.search.max-bound-ids
+	 * of them - the lock keeps other transactions from completing or deleting them in between, so the tasks returned
+	 * are exactly those updated
+	 */
+	public List<Task> completeAll(Long userId, LocalDate dateBefore, long[] ids) {
+		List<Task> tasks = new ArrayList<>();
+		if (null == ids) {
+			tasks.addAll(lockOpen(userId, dateBefore, null));
+		} else {
+			long[] distinct = Arrays.stream(ids).distinct().toArray();
+			for (int from = 0; from < distinct.length; from += maxBoundIds) {
+				tasks.addAll(lockOpen(userId, dateBefore, Arrays.copyOfRange(distinct, from, Math.min(distinct.length, from + maxBoundIds))));
+			}
+		}
+		if (tasks.isEmpty()) {
+			return tasks;
+		}
+		
+		// detach the tasks first, so the changes made to them below aren't flushed as updates of their own
+		tasks.forEach(entityManager::detach);
+		for (int from = 0; from < tasks.size(); from += maxBoundIds) {
+			List<Long> part = tasks.subList(from, Math.min(tasks.size(), from + maxBoundIds)).stream().map(t -> t.id).collect(Collectors.toList());
+			entityManager.createQuery("update Task t set t.isCompleted = true, t.version = t.version + 1 where t.id in :ids")
+					.setParameter("ids", part)
+					.executeUpdate();
+			entityManager.createQuery("update TaskView v set v.isCompleted = true, v.version = v.version + 1 where v.id in :ids")
+					.setParameter("ids", part)
+					.executeUpdate();
+		}
+		for (Task t : tasks) {
+			t.isCompleted = true;
+			t.version++;
+		}
+		return tasks;
+	}
+	
+	/**
+	 * @param ids optional - no more than application.search.max-bound-ids
+	 * @return the open tasks matching the filters, locked
+	 */
+	private List<Task> lockOpen(Long userId, LocalDate dateBefore, long[] ids) {
+		List<String> conditions = new ArrayList<>();
+		conditions.add("t.isCompleted = false");
+		if (null != userId) {
+			conditions.add("t.userId = :userId");
+		}
+		if (null != dateBefore) {
+			conditions.add("t.due < :dateBefore");
+		}
+		if (null != ids) {
+			conditions.add("t.id in :ids");
+		}
+		
+		TypedQuery<Task> query = entityManager.createQuery("select t from Task t where " + String.join(" and ", conditions), Task.class);
+		if (null != userId) {
+			query.setParameter("userId", userId);
+		}
+		if (null != dateBefore) {
+			query.setParameter("dateBefore", dateBefore);
+		}
+		if (null != ids) {
+			query.setParameter("ids", Arrays.stream(ids).boxed().collect(Collectors.toList()));
+		}
+		return query.setLockMode(LockModeType.PESSIMISTIC_WRITE).getResultList();
+	}
+	
+	private void removeView(Long id) {
+		TaskView view = entityManager.find(TaskView.class, id);
+		if (null != view) {
+			entityManager.remove(view);
+		}
+	}
+	
+	/**
+	 * Inserts the task and its view together
+	 */
 	public void persist(Task t) {
 		entityManager.persist(t);
+		entityManager.persist(new TaskView(t, entityManager.find(User.class, t.userId).name));
+	}
+	
+	/**
+	 * Inserts many tasks and their views in one transaction, flushing a JDBC batch at a time and detaching what
+	 * has been written so the persistence context doesn't grow with the number of tasks - the names of all their
+	 * users are loaded first, a query per application.search.max-bound-ids of them
+	 */
+	public void persistAll(List<Task> tasks) {
+		if (tasks.isEmpty()) {
+			return;
+		}
+		List<Long> userIds = tasks.stream().map(t -> t.userId).distinct().collect(Collectors.toList());
+		Map<Long, String> userNames = new HashMap<>();
+		for (int from = 0; from < userIds.size(); from += maxBoundIds) {
+			entityManager.createQuery("from User u where u.id in :ids", User.class)
+					.setParameter("ids", userIds.subList(from, Math.min(userIds.size(), from + maxBoundIds)))
+					.getResultList()
+					.forEach(user -> userNames.put(user.getId(), user.getName()));
+		}
+		for (int i = 0; i != tasks.size(); i++) {
+			entityManager.persist(tasks.get(i));
+			entityManager.persist(new TaskView(tasks.get(i), userNames.get(tasks.get(i).userId)));
+			if ((i + 1) % batchSize == 0) {
+				entityManager.flush();
+				entityManager.clear();
+			}
+		}
 	}
 	
 }
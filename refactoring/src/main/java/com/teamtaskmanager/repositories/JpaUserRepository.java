@@ -1,16 +1,20 @@
 package com.teamtaskmanager.repositories;
 
+import java.util.Collection;
 import java.util.List;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.transaction.Transactional;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.stereotype.Repository;
 
 import com.teamtaskmanager.model.User;
 
 @Repository
 @Transactional
-public class JpaUserRepository {
+// the sharded engine keeps each shard's part through this repository too
+@ConditionalOnExpression("'${taskstore.engine:jpa}'.matches('jpa|sharded')")
+public class JpaUserRepository implements UserRepository {
 
 	@PersistenceContext
     private EntityManager entityManager;
@@ -19,6 +23,33 @@ public class JpaUserRepository {
 		return entityManager.createQuery("from " + type.getSimpleName(), type).getResultList();
 	}
 	
+	public User findById(Long id) {
+		return entityManager.find(User.class, id);
+	}
+	
+	public List<User> findByIds(Collection<Long> ids) {
+		return entityManager.createQuery("from User u where u.id in :ids", User.class)
+				.setParameter("ids", ids)
+				.getResultList();
+	}
+	
+	public User findByName(String name) {
+		return entityManager.createQuery("from User u where u.name = :name", User.class)
+				.setParameter("name", name)
+				.getResultList()
+				.stream().findFirst().orElse(null);
+	}
+	
+	public List<User> findByNames(Collection<String> names) {
+		return entityManager.createQuery("from User u where u.name in :names", User.class)
+				.setParameter("names", names)
+				.getResultList();
+	}
+	
+	public void removeAll() {
+		entityManager.createQuery("delete from User").executeUpdate();
+	}
+	
 	public void remove(User t) {
 		entityManager.remove(t);
 	}
@@ -27,4 +58,8 @@ public class JpaUserRepository {
 		entityManager.persist(t);
 	}
 	
+	public void persistAll(Collection<User> users) {
+		users.forEach(entityManager::persist);
+	}
+	
 }
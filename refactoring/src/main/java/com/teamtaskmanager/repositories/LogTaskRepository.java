@@ -0,0 +1,133 @@
+package com.teamtaskmanager.repositories;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import com.teamtaskmanager.journal.JournalStore;
+import com.teamtaskmanager.journal.Journaled;
+import com.teamtaskmanager.model.Task;
+
+/**
+ * The in-memory engine, with every change written to the journal of the {@link JournalStore} before it returns
+ */
+@Repository
+@ConditionalOnProperty(name = "taskstore.engine", havingValue = "log")
+public class LogTaskRepository extends MemoryTaskRepository implements Journaled {
+
+	private static final byte APPENDED = 1;
+
+	private static final byte REMOVED = 2;
+
+	private static final byte COMPLETED = 3;
+
+	private static final byte REMOVED_ALL = 4;
+
+	@Autowired
+	private JournalStore journalStore;
+
+	@PostConstruct
+	public void register() {
+		journalStore.register("tasks", this);
+	}
+
+	@Override
+	public void removeAll() {
+		journalStore.write(() -> {
+			super.removeAll();
+			return null;
+		});
+	}
+
+	@Override
+	public Task removeById(Long id) {
+		return journalStore.write(() -> super.removeById(id));
+	}
+
+	@Override
+	public Task complete(Long id) {
+		return journalStore.write(() -> super.complete(id));
+	}
+
+	@Override
+	public List<Task> completeAll(Long userId, LocalDate dateBefore, long[] ids) {
+		return journalStore.write(() -> super.completeAll(userId, dateBefore, ids));
+	}
+
+	@Override
+	public void persist(Task t) {
+		journalStore.write(() -> {
+			super.persist(t);
+			return null;
+		});
+	}
+
+	@Override
+	public void persistAll(List<Task> tasks) {
+		journalStore.write(() -> {
+			super.persistAll(tasks);
+			return null;
+		});
+	}
+
+	@Override
+	protected void appended(Task t) {
+		journalStore.append(APPENDED, out -> {
+			out.writeLong(t.id);
+			out.writeLong(t.userId);
+			out.writeInt((int) t.due.toEpochDay());
+			out.writeBoolean(t.isCompleted);
+			out.writeLong(t.version);
+			writeString(out, t.task);
+		});
+	}
+
+	@Override
+	protected void removed(Long id) {
+		journalStore.append(REMOVED, out -> out.writeLong(id));
+	}
+
+	@Override
+	protected void completed(Long id) {
+		journalStore.append(COMPLETED, out -> out.writeLong(id));
+	}
+
+	@Override
+	protected void removedAll() {
+		journalStore.append(REMOVED_ALL, out -> {
+		});
+	}
+
+	@Override
+	public boolean replay(byte type, DataInput in) throws IOException {
+		switch (type) {
+		case APPENDED:
+			long id = in.readLong();
+			Task t = new Task(in.readLong(), null, LocalDate.ofEpochDay(in.readInt()), in.readBoolean());
+			t.id = id;
+			t.version = in.readLong();
+			t.task = readString(in);
+			restore(t);
+			return true;
+		case REMOVED:
+			super.removeById(in.readLong());
+			return true;
+		case COMPLETED:
+			super.complete(in.readLong());
+			return true;
+		case REMOVED_ALL:
+			super.removeAll();
+			return true;
+		default:
+			return false;
+		}
+	}
+
+}
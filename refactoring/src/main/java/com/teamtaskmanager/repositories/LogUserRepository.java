@@ -0,0 +1,104 @@
+package com.teamtaskmanager.repositories;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.Collection;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import com.teamtaskmanager.journal.JournalStore;
+import com.teamtaskmanager.journal.Journaled;
+import com.teamtaskmanager.model.User;
+
+/**
+ * The in-memory users, with every change written to the journal of the {@link JournalStore} before it returns
+ */
+@Repository
+@ConditionalOnProperty(name = "taskstore.engine", havingValue = "log")
+public class LogUserRepository extends MemoryUserRepository implements Journaled {
+
+	private static final byte PERSISTED = 11;
+
+	private static final byte REMOVED = 12;
+
+	private static final byte REMOVED_ALL = 13;
+
+	@Autowired
+	private JournalStore journalStore;
+
+	@PostConstruct
+	public void register() {
+		journalStore.register("users", this);
+	}
+
+	@Override
+	public void removeAll() {
+		journalStore.write(() -> {
+			super.removeAll();
+			return null;
+		});
+	}
+
+	@Override
+	public void remove(User t) {
+		journalStore.write(() -> {
+			super.remove(t);
+			return null;
+		});
+	}
+
+	@Override
+	public void persistAll(Collection<User> users) {
+		journalStore.write(() -> {
+			super.persistAll(users);
+			return null;
+		});
+	}
+
+	@Override
+	protected void persisted(User user) {
+		journalStore.append(PERSISTED, out -> {
+			out.writeLong(user.id);
+			MemoryTaskRepository.writeString(out, user.name);
+		});
+	}
+
+	@Override
+	protected void removed(Long id) {
+		journalStore.append(REMOVED, out -> out.writeLong(id));
+	}
+
+	@Override
+	protected void removedAll() {
+		journalStore.append(REMOVED_ALL, out -> {
+		});
+	}
+
+	@Override
+	public boolean replay(byte type, DataInput in) throws IOException {
+		switch (type) {
+		case PERSISTED:
+			long id = in.readLong();
+			User user = new User(MemoryTaskRepository.readString(in));
+			user.id = id;
+			restore(user);
+			return true;
+		case REMOVED:
+			User removed = findById(in.readLong());
+			if (null != removed) {
+				super.remove(removed);
+			}
+			return true;
+		case REMOVED_ALL:
+			super.removeAll();
+			return true;
+		default:
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,709 @@
+package com.teamtaskmanager.repositories;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import com.teamtaskmanager.model.Task;
+import com.teamtaskmanager.model.TaskView;
+import com.teamtaskmanager.model.User;
+import com.teamtaskmanager.search.TaskCursor;
+import com.teamtaskmanager.search.TaskSort;
+import com.teamtaskmanager.utilities.FormatDate;
+
+/**
+ * Keeps the tasks in memory as columns rather than as an object per task - due dates as epoch days, users as
+ * codes into a dictionary of user ids, and versions in primitive arrays, and whether a task is completed in a
+ * bit set.
+ * <p>
+ * A search intersects the bit sets of live, open and per-user rows, sorts the matching row numbers on the
+ * columns, and only makes Task objects for the rows it returns.
+ * <p>
+ * Rows are appended in id order and never move - deleting a task only clears its row from the live rows - so a
+ * task's row follows from its id, and sorting rows by number sorts them by id. Space is only given back when
+ * everything is removed, and everything is lost on restart unless a subclass records the changes.
+ */
+@Repository
+@ConditionalOnProperty(name = "taskstore.engine", havingValue = "memory")
+public class MemoryTaskRepository implements TaskRepository {
+
+	/**
+	 * Orders rows by the values in their columns
+	 */
+	private interface RowOrder {
+		int compare(int row1, int row2);
+	}
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private long nextId = 1;
+
+	/**
+	 * The id of the task in row 0
+	 */
+	private long firstId = 1;
+
+	private int rows;
+
+	private int[] due = new int[INITIAL_CAPACITY];
+
+	private int[] users = new int[INITIAL_CAPACITY];
+
+	private long[] versions = new long[INITIAL_CAPACITY];
+
+	private String[] texts = new String[INITIAL_CAPACITY];
+
+	private final BitSet live = new BitSet();
+
+	private final BitSet completed = new BitSet();
+
+	private final Map<Long, Integer> userCodes = new HashMap<>();
+
+	private final List<Long> userIds = new ArrayList<>();
+
+	private final List<BitSet> userRows = new ArrayList<>();
+
+	@Override
+	public List<Task> findAll(Class<Task> type) {
+		lock.readLock().lock();
+		try {
+			return tasks(live.stream().toArray(), 0, live.cardinality());
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public List<Task> search(Long userId, LocalDate dateAfter, LocalDate dateBefore, long[] ids, TaskSort sort, boolean includeCompleted) {
+		return search(userId, dateAfter, dateBefore, ids, sort, includeCompleted, null, null);
+	}
+
+	@Override
+	public List<Task> search(Long userId, LocalDate dateAfter, LocalDate dateBefore, long[] ids, TaskSort sort, boolean includeCompleted, TaskCursor after, Integer limit) {
+		lock.readLock().lock();
+		try {
+			String[] userNames = userNames(sort);
+			int[] matches = matches(userId, dateAfter, dateBefore, ids, includeCompleted);
+			sort(matches, order(sort, userNames));
+
+			int from = null == after ? 0 : firstAfter(matches, sort, after, userNames);
+			int to = null == limit ? matches.length : (int) Math.min(matches.length, (long) from + limit);
+			return tasks(matches, from, to);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Sorts the matching rows once, then makes the tasks of one chunk at a time, so only a chunk of tasks is held
+	 * at once. Tasks deleted while the search is being handed over are left out.
+	 */
+	@Override
+	public void scroll(Long userId, LocalDate dateAfter, LocalDate dateBefore, long[] ids, TaskSort sort, boolean includeCompleted, int chunkSize, Consumer<List<Task>> chunks) {
+		int[] matches;
+		lock.readLock().lock();
+		try {
+			matches = matches(userId, dateAfter, dateBefore, ids, includeCompleted);
+			sort(matches, order(sort, userNames(sort)));
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		for (int from = 0; from < matches.length; from += chunkSize) {
+			List<Task> chunk;
+			lock.readLock().lock();
+			try {
+				chunk = tasks(matches, from, Math.min(matches.length, from + chunkSize));
+			} finally {
+				lock.readLock().unlock();
+			}
+			if (!chunk.isEmpty()) {
+				chunks.accept(chunk);
+			}
+		}
+	}
+
+	/**
+	 * The columns already are the read side of this engine, so views are made from the tasks as they're read, with
+	 * the names of their users looked up together
+	 */
+	@Override
+	public List<TaskView> searchViews(Long userId, LocalDate dateAfter, LocalDate dateBefore, long[] ids, TaskSort sort, boolean includeCompleted, TaskCursor after, Integer limit) {
+		return views(search(userId, dateAfter, dateBefore, ids, sort, includeCompleted, after, limit));
+	}
+
+	@Override
+	public void scrollViews(Long userId, LocalDate dateAfter, LocalDate dateBefore, long[] ids, TaskSort sort, boolean includeCompleted, int chunkSize, Consumer<List<TaskView>> chunks) {
+		scroll(userId, dateAfter, dateBefore, ids, sort, includeCompleted, chunkSize, tasks -> chunks.accept(views(tasks)));
+	}
+
+	@Override
+	public Task findById(Long id) {
+		lock.readLock().lock();
+		try {
+			int row = row(id);
+			return row < 0 ? null : task(row);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public TaskView findViewById(Long id) {
+		Task t = findById(id);
+		return null == t ? null : views(Collections.singletonList(t)).get(0);
+	}
+
+	/**
+	 * Views are made as tasks are read, so there are none to rebuild
+	 */
+	@Override
+	public void rebuildViews() {
+	}
+
+	@Override
+	public void removeAll() {
+		lock.writeLock().lock();
+		try {
+			// ids carry on from where they were, so an old id never names a new task
+			firstId = nextId;
+			rows = 0;
+			due = new int[INITIAL_CAPACITY];
+			users = new int[INITIAL_CAPACITY];
+			versions = new long[INITIAL_CAPACITY];
+			texts = new String[INITIAL_CAPACITY];
+			live.clear();
+			completed.clear();
+			userCodes.clear();
+			userIds.clear();
+			userRows.clear();
+			removedAll();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void remove(Task t) {
+		removeById(t.id);
+	}
+
+	@Override
+	public Task removeById(Long id) {
+		lock.writeLock().lock();
+		try {
+			int row = row(id);
+			if (row < 0) {
+				return null;
+			}
+			Task removed = task(row);
+			live.clear(row);
+			completed.clear(row);
+			userRows.get(users[row]).clear(row);
+			texts[row] = null;
+			removed(id);
+			return removed;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public Task complete(Long id) {
+		lock.writeLock().lock();
+		try {
+			int row = row(id);
+			if (row < 0 || completed.get(row)) {
+				return null;
+			}
+			completed.set(row);
+			versions[row]++;
+			completed(id);
+			return task(row);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public List<Task> completeAll(Long userId, LocalDate dateBefore, long[] ids) {
+		lock.writeLock().lock();
+		try {
+			List<Task> tasks = new ArrayList<>();
+			for (int row : matches(userId, null, dateBefore, ids, false)) {
+				completed.set(row);
+				versions[row]++;
+				completed(firstId + row);
+				tasks.add(task(row));
+			}
+			return tasks;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void persist(Task t) {
+		lock.writeLock().lock();
+		try {
+			append(t);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void persistAll(List<Task> tasks) {
+		lock.writeLock().lock();
+		try {
+			tasks.forEach(this::append);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Puts back a task that was saved before, with the id it had then. Nothing is recorded.
+	 *
+	 * @param t
+	 */
+	protected void restore(Task t) {
+		lock.writeLock().lock();
+		try {
+			// any ids skipped over become rows that were deleted, so rows still follow ids
+			while (firstId + rows < t.id) {
+				ensureCapacity();
+				rows++;
+			}
+			nextId = t.id;
+			add(t);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void append(Task t) {
+		t.id = nextId;
+		add(t);
+		appended(t);
+	}
+
+	private void add(Task t) {
+		ensureCapacity();
+		int code = userCode(t.userId);
+		nextId = t.id + 1;
+		int row = rows++;
+		due[row] = (int) t.due.toEpochDay();
+		users[row] = code;
+		versions[row] = t.version;
+		texts[row] = t.task;
+		live.set(row);
+		if (t.isCompleted) {
+			completed.set(row);
+		}
+		userRows.get(code).set(row);
+	}
+
+	private void ensureCapacity() {
+		if (rows == due.length) {
+			int capacity = rows * 2;
+			due = Arrays.copyOf(due, capacity);
+			users = Arrays.copyOf(users, capacity);
+			versions = Arrays.copyOf(versions, capacity);
+			texts = Arrays.copyOf(texts, capacity);
+		}
+	}
+
+	private int userCode(Long userId) {
+		Integer code = userCodes.get(userId);
+		if (null == code) {
+			code = userIds.size();
+			userCodes.put(userId, code);
+			userIds.add(userId);
+			userRows.add(new BitSet());
+		}
+		return code;
+	}
+
+	/**
+	 * Called under the write lock after a task has been added. Does nothing here - subclasses that record
+	 * changes hook in, with this and the other hooks, to see the changes in the order they were made.
+	 *
+	 * @param t the task, with its new id
+	 */
+	protected void appended(Task t) {
+	}
+
+	/**
+	 * Called under the write lock after a task has been removed
+	 *
+	 * @param id
+	 */
+	protected void removed(Long id) {
+	}
+
+	/**
+	 * Called under the write lock after an open task has been completed
+	 *
+	 * @param id
+	 */
+	protected void completed(Long id) {
+	}
+
+	/**
+	 * Called under the write lock after all the tasks have been removed
+	 */
+	protected void removedAll() {
+	}
+
+	/**
+	 * Writes out all of the rows, including deleted ones, so that reading them back keeps every task in its row
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		lock.readLock().lock();
+		try {
+			out.writeLong(firstId);
+			out.writeLong(nextId);
+			out.writeInt(rows);
+			for (int row = 0; row != rows; row++) {
+				boolean isLive = live.get(row);
+				out.writeBoolean(isLive);
+				if (isLive) {
+					out.writeLong(userIds.get(users[row]));
+					out.writeInt(due[row]);
+					out.writeBoolean(completed.get(row));
+					out.writeLong(versions[row]);
+					writeString(out, texts[row]);
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Replaces all of the tasks with those written by {@link #writeTo(DataOutput)}. Nothing is recorded.
+	 *
+	 * @param in
+	 * @throws IOException
+	 */
+	public void readFrom(DataInput in) throws IOException {
+		lock.writeLock().lock();
+		try {
+			firstId = in.readLong();
+			long savedNextId = in.readLong();
+			int savedRows = in.readInt();
+			rows = 0;
+			int capacity = INITIAL_CAPACITY;
+			while (capacity < savedRows) {
+				capacity *= 2;
+			}
+			due = new int[capacity];
+			users = new int[capacity];
+			versions = new long[capacity];
+			texts = new String[capacity];
+			live.clear();
+			completed.clear();
+			userCodes.clear();
+			userIds.clear();
+			userRows.clear();
+
+			for (int row = 0; row != savedRows; row++) {
+				if (in.readBoolean()) {
+					Task t = new Task(in.readLong(), null, LocalDate.ofEpochDay(in.readInt()), in.readBoolean());
+					t.version = in.readLong();
+					t.task = readString(in);
+					t.id = firstId + row;
+					add(t);
+				} else {
+					rows++;
+				}
+			}
+			nextId = savedNextId;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Writes a string of any length, unlike {@link DataOutput#writeUTF(String)}
+	 */
+	public static void writeString(DataOutput out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	public static String readString(DataInput in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return the live row of the task, or -1 if there is none
+	 */
+	private int row(Long id) {
+		if (null == id || id < firstId || id >= firstId + rows) {
+			return -1;
+		}
+		int row = (int) (id - firstId);
+		return live.get(row) ? row : -1;
+	}
+
+	private Task task(int row) {
+		Task t = new Task(userIds.get(users[row]), texts[row], LocalDate.ofEpochDay(due[row]), completed.get(row));
+		t.id = firstId + row;
+		t.version = versions[row];
+		return t;
+	}
+
+	private List<Task> tasks(int[] rows, int from, int to) {
+		List<Task> tasks = new ArrayList<>(Math.max(0, to - from));
+		for (int i = from; i < to; i++) {
+			if (live.get(rows[i])) {
+				tasks.add(task(rows[i]));
+			}
+		}
+		return tasks;
+	}
+
+	private List<TaskView> views(List<Task> tasks) {
+		Map<Long, String> names = new HashMap<>();
+		for (User user : userRepository.findByIds(tasks.stream().map(t -> t.userId).collect(Collectors.toSet()))) {
+			names.put(user.id, user.name);
+		}
+		return tasks.stream().map(t -> new TaskView(t, names.get(t.userId))).collect(Collectors.toList());
+	}
+
+	/**
+	 * @return the rows matching the filters, in row order
+	 */
+	private int[] matches(Long userId, LocalDate dateAfter, LocalDate dateBefore, long[] ids, boolean includeCompleted) {
+		BitSet matching;
+		if (null != ids) {
+			// start from the few rows of the ids, rather than copying every live row
+			matching = new BitSet();
+			for (long id : ids) {
+				int row = row(id);
+				if (row >= 0) {
+					matching.set(row);
+				}
+			}
+		} else {
+			matching = (BitSet) live.clone();
+		}
+		if (null != userId) {
+			Integer code = userCodes.get(userId);
+			if (null == code) {
+				return new int[0];
+			}
+			matching.and(userRows.get(code));
+		}
+		if (!includeCompleted) {
+			matching.andNot(completed);
+		}
+
+		int[] matches = new int[matching.cardinality()];
+		int count = 0;
+		int dayAfter = null == dateAfter ? Integer.MIN_VALUE : (int) dateAfter.toEpochDay();
+		int dayBefore = null == dateBefore ? Integer.MAX_VALUE : (int) dateBefore.toEpochDay();
+		for (int row = matching.nextSetBit(0); row >= 0; row = matching.nextSetBit(row + 1)) {
+			if (due[row] > dayAfter && due[row] < dayBefore) {
+				matches[count++] = row;
+			}
+		}
+		return count == matches.length ? matches : Arrays.copyOf(matches, count);
+	}
+
+	/**
+	 * @return the name of the user of each code, if the sort needs them, otherwise null
+	 */
+	private String[] userNames(TaskSort sort) {
+		if (sort.getKeys().stream().noneMatch(key -> key.field == TaskSort.Field.USER)) {
+			return null;
+		}
+		String[] names = new String[userIds.size()];
+		for (User user : userRepository.findByIds(userIds)) {
+			names[userCodes.get(user.id)] = user.name;
+		}
+		return names;
+	}
+
+	private RowOrder order(TaskSort sort, String[] userNames) {
+		int[] userRanks = null;
+		if (null != userNames) {
+			// rank the user codes by name once, so rows are compared by int rather than by string
+			Integer[] codes = new Integer[userNames.length];
+			for (int i = 0; i != codes.length; i++) {
+				codes[i] = i;
+			}
+			Arrays.sort(codes, (c1, c2) -> compareNames(userNames[c1], userNames[c2]));
+			userRanks = new int[codes.length];
+			for (int rank = 0; rank != codes.length; rank++) {
+				userRanks[codes[rank]] = rank;
+			}
+		}
+
+		RowOrder order = null;
+		for (TaskSort.Key key : sort.getKeys()) {
+			RowOrder next;
+			switch (key.field) {
+			case ID:
+				next = Integer::compare;
+				break;
+			case DUE:
+				next = (row1, row2) -> Integer.compare(due[row1], due[row2]);
+				break;
+			case USER:
+				int[] ranks = userRanks;
+				next = (row1, row2) -> Integer.compare(ranks[users[row1]], ranks[users[row2]]);
+				break;
+			case TASK:
+				next = (row1, row2) -> texts[row1].compareTo(texts[row2]);
+				break;
+			default:
+				throw new IllegalArgumentException("Not a field: " + key.field);
+			}
+			if (key.isDescending) {
+				RowOrder ascending = next;
+				next = (row1, row2) -> ascending.compare(row2, row1);
+			}
+
+			RowOrder previous = order;
+			RowOrder current = next;
+			order = null == previous ? current : (row1, row2) -> {
+				int result = previous.compare(row1, row2);
+				return result != 0 ? result : current.compare(row1, row2);
+			};
+			// id is unique, so no later key can break a tie
+			if (key.field == TaskSort.Field.ID) {
+				break;
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * @return the index of the first of the sorted rows that comes after the cursor
+	 */
+	private int firstAfter(int[] sorted, TaskSort sort, TaskCursor after, String[] userNames) {
+		int low = 0;
+		int high = sorted.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (compareToCursor(sorted[middle], sort, after, userNames) > 0) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		return low;
+	}
+
+	private int compareToCursor(int row, TaskSort sort, TaskCursor after, String[] userNames) {
+		for (int i = 0; i != sort.getKeys().size(); i++) {
+			TaskSort.Key key = sort.getKeys().get(i);
+			String value = after.getValues().get(i);
+			int result;
+			switch (key.field) {
+			case ID:
+				result = Long.compare(firstId + row, Long.parseLong(value));
+				break;
+			case DUE:
+				result = Long.compare(due[row], FormatDate.toDate(value).toEpochDay());
+				break;
+			case USER:
+				result = compareNames(userNames[users[row]], value);
+				break;
+			case TASK:
+				result = texts[row].compareTo(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Not a field: " + key.field);
+			}
+			if (result != 0) {
+				return key.isDescending ? -result : result;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Orders user names, with the names of users that have been removed first
+	 */
+	private static int compareNames(String name1, String name2) {
+		if (null == name1 || null == name2) {
+			return null == name1 ? (null == name2 ? 0 : -1) : 1;
+		}
+		return name1.compareTo(name2);
+	}
+
+	/**
+	 * Merge sorts row numbers, without boxing them
+	 */
+	private static void sort(int[] rows, RowOrder order) {
+		if (rows.length > 1) {
+			mergeSort(rows, rows.clone(), 0, rows.length, order);
+		}
+	}
+
+	/**
+	 * Sorts rows[from, to), using the same range of scratch, which starts as a copy of rows
+	 */
+	private static void mergeSort(int[] rows, int[] scratch, int from, int to, RowOrder order) {
+		if (to - from < 16) {
+			for (int i = from + 1; i < to; i++) {
+				int row = rows[i];
+				int j = i;
+				for (; j > from && order.compare(rows[j - 1], row) > 0; j--) {
+					rows[j] = rows[j - 1];
+				}
+				rows[j] = row;
+			}
+			return;
+		}
+
+		// sort each half of scratch, using rows as its scratch, then merge the halves back into rows
+		int middle = (from + to) >>> 1;
+		mergeSort(scratch, rows, from, middle, order);
+		mergeSort(scratch, rows, middle, to, order);
+		if (order.compare(scratch[middle - 1], scratch[middle]) <= 0) {
+			System.arraycopy(scratch, from, rows, from, to - from);
+			return;
+		}
+		for (int i = from, left = from, right = middle; i < to; i++) {
+			if (right >= to || (left < middle && order.compare(scratch[left], scratch[right]) <= 0)) {
+				rows[i] = scratch[left++];
+			} else {
+				rows[i] = scratch[right++];
+			}
+		}
+	}
+
+}
@@ -0,0 +1,182 @@
+package com.teamtaskmanager.repositories;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Repository;
+
+import com.teamtaskmanager.model.User;
+
+/**
+ * Keeps the users in memory, indexed by id and by name. Everything is lost on restart unless a subclass records
+ * the changes.
+ */
+@Repository
+@ConditionalOnProperty(name = "taskstore.engine", havingValue = "memory")
+public class MemoryUserRepository implements UserRepository {
+
+	private final Map<Long, User> byId = new HashMap<>();
+
+	private final Map<String, User> byName = new HashMap<>();
+
+	private long nextId = 1;
+
+	@Override
+	public synchronized List<User> findAll(Class<User> type) {
+		return new ArrayList<>(byId.values());
+	}
+
+	@Override
+	public synchronized User findById(Long id) {
+		return byId.get(id);
+	}
+
+	@Override
+	public synchronized List<User> findByIds(Collection<Long> ids) {
+		List<User> users = new ArrayList<>();
+		for (Long id : ids) {
+			User user = byId.get(id);
+			if (null != user) {
+				users.add(user);
+			}
+		}
+		return users;
+	}
+
+	@Override
+	public synchronized User findByName(String name) {
+		return byName.get(name);
+	}
+
+	@Override
+	public synchronized List<User> findByNames(Collection<String> names) {
+		List<User> users = new ArrayList<>();
+		for (String name : names) {
+			User user = byName.get(name);
+			if (null != user) {
+				users.add(user);
+			}
+		}
+		return users;
+	}
+
+	@Override
+	public synchronized void removeAll() {
+		byId.clear();
+		byName.clear();
+		removedAll();
+	}
+
+	@Override
+	public synchronized void remove(User t) {
+		if (null != byId.remove(t.id)) {
+			byName.remove(t.name);
+			removed(t.id);
+		}
+	}
+
+	@Override
+	public void persist(User t) {
+		persistAll(Collections.singletonList(t));
+	}
+
+	/**
+	 * Saves all of the users or, if any of the names is taken, none of them
+	 */
+	@Override
+	public synchronized void persistAll(Collection<User> users) {
+		Set<String> names = new HashSet<>();
+		for (User user : users) {
+			if (byName.containsKey(user.name) || !names.add(user.name)) {
+				throw new DataIntegrityViolationException("User name already taken: " + user.name);
+			}
+		}
+		for (User user : users) {
+			user.id = nextId;
+			add(user);
+			persisted(user);
+		}
+	}
+
+	/**
+	 * Puts back a user that was saved before, with the id it had then. Nothing is recorded.
+	 *
+	 * @param user
+	 */
+	protected synchronized void restore(User user) {
+		add(user);
+	}
+
+	private void add(User user) {
+		nextId = Math.max(nextId, user.id + 1);
+		byId.put(user.id, user);
+		byName.put(user.name, user);
+	}
+
+	/**
+	 * Called while locked after a user has been saved. Does nothing here - subclasses that record changes hook
+	 * in, with this and the other hooks, to see the changes in the order they were made.
+	 *
+	 * @param user the user, with its new id
+	 */
+	protected void persisted(User user) {
+	}
+
+	/**
+	 * Called while locked after a user has been removed
+	 *
+	 * @param id
+	 */
+	protected void removed(Long id) {
+	}
+
+	/**
+	 * Called while locked after all the users have been removed
+	 */
+	protected void removedAll() {
+	}
+
+	/**
+	 * @param out
+	 * @throws IOException
+	 */
+	public synchronized void writeTo(DataOutput out) throws IOException {
+		out.writeLong(nextId);
+		out.writeInt(byId.size());
+		for (User user : byId.values()) {
+			out.writeLong(user.id);
+			MemoryTaskRepository.writeString(out, user.name);
+		}
+	}
+
+	/**
+	 * Replaces all of the users with those written by {@link #writeTo(DataOutput)}. Nothing is recorded.
+	 *
+	 * @param in
+	 * @throws IOException
+	 */
+	public synchronized void readFrom(DataInput in) throws IOException {
+		byId.clear();
+		byName.clear();
+		long savedNextId = in.readLong();
+		for (int i = in.readInt(); i != 0; i--) {
+			long id = in.readLong();
+			User user = new User(MemoryTaskRepository.readString(in));
+			user.id = id;
+			add(user);
+		}
+		nextId = savedNextId;
+	}
+
+}
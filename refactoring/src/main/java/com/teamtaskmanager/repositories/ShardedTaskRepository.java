@@ -0,0 +1,343 @@
+package com.teamtaskmanager.repositories;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+
+import com.teamtaskmanager.dto.TaskDTO;
+import com.teamtaskmanager.model.Task;
+import com.teamtaskmanager.model.TaskView;
+import com.teamtaskmanager.model.User;
+import com.teamtaskmanager.search.TaskCursor;
+import com.teamtaskmanager.search.TaskSort;
+import com.teamtaskmanager.shards.Shards;
+import com.teamtaskmanager.utilities.FormatDate;
+
+/**
+ * The sharded engine - each task is kept by the {@link JpaTaskRepository} of its user's shard.
+ * <p>
+ * A search for one user only goes to that user's shard. Any other search goes to every shard holding tasks it
+ * could match at once, and the sorted tasks each shard returns are merged into one sorted list - a scroll takes
+ * a page at a time from each shard, continuing each from its last task, so it holds no more than a page per shard.
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(name = "taskstore.engine", havingValue = "sharded")
+public class ShardedTaskRepository implements TaskRepository {
+
+	/**
+	 * A search run on one shard at a time, for the page after the cursor of the shard's rows with the given ids
+	 */
+	@FunctionalInterface
+	private interface ShardQuery<T> {
+
+		List<T> page(long[] ids, TaskCursor after, Integer pageSize);
+
+	}
+
+	/**
+	 * The rows of one shard matching a search, a page at a time, with the values of their sort keys
+	 */
+	private class ShardSearch<T> {
+
+		final int shardIndex;
+
+		final long[] ids;
+
+		final TaskSort sort;
+
+		final ShardQuery<T> query;
+
+		final Function<List<T>, List<TaskDTO>> keyer;
+
+		/**
+		 * The most rows fetched at once, or null to fetch them all
+		 */
+		final Integer pageSize;
+
+		/**
+		 * Whether the next page is fetched when a full page runs out
+		 */
+		final boolean isScrolling;
+
+		List<T> rows = Collections.emptyList();
+
+		List<TaskDTO> keys = Collections.emptyList();
+
+		int next;
+
+		ShardSearch(int shardIndex, long[] ids, TaskSort sort, ShardQuery<T> query, Function<List<T>, List<TaskDTO>> keyer, Integer pageSize, boolean isScrolling) {
+			this.shardIndex = shardIndex;
+			this.ids = ids;
+			this.sort = sort;
+			this.query = query;
+			this.keyer = keyer;
+			this.pageSize = pageSize;
+			this.isScrolling = isScrolling;
+		}
+
+		/**
+		 * Fetches the page after the cursor, on the current thread, which must be working on the shard
+		 */
+		ShardSearch<T> fetch(TaskCursor after) {
+			rows = query.page(ids, after, pageSize);
+			keys = keyer.apply(rows);
+			next = 0;
+			return this;
+		}
+
+		boolean hasNext() {
+			if (isScrolling && next == rows.size() && rows.size() == pageSize) {
+				TaskCursor after = TaskCursor.after(sort, keys.get(next - 1));
+				shards.on(shardIndex, () -> fetch(after));
+			}
+			return next != rows.size();
+		}
+
+		TaskDTO key() {
+			return keys.get(next);
+		}
+
+		T take() {
+			return rows.get(next++);
+		}
+
+	}
+
+	@Autowired
+	private JpaTaskRepository shard;
+
+	@Autowired
+	private JpaUserRepository shardUsers;
+
+	@Autowired
+	private Shards shards;
+
+	public List<Task> findAll(Class<Task> type) {
+		return shards.onAll(s -> shard.findAll(type)).stream().flatMap(List::stream).collect(Collectors.toList());
+	}
+
+	public List<Task> search(Long userId, LocalDate dateAfter, LocalDate dateBefore, long[] ids, TaskSort sort, boolean includeCompleted) {
+		return search(userId, dateAfter, dateBefore, ids, sort, includeCompleted, null, null);
+	}
+
+	/**
+	 * Each shard returns up to limit tasks after the cursor, and the first limit of them all are kept
+	 */
+	public List<Task> search(Long userId, LocalDate dateAfter, LocalDate dateBefore, long[] ids, TaskSort sort, boolean includeCompleted, TaskCursor after, Integer limit) {
+		return search(userId, ids, sort, after, limit,
+				(shardIds, shardAfter, pageSize) -> shard.search(userId, dateAfter, dateBefore, shardIds, sort, includeCompleted, shardAfter, pageSize),
+				tasks -> keys(tasks, sort));
+	}
+
+	public void scroll(Long userId, LocalDate dateAfter, LocalDate dateBefore, long[] ids, TaskSort sort, boolean includeCompleted, int chunkSize, Consumer<List<Task>> chunks) {
+		scroll(userId, ids, sort, chunkSize, chunks,
+				(shardIds, after, pageSize) -> shard.search(userId, dateAfter, dateBefore, shardIds, sort, includeCompleted, after, pageSize),
+				tasks -> keys(tasks, sort));
+	}
+
+	public List<TaskView> searchViews(Long userId, LocalDate dateAfter, LocalDate dateBefore, long[] ids, TaskSort sort, boolean includeCompleted, TaskCursor after, Integer limit) {
+		return search(userId, ids, sort, after, limit,
+				(shardIds, shardAfter, pageSize) -> shard.searchViews(userId, dateAfter, dateBefore, shardIds, sort, includeCompleted, shardAfter, pageSize),
+				ShardedTaskRepository::viewKeys);
+	}
+
+	public void scrollViews(Long userId, LocalDate dateAfter, LocalDate dateBefore, long[] ids, TaskSort sort, boolean includeCompleted, int chunkSize, Consumer<List<TaskView>> chunks) {
+		scroll(userId, ids, sort, chunkSize, chunks,
+				(shardIds, after, pageSize) -> shard.searchViews(userId, dateAfter, dateBefore, shardIds, sort, includeCompleted, after, pageSize),
+				ShardedTaskRepository::viewKeys);
+	}
+
+	private <T> List<T> search(Long userId, long[] ids, TaskSort sort, TaskCursor after, Integer limit, ShardQuery<T> query, Function<List<T>, List<TaskDTO>> keyer) {
+		List<T> rows = new ArrayList<>();
+		merge(scatter(userId, ids, sort, after, limit, false, query, keyer), sort, null == limit ? Integer.MAX_VALUE : limit, rows::add);
+		return rows;
+	}
+
+	private <T> void scroll(Long userId, long[] ids, TaskSort sort, int chunkSize, Consumer<List<T>> chunks, ShardQuery<T> query, Function<List<T>, List<TaskDTO>> keyer) {
+		List<T> chunk = new ArrayList<>(chunkSize);
+		merge(scatter(userId, ids, sort, null, chunkSize, true, query, keyer), sort, Integer.MAX_VALUE, row -> {
+			chunk.add(row);
+			if (chunk.size() == chunkSize) {
+				chunks.accept(chunk);
+				chunk.clear();
+			}
+		});
+		if (!chunk.isEmpty()) {
+			chunks.accept(chunk);
+		}
+	}
+
+	/**
+	 * Fetches the first page of the search from each shard that can hold rows it matches, all at once
+	 */
+	private <T> List<ShardSearch<T>> scatter(Long userId, long[] ids, TaskSort sort, TaskCursor after, Integer pageSize, boolean isScrolling, ShardQuery<T> query, Function<List<T>, List<TaskDTO>> keyer) {
+		Map<Integer, long[]> parts = parts(userId, ids);
+		return shards.onEach(new ArrayList<>(parts.keySet()),
+				s -> new ShardSearch<>(s, parts.get(s), sort, query, keyer, pageSize, isScrolling).fetch(after));
+	}
+
+	/**
+	 * A k-way merge of the shards' sorted rows, taking the next row in order from whichever shard has it
+	 *
+	 * @param max the most rows to take
+	 */
+	private <T> void merge(List<ShardSearch<T>> searches, TaskSort sort, int max, Consumer<T> rows) {
+		PriorityQueue<ShardSearch<T>> heads = new PriorityQueue<>(Math.max(1, searches.size()), (s1, s2) -> sort.comparator().compare(s1.key(), s2.key()));
+		for (ShardSearch<T> search : searches) {
+			if (search.hasNext()) {
+				heads.add(search);
+			}
+		}
+		for (int taken = 0; taken != max && !heads.isEmpty(); taken++) {
+			ShardSearch<T> search = heads.poll();
+			rows.accept(search.take());
+			if (search.hasNext()) {
+				heads.add(search);
+			}
+		}
+	}
+
+	/**
+	 * @return the shards that can hold tasks matching the user and ids, to the ids on each, in shard order
+	 */
+	private Map<Integer, long[]> parts(Long userId, long[] ids) {
+		Map<Integer, long[]> parts = new TreeMap<>();
+		if (null != userId) {
+			parts.put(shards.ofId(userId), ids);
+		} else if (null != ids) {
+			Map<Integer, LongStream.Builder> byShard = new TreeMap<>();
+			for (long id : ids) {
+				byShard.computeIfAbsent(shards.ofId(id), s -> LongStream.builder()).add(id);
+			}
+			byShard.forEach((s, shardIds) -> parts.put(s, shardIds.build().toArray()));
+		} else {
+			for (int s = 0; s != shards.getCount(); s++) {
+				parts.put(s, null);
+			}
+		}
+		return parts;
+	}
+
+	/**
+	 * @return the values the tasks are sorted on, as the cursor takes them - the user names are looked up on the
+	 *         current shard, where the tasks' users are, and only when the tasks are sorted by user
+	 */
+	private List<TaskDTO> keys(List<Task> tasks, TaskSort sort) {
+		Map<Long, String> names = new HashMap<>();
+		if (sort.getKeys().stream().anyMatch(key -> key.field == TaskSort.Field.USER) && !tasks.isEmpty()) {
+			for (User user : shardUsers.findByIds(tasks.stream().map(t -> t.userId).collect(Collectors.toSet()))) {
+				names.put(user.id, user.name);
+			}
+		}
+
+		List<TaskDTO> keys = new ArrayList<>(tasks.size());
+		for (Task t : tasks) {
+			TaskDTO key = new TaskDTO();
+			key.id = t.id;
+			key.user = names.get(t.userId);
+			key.task = t.task;
+			key.due = FormatDate.format(t.due);
+			keys.add(key);
+		}
+		return keys;
+	}
+
+	/**
+	 * @return the values the views are sorted on - the views already hold their user names
+	 */
+	private static List<TaskDTO> viewKeys(List<TaskView> views) {
+		List<TaskDTO> keys = new ArrayList<>(views.size());
+		for (TaskView v : views) {
+			TaskDTO key = new TaskDTO();
+			key.id = v.id;
+			key.user = v.userName;
+			key.task = v.task;
+			key.due = FormatDate.format(v.due);
+			keys.add(key);
+		}
+		return keys;
+	}
+
+	public Task findById(Long id) {
+		return shards.on(shards.ofId(id), () -> shard.findById(id));
+	}
+
+	public TaskView findViewById(Long id) {
+		return shards.on(shards.ofId(id), () -> shard.findViewById(id));
+	}
+
+	/**
+	 * Each shard rebuilds its own views at the same time as the others
+	 */
+	public void rebuildViews() {
+		shards.onAll(s -> {
+			shard.rebuildViews();
+			return null;
+		});
+	}
+
+	public void removeAll() {
+		shards.onAll(s -> {
+			shard.removeAll();
+			return null;
+		});
+	}
+
+	public void remove(Task t) {
+		shards.on(shards.ofId(t.id), () -> {
+			shard.remove(t);
+			return null;
+		});
+	}
+
+	public Task removeById(Long id) {
+		return shards.on(shards.ofId(id), () -> shard.removeById(id));
+	}
+
+	public Task complete(Long id) {
+		return shards.on(shards.ofId(id), () -> shard.complete(id));
+	}
+
+	/**
+	 * Each shard that can hold matching tasks completes its own in its own transaction
+	 */
+	public List<Task> completeAll(Long userId, LocalDate dateBefore, long[] ids) {
+		Map<Integer, long[]> parts = parts(userId, ids);
+		return shards.onEach(new ArrayList<>(parts.keySet()), s -> shard.completeAll(userId, dateBefore, parts.get(s)))
+				.stream().flatMap(List::stream).collect(Collectors.toList());
+	}
+
+	public void persist(Task t) {
+		shards.on(shards.ofId(t.userId), () -> {
+			shard.persist(t);
+			return null;
+		});
+	}
+
+	/**
+	 * Each shard inserts its users' tasks at the same time as the others
+	 */
+	public void persistAll(List<Task> tasks) {
+		Map<Integer, List<Task>> byShard = tasks.stream().collect(Collectors.groupingBy(t -> shards.ofId(t.userId), TreeMap::new, Collectors.toList()));
+		shards.onEach(new ArrayList<>(byShard.keySet()), s -> {
+			shard.persistAll(byShard.get(s));
+			return null;
+		});
+	}
+
+}
@@ -0,0 +1,88 @@
+package com.teamtaskmanager.repositories;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+
+import com.teamtaskmanager.model.User;
+import com.teamtaskmanager.shards.Shards;
+
+/**
+ * The sharded engine - each user is kept by the {@link JpaUserRepository} of the shard its name hashes to, so
+ * a name is only ever looked up or made unique on one shard
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(name = "taskstore.engine", havingValue = "sharded")
+public class ShardedUserRepository implements UserRepository {
+
+	@Autowired
+	private JpaUserRepository shard;
+
+	@Autowired
+	private Shards shards;
+
+	public List<User> findAll(Class<User> type) {
+		return concat(shards.onAll(s -> shard.findAll(type)));
+	}
+
+	public User findById(Long id) {
+		return shards.on(shards.ofId(id), () -> shard.findById(id));
+	}
+
+	public List<User> findByIds(Collection<Long> ids) {
+		Map<Integer, List<Long>> byShard = ids.stream().collect(Collectors.groupingBy(shards::ofId, TreeMap::new, Collectors.toList()));
+		return concat(shards.onEach(new ArrayList<>(byShard.keySet()), s -> shard.findByIds(byShard.get(s))));
+	}
+
+	public User findByName(String name) {
+		return shards.on(shards.ofName(name), () -> shard.findByName(name));
+	}
+
+	public List<User> findByNames(Collection<String> names) {
+		Map<Integer, List<String>> byShard = names.stream().collect(Collectors.groupingBy(shards::ofName, TreeMap::new, Collectors.toList()));
+		return concat(shards.onEach(new ArrayList<>(byShard.keySet()), s -> shard.findByNames(byShard.get(s))));
+	}
+
+	public void removeAll() {
+		shards.onAll(s -> {
+			shard.removeAll();
+			return null;
+		});
+	}
+
+	public void remove(User t) {
+		shards.on(shards.ofId(t.id), () -> {
+			shard.remove(t);
+			return null;
+		});
+	}
+
+	public void persist(User t) {
+		shards.on(shards.ofName(t.name), () -> {
+			shard.persist(t);
+			return null;
+		});
+	}
+
+	public void persistAll(Collection<User> users) {
+		Map<Integer, List<User>> byShard = users.stream().collect(Collectors.groupingBy(user -> shards.ofName(user.name), TreeMap::new, Collectors.toList()));
+		shards.onEach(new ArrayList<>(byShard.keySet()), s -> {
+			shard.persistAll(byShard.get(s));
+			return null;
+		});
+	}
+
+	private static <T> List<T> concat(List<List<T>> lists) {
+		return lists.stream().flatMap(List::stream).collect(Collectors.toList());
+	}
+
+}
@@ -0,0 +1,120 @@
+package com.teamtaskmanager.repositories;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.teamtaskmanager.model.Task;
+import com.teamtaskmanager.model.TaskView;
+import com.teamtaskmanager.search.TaskCursor;
+import com.teamtaskmanager.search.TaskSort;
+
+/**
+ * Where tasks are kept - taskstore.engine chooses between {@link JpaTaskRepository}, the default,
+ * {@link MemoryTaskRepository} and {@link ShardedTaskRepository}
+ */
+public interface TaskRepository {
+
+	List<Task> findAll(Class<Task> type);
+
+	/**
+	 * @param userId           optional - only tasks belonging to this user
+	 * @param dateAfter        optional - only tasks due strictly after this date
+	 * @param dateBefore       optional - only tasks due strictly before this date
+	 * @param ids              optional - only tasks with these ids, in ascending order
+	 * @param sort             the order of the results
+	 * @param includeCompleted whether completed tasks are returned
+	 * @return the matching tasks, in order
+	 */
+	List<Task> search(Long userId, LocalDate dateAfter, LocalDate dateBefore, long[] ids, TaskSort sort, boolean includeCompleted);
+
+	/**
+	 * As {@link #search(Long, LocalDate, LocalDate, long[], TaskSort, boolean)}, but only the tasks sorted after the cursor, and no
+	 * more than limit of them
+	 *
+	 * @param after optional - only tasks sorted after this position
+	 * @param limit optional - the most tasks to return
+	 * @return
+	 */
+	List<Task> search(Long userId, LocalDate dateAfter, LocalDate dateBefore, long[] ids, TaskSort sort, boolean includeCompleted, TaskCursor after, Integer limit);
+
+	/**
+	 * As {@link #search(Long, LocalDate, LocalDate, long[], TaskSort, boolean)}, but handing the tasks over a chunk at a time
+	 *
+	 * @param chunkSize the number of tasks handed over at once
+	 * @param chunks    called with each chunk of tasks, in order
+	 */
+	void scroll(Long userId, LocalDate dateAfter, LocalDate dateBefore, long[] ids, TaskSort sort, boolean includeCompleted, int chunkSize, Consumer<List<Task>> chunks);
+
+	/**
+	 * As {@link #search(Long, LocalDate, LocalDate, long[], TaskSort, boolean, TaskCursor, Integer)}, but returning the tasks
+	 * as searches serve them, with their users' names
+	 */
+	List<TaskView> searchViews(Long userId, LocalDate dateAfter, LocalDate dateBefore, long[] ids, TaskSort sort, boolean includeCompleted, TaskCursor after, Integer limit);
+
+	/**
+	 * As {@link #scroll(Long, LocalDate, LocalDate, long[], TaskSort, boolean, int, Consumer)}, but handing over the tasks as
+	 * searches serve them, with their users' names
+	 */
+	void scrollViews(Long userId, LocalDate dateAfter, LocalDate dateBefore, long[] ids, TaskSort sort, boolean includeCompleted, int chunkSize, Consumer<List<TaskView>> chunks);
+
+	/**
+	 * @param id
+	 * @return the task, or null if there is none
+	 */
+	Task findById(Long id);
+
+	/**
+	 * @param id
+	 * @return the task as searches serve it, or null if there is none
+	 */
+	TaskView findViewById(Long id);
+
+	/**
+	 * Regenerates the {@link TaskView}s from the tasks and users, for when tasks have been written without them
+	 */
+	void rebuildViews();
+
+	void removeAll();
+
+	void remove(Task t);
+
+	/**
+	 * @param id
+	 * @return the task that was removed, or null if there was none
+	 */
+	Task removeById(Long id);
+
+	/**
+	 * Marks an open task as completed
+	 *
+	 * @param id
+	 * @return the task as it was saved, with its new version, or null if there is no open task with the id
+	 */
+	Task complete(Long id);
+
+	/**
+	 * Marks all the open tasks matching the filters as completed at once
+	 *
+	 * @param userId     optional - only tasks belonging to this user
+	 * @param dateBefore optional - only tasks due strictly before this date
+	 * @param ids        optional - only tasks with these ids
+	 * @return the tasks that were completed, as they were saved, with their new versions
+	 */
+	List<Task> completeAll(Long userId, LocalDate dateBefore, long[] ids);
+
+	/**
+	 * Saves a new task, setting its id
+	 *
+	 * @param t
+	 */
+	void persist(Task t);
+
+	/**
+	 * Saves many new tasks at once, setting their ids
+	 *
+	 * @param tasks
+	 */
+	void persistAll(List<Task> tasks);
+
+}
@@ -0,0 +1,49 @@
+package com.teamtaskmanager.repositories;
+
+import java.util.Collection;
+import java.util.List;
+
+import com.teamtaskmanager.model.User;
+
+/**
+ * Where users are kept - taskstore.engine chooses between {@link JpaUserRepository}, the default,
+ * {@link MemoryUserRepository} and {@link ShardedUserRepository}.
+ * <p>
+ * User names are unique; saving a user whose name is taken throws
+ * {@link org.springframework.dao.DataIntegrityViolationException}.
+ */
+public interface UserRepository {
+
+	List<User> findAll(Class<User> type);
+
+	User findById(Long id);
+
+	List<User> findByIds(Collection<Long> ids);
+
+	/**
+	 * @param name
+	 * @return the user, or null if there is none
+	 */
+	User findByName(String name);
+
+	List<User> findByNames(Collection<String> names);
+
+	void removeAll();
+
+	void remove(User t);
+
+	/**
+	 * Saves a new user, setting its id
+	 *
+	 * @param t
+	 */
+	void persist(User t);
+
+	/**
+	 * Saves many new users at once, setting their ids
+	 *
+	 * @param users
+	 */
+	void persistAll(Collection<User> users);
+
+}
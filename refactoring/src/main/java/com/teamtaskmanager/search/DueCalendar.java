@@ -0,0 +1,317 @@
+package com.teamtaskmanager.search;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.teamtaskmanager.model.Task;
+import com.teamtaskmanager.service.TaskIndex;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * The open tasks by the day they're due, so the tasks due on some days are found without looking at any others.
+ * <p>
+ * The days from today on are a wheel of application.due-calendar.days buckets, one per day, found from the day
+ * alone - days further off wait in a sorted map until the wheel reaches them. Tasks due before today are overdue,
+ * and kept by day in a map of their own. When the day changes the sweep moves the bucket of the day just gone to
+ * the overdue tasks, and the tasks of the day the wheel has come round to into its bucket, so it only touches the
+ * tasks due on those two days.
+ */
+@Component
+public class DueCalendar implements TaskIndex {
+
+	/**
+	 * The ids of the open tasks due on one day, in ascending order
+	 */
+	private static class Day {
+
+		long[] ids = new long[4];
+
+		int count;
+
+		void add(long id) {
+			// ids mostly arrive in order, so this is nearly always an append
+			int at = count == 0 || ids[count - 1] < id ? count : Arrays.binarySearch(ids, 0, count, id);
+			if (at >= 0 && at < count) {
+				return;
+			}
+			at = at < 0 ? -at - 1 : at;
+			if (count == ids.length) {
+				ids = Arrays.copyOf(ids, count * 2);
+			}
+			System.arraycopy(ids, at, ids, at + 1, count - at);
+			ids[at] = id;
+			count++;
+		}
+
+		void remove(long id) {
+			int at = Arrays.binarySearch(ids, 0, count, id);
+			if (at >= 0) {
+				System.arraycopy(ids, at + 1, ids, at, count - at - 1);
+				count--;
+			}
+		}
+
+	}
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final Day[] wheel;
+
+	/**
+	 * The open tasks due after the wheel's last day
+	 */
+	private final TreeMap<Long, Day> later = new TreeMap<>();
+
+	/**
+	 * The open tasks due before today
+	 */
+	private final TreeMap<Long, Day> overdue = new TreeMap<>();
+
+	private long overdueCount;
+
+	private final Clock clock;
+
+	private long today;
+
+	private final Counter swept;
+
+	@Autowired
+	public DueCalendar(@Value("${application.due-calendar.days:400}") int days, MeterRegistry registry) {
+		this(days, registry, Clock.systemDefaultZone());
+	}
+
+	DueCalendar(int days, MeterRegistry registry, Clock clock) {
+		this.wheel = new Day[days];
+		this.clock = clock;
+		this.today = LocalDate.now(clock).toEpochDay();
+		this.swept = Counter.builder("taskmanager.due-calendar.swept")
+				.description("Tasks that became overdue when the day changed")
+				.register(registry);
+		Gauge.builder("taskmanager.tasks.overdue", this, DueCalendar::getOverdueCount)
+				.description("Open tasks due before today")
+				.register(registry);
+	}
+
+	@Override
+	public void created(Task task) {
+		if (!task.isCompleted) {
+			add(task);
+		}
+	}
+
+	@Override
+	public void completed(Task task) {
+		remove(task);
+	}
+
+	@Override
+	public void deleted(Task task) {
+		if (!task.isCompleted) {
+			remove(task);
+		}
+	}
+
+	@Override
+	public void cleared() {
+		lock.writeLock().lock();
+		try {
+			Arrays.fill(wheel, null);
+			later.clear();
+			overdue.clear();
+			overdueCount = 0;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the ids of the open tasks due before today, in ascending order
+	 */
+	public long[] overdue() {
+		sweep();
+		lock.readLock().lock();
+		try {
+			return ids(overdue.values(), null, today, today - 1);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param from the first day
+	 * @param to   the last day
+	 * @return the ids of the open tasks due from the first day to the last, in ascending order
+	 */
+	public long[] dueBetween(LocalDate from, LocalDate to) {
+		sweep();
+		lock.readLock().lock();
+		try {
+			long first = from.toEpochDay();
+			long last = to.toEpochDay();
+			if (first > last) {
+				return new long[0];
+			}
+			long wheelFirst = Math.max(first, today);
+			long wheelLast = Math.min(last, today + wheel.length - 1);
+			return ids(overdue.subMap(first, true, last, true).values(), later.subMap(first, true, last, true).values(),
+					wheelFirst, wheelLast);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param days
+	 * @return the ids of the open tasks due from today to that many days from today, in ascending order
+	 */
+	public long[] dueWithin(int days) {
+		LocalDate today = LocalDate.now(clock);
+		return dueBetween(today, today.plusDays(days));
+	}
+
+	public long getOverdueCount() {
+		return overdueCount;
+	}
+
+	/**
+	 * Moves the wheel on to today, if the day has changed since it last moved - runs just after midnight, and
+	 * before each query in case it hasn't yet
+	 */
+	@Scheduled(cron = "${application.due-calendar.sweep-cron:1 0 0 * * *}")
+	public void sweep() {
+		long now = LocalDate.now(clock).toEpochDay();
+		lock.readLock().lock();
+		try {
+			if (now <= today) {
+				return;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		lock.writeLock().lock();
+		try {
+			long madeOverdue = 0;
+			for (; today < now; today++) {
+				int slot = slot(today);
+				if (null != wheel[slot]) {
+					overdue.put(today, wheel[slot]);
+					madeOverdue += wheel[slot].count;
+					wheel[slot] = null;
+				}
+				// the slot now stands for the day the wheel has come round to
+				Day arriving = later.remove(today + wheel.length);
+				if (null != arriving) {
+					wheel[slot] = arriving;
+				}
+			}
+			overdueCount += madeOverdue;
+			swept.increment(madeOverdue);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void add(Task task) {
+		long day = task.due.toEpochDay();
+		lock.writeLock().lock();
+		try {
+			Day ids = day(day, true);
+			int before = ids.count;
+			ids.add(task.id);
+			if (day < today) {
+				overdueCount += ids.count - before;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void remove(Task task) {
+		long day = task.due.toEpochDay();
+		lock.writeLock().lock();
+		try {
+			Day ids = day(day, false);
+			if (null == ids) {
+				return;
+			}
+			int before = ids.count;
+			ids.remove(task.id);
+			if (day < today) {
+				overdueCount -= before - ids.count;
+			}
+			if (ids.count == 0) {
+				if (day < today) {
+					overdue.remove(day);
+				} else if (day < today + wheel.length) {
+					wheel[slot(day)] = null;
+				} else {
+					later.remove(day);
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the bucket of the day, under the write lock
+	 */
+	private Day day(long day, boolean create) {
+		if (day < today) {
+			return create ? overdue.computeIfAbsent(day, d -> new Day()) : overdue.get(day);
+		}
+		if (day >= today + wheel.length) {
+			return create ? later.computeIfAbsent(day, d -> new Day()) : later.get(day);
+		}
+		int slot = slot(day);
+		if (null == wheel[slot] && create) {
+			wheel[slot] = new Day();
+		}
+		return wheel[slot];
+	}
+
+	private int slot(long day) {
+		return (int) Math.floorMod(day, (long) wheel.length);
+	}
+
+	/**
+	 * @return the ids in the buckets of the maps, and of the wheel from its first day to its last, sorted
+	 */
+	private long[] ids(Collection<Day> days, Collection<Day> moreDays, long wheelFirst, long wheelLast) {
+		List<Day> all = new ArrayList<>(days);
+		if (null != moreDays) {
+			all.addAll(moreDays);
+		}
+		for (long day = wheelFirst; day <= wheelLast; day++) {
+			if (null != wheel[slot(day)]) {
+				all.add(wheel[slot(day)]);
+			}
+		}
+
+		long[] ids = new long[all.stream().mapToInt(day -> day.count).sum()];
+		int count = 0;
+		for (Day day : all) {
+			System.arraycopy(day.ids, 0, ids, count, day.count);
+			count += day.count;
+		}
+		Arrays.sort(ids);
+		return ids;
+	}
+
+}
@@ -0,0 +1,413 @@
+package com.teamtaskmanager.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import com.teamtaskmanager.shards.Shards;
+
+/**
+ * The tasks a word appears in, and where in each, sorted by task id - as one {@link Segment} for each shard the ids
+ * are from, read one after the other.
+ * <p>
+ * Tasks are created on each shard in id order, but the shards' ids are far apart - with a single list every task
+ * created on any shard but the last would be added out of order, rewriting the list after it.
+ * <p>
+ * Not thread safe - {@link TaskTextIndex} guards it.
+ */
+class PostingList {
+
+	/**
+	 * The tasks of one shard, as a compressed list sorted by task id.
+	 * <p>
+	 * Each posting is the gap from the previous id, the number of positions, then the gaps between the positions,
+	 * all as variable length ints - so a common word costs a byte or two per task. Every {@link #BLOCK} postings
+	 * the id before the block and where the block starts are kept aside, so a {@link Cursor} can skip whole blocks
+	 * when intersecting with a rarer word.
+	 */
+	private static class Segment {
+
+		private static final int BLOCK = 32;
+
+		private byte[] bytes = new byte[16];
+
+		private int size;
+
+		private int count;
+
+		private long lastId;
+
+		private long[] blockBases = new long[1];
+
+		private int[] blockOffsets = new int[1];
+
+		/**
+		 * Adds the positions of the word in a task. Tasks are almost always added in id order, which only appends - a
+		 * task added out of order, as happens when tasks are created at the same time, rewrites the list from the
+		 * block it belongs in.
+		 *
+		 * @param id
+		 * @param positions in ascending order
+		 */
+		void add(long id, int[] positions) {
+			if (count == 0 || id > lastId) {
+				append(id, positions);
+				return;
+			}
+
+			int block = (count - 1) / BLOCK;
+			while (block > 0 && blockBases[block] >= id) {
+				block--;
+			}
+			List<Long> ids = new ArrayList<>();
+			List<int[]> allPositions = new ArrayList<>();
+			Cursor cursor = cursor();
+			cursor.advance(blockBases[block] + 1);
+			boolean isAdded = false;
+			for (boolean isMore = cursor.index > 0; isMore; isMore = cursor.next()) {
+				if (!isAdded && cursor.id() >= id) {
+					ids.add(id);
+					allPositions.add(positions);
+					isAdded = true;
+				}
+				if (cursor.id() != id) {
+					ids.add(cursor.id());
+					allPositions.add(cursor.positions());
+				}
+			}
+
+			size = blockOffsets[block];
+			count = block * BLOCK;
+			lastId = blockBases[block];
+			for (int i = 0; i != ids.size(); i++) {
+				append(ids.get(i), allPositions.get(i));
+			}
+		}
+
+		/**
+		 * Removes the tasks
+		 *
+		 * @param ids
+		 * @return whether any were in the list
+		 */
+		boolean removeAll(Set<Long> ids) {
+			List<Long> kept = new ArrayList<>();
+			List<int[]> keptPositions = new ArrayList<>();
+			Cursor cursor = cursor();
+			while (cursor.next()) {
+				if (!ids.contains(cursor.id())) {
+					kept.add(cursor.id());
+					keptPositions.add(cursor.positions());
+				}
+			}
+			if (kept.size() == count) {
+				return false;
+			}
+			clear();
+			for (int i = 0; i != kept.size(); i++) {
+				append(kept.get(i), keptPositions.get(i));
+			}
+			return true;
+		}
+
+		Cursor cursor() {
+			return new Cursor();
+		}
+
+		private void append(long id, int[] positions) {
+			if (count % BLOCK == 0) {
+				int block = count / BLOCK;
+				if (block == blockBases.length) {
+					blockBases = Arrays.copyOf(blockBases, block * 2);
+					blockOffsets = Arrays.copyOf(blockOffsets, block * 2);
+				}
+				blockBases[block] = lastId;
+				blockOffsets[block] = size;
+			}
+
+			ensureCapacity(5 * (2 + positions.length) + 5);
+			writeVarLong(id - lastId);
+			writeVarLong(positions.length);
+			int previous = 0;
+			for (int position : positions) {
+				writeVarLong(position - previous);
+				previous = position;
+			}
+			lastId = id;
+			count++;
+		}
+
+		private void clear() {
+			size = 0;
+			count = 0;
+			lastId = 0;
+		}
+
+		private void ensureCapacity(int extra) {
+			if (size + extra > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+			}
+		}
+
+		private void writeVarLong(long value) {
+			while ((value & ~0x7FL) != 0) {
+				bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			bytes[size++] = (byte) value;
+		}
+
+		/**
+		 * Reads through the segment in id order
+		 */
+		class Cursor {
+
+			private int offset;
+
+			private int index;
+
+			private long id;
+
+			private int positionsOffset;
+
+			/**
+			 * Moves to the next task
+			 *
+			 * @return false if there are no more
+			 */
+			boolean next() {
+				if (index == count) {
+					id = Long.MAX_VALUE;
+					return false;
+				}
+				if (index > 0) {
+					skipPositions();
+				}
+				id += readVarLong();
+				positionsOffset = offset;
+				index++;
+				return true;
+			}
+
+			/**
+			 * Moves to the first task with an id of at least target, skipping whole blocks where it can
+			 *
+			 * @param target
+			 * @return the id of that task, or Long.MAX_VALUE if there is none
+			 */
+			long advance(long target) {
+				if (index > 0 && id >= target) {
+					return id;
+				}
+
+				// the last block starting before the target, if it's beyond where the cursor is
+				int block = (index == 0 ? 0 : (index - 1) / BLOCK);
+				int last = (count - 1) / BLOCK;
+				while (block < last && blockBases[block + 1] < target) {
+					block++;
+				}
+				if (block * BLOCK >= index) {
+					index = block * BLOCK;
+					offset = blockOffsets[block];
+					id = blockBases[block];
+					if (index < count) {
+						id += readVarLong();
+						positionsOffset = offset;
+						index++;
+					}
+				}
+
+				while (id < target) {
+					if (!next()) {
+						return Long.MAX_VALUE;
+					}
+				}
+				return index == 0 ? Long.MAX_VALUE : id;
+			}
+
+			long id() {
+				return id;
+			}
+
+			/**
+			 * @return the positions of the word in the current task
+			 */
+			int[] positions() {
+				int saved = offset;
+				offset = positionsOffset;
+				int[] positions = new int[(int) readVarLong()];
+				int position = 0;
+				for (int i = 0; i != positions.length; i++) {
+					position += (int) readVarLong();
+					positions[i] = position;
+				}
+				offset = saved;
+				return positions;
+			}
+
+			private void skipPositions() {
+				offset = positionsOffset;
+				int positions = (int) readVarLong();
+				for (int i = 0; i != positions; i++) {
+					while ((bytes[offset++] & 0x80) != 0) {
+					}
+				}
+			}
+
+			private long readVarLong() {
+				long value = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = bytes[offset++];
+					value |= (long) (b & 0x7F) << shift;
+					shift += 7;
+				} while ((b & 0x80) != 0);
+				return value;
+			}
+
+		}
+
+	}
+
+	private Segment[] segments = new Segment[1];
+
+	private int count;
+
+	/**
+	 * @return the number of tasks in the list
+	 */
+	int count() {
+		return count;
+	}
+
+	/**
+	 * Adds the positions of the word in a task, to the segment of its shard
+	 *
+	 * @param id
+	 * @param positions in ascending order
+	 */
+	void add(long id, int[] positions) {
+		int shard = shardOf(id);
+		if (shard >= segments.length) {
+			segments = Arrays.copyOf(segments, shard + 1);
+		}
+		if (null == segments[shard]) {
+			segments[shard] = new Segment();
+		}
+		Segment segment = segments[shard];
+		int before = segment.count;
+		segment.add(id, positions);
+		count += segment.count - before;
+	}
+
+	/**
+	 * Removes the tasks
+	 *
+	 * @param ids
+	 * @return whether any were in the list
+	 */
+	boolean removeAll(Set<Long> ids) {
+		boolean isRemoved = false;
+		count = 0;
+		for (Segment segment : segments) {
+			if (null != segment) {
+				isRemoved |= segment.removeAll(ids);
+				count += segment.count;
+			}
+		}
+		return isRemoved;
+	}
+
+	Cursor cursor() {
+		return new Cursor();
+	}
+
+	private static int shardOf(long id) {
+		return (int) (id >>> Shards.ID_SHIFT);
+	}
+
+	/**
+	 * Reads through the list in id order, a segment at a time
+	 */
+	class Cursor {
+
+		private int shard = -1;
+
+		private Segment.Cursor current;
+
+		private long id = -1;
+
+		/**
+		 * Moves to the next task
+		 *
+		 * @return false if there are no more
+		 */
+		boolean next() {
+			while (null == current || !current.next()) {
+				if (!moveTo(shard + 1)) {
+					id = Long.MAX_VALUE;
+					return false;
+				}
+			}
+			id = current.id();
+			return true;
+		}
+
+		/**
+		 * Moves to the first task with an id of at least target, skipping the segments of the shards before the
+		 * target's, and whole blocks within its segment where it can
+		 *
+		 * @param target
+		 * @return the id of that task, or Long.MAX_VALUE if there is none
+		 */
+		long advance(long target) {
+			if (id >= target) {
+				return id;
+			}
+			int targetShard = shardOf(target);
+			if (targetShard > shard && !moveTo(targetShard)) {
+				id = Long.MAX_VALUE;
+				return id;
+			}
+			if (null != current) {
+				long found = current.advance(target);
+				if (found != Long.MAX_VALUE) {
+					id = found;
+					return id;
+				}
+			}
+			return next() ? id : Long.MAX_VALUE;
+		}
+
+		long id() {
+			return id;
+		}
+
+		/**
+		 * @return the positions of the word in the current task
+		 */
+		int[] positions() {
+			return current.positions();
+		}
+
+		/**
+		 * Moves to before the first task of the shard's segment
+		 *
+		 * @return false if there are no shards from it on
+		 */
+		private boolean moveTo(int next) {
+			if (next >= segments.length) {
+				shard = segments.length;
+				current = null;
+				return false;
+			}
+			shard = next;
+			current = null == segments[next] ? null : segments[next].cursor();
+			return true;
+		}
+
+	}
+
+}
@@ -0,0 +1,150 @@
+package com.teamtaskmanager.search;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import com.teamtaskmanager.dto.TaskDTO;
+import com.teamtaskmanager.utilities.FormatDate;
+
+/**
+ * An opaque position in a sorted search - the sort it was taken from plus the sort key values of the last task
+ * returned, so that the next page starts straight after it rather than skipping over an offset.
+ */
+public class TaskCursor {
+
+	private final String sort;
+
+	private final List<String> values;
+
+	private TaskCursor(String sort, List<String> values) {
+		this.sort = sort;
+		this.values = Collections.unmodifiableList(values);
+	}
+
+	/**
+	 * @param sort the sort of the page
+	 * @param last the last task on the page
+	 * @return a cursor for the page following last
+	 */
+	public static TaskCursor after(TaskSort sort, TaskDTO last) {
+		List<String> values = new ArrayList<>();
+		for (TaskSort.Key key : sort.getKeys()) {
+			switch (key.field) {
+			case ID:
+				values.add(String.valueOf(last.id));
+				break;
+			case USER:
+				values.add(last.user);
+				break;
+			case DUE:
+				values.add(last.due);
+				break;
+			case TASK:
+				values.add(last.task);
+				break;
+			default:
+				throw new IllegalArgumentException("Not a field: " + key.field);
+			}
+		}
+		return new TaskCursor(sort.toString(), values);
+	}
+
+	/**
+	 * @param token a token previously returned by {@link #encode()}
+	 * @param sort  the sort of the search being continued
+	 * @return
+	 * @throws IllegalArgumentException if the token is malformed, holds a value that doesn't fit its key or was taken
+	 *                                  from a different sort
+	 */
+	public static TaskCursor decode(String token, TaskSort sort) {
+		TaskCursor cursor;
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)))) {
+			String cursorSort = readString(in);
+			int size = in.readUnsignedByte();
+			List<String> values = new ArrayList<>(size);
+			for (int i = 0; i != size; i++) {
+				values.add(readString(in));
+			}
+			cursor = new TaskCursor(cursorSort, values);
+		} catch (IOException | IllegalArgumentException e) {
+			throw new IllegalArgumentException("Bad cursor", e);
+		}
+
+		if (!cursor.sort.equals(sort.toString()) || cursor.values.size() != sort.getKeys().size()) {
+			throw new IllegalArgumentException("Cursor doesn't match sortBy");
+		}
+		for (int i = 0; i != cursor.values.size(); i++) {
+			checkValue(sort.getKeys().get(i).field, cursor.values.get(i));
+		}
+		return cursor;
+	}
+
+	/**
+	 * Values are bound into queries as the type of their field, so a value that won't convert is rejected here as a
+	 * bad request rather than failing later in the repository
+	 */
+	private static void checkValue(TaskSort.Field field, String value) {
+		try {
+			switch (field) {
+			case ID:
+				Long.parseLong(value);
+				break;
+			case DUE:
+				FormatDate.toDate(value);
+				break;
+			default:
+				break;
+			}
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Bad cursor", e);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0 || length > in.available()) {
+			throw new IOException("Bad length: " + length);
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	// writeUTF is limited to 64K bytes, which a long task description can exceed
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * @return the sort key values of the last task seen, one per key of the sort
+	 */
+	public List<String> getValues() {
+		return values;
+	}
+
+	public String encode() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			writeString(out, sort);
+			out.writeByte(values.size());
+			for (String value : values) {
+				writeString(out, value);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+	}
+
+}
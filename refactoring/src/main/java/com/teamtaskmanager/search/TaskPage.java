@@ -0,0 +1,21 @@
+package com.teamtaskmanager.search;
+
+import java.util.List;
+
+import com.teamtaskmanager.dto.TaskDTO;
+
+/**
+ * One page of a search, and where the next page starts if there is one
+ */
+public class TaskPage {
+
+	public final List<TaskDTO> tasks;
+
+	public final TaskCursor next;
+
+	public TaskPage(List<TaskDTO> tasks, TaskCursor next) {
+		this.tasks = tasks;
+		this.next = next;
+	}
+
+}
@@ -0,0 +1,134 @@
+package com.teamtaskmanager.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.teamtaskmanager.dto.TaskDTO;
+
+/**
+ * A parsed and validated sortBy, e.g. "user:asc,due:desc".
+ * <p>
+ * The specification is parsed once per request; ties are always broken by id ascending, so every sort is total.
+ */
+public class TaskSort {
+
+	public enum Field {
+		ID("id", (o1, o2) -> Long.compare(o1.id, o2.id)),
+		USER("user", Comparator.comparing(t -> t.user)),
+		DUE("due", Comparator.comparing(t -> t.due)),
+		TASK("task", Comparator.comparing(t -> t.task));
+
+		private final String name;
+		private final Comparator<TaskDTO> comparator;
+
+		Field(String name, Comparator<TaskDTO> comparator) {
+			this.name = name;
+			this.comparator = comparator;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		static Field of(String name) {
+			for (Field field : values()) {
+				if (field.name.equals(name)) {
+					return field;
+				}
+			}
+			throw new IllegalArgumentException("Not a field: " + name);
+		}
+	}
+
+	public static class Key {
+		public final Field field;
+		public final boolean isDescending;
+
+		Key(Field field, boolean isDescending) {
+			this.field = field;
+			this.isDescending = isDescending;
+		}
+
+		@Override
+		public String toString() {
+			return field.name + (isDescending ? ":desc" : ":asc");
+		}
+	}
+
+	public static final TaskSort DEFAULT = new TaskSort(Collections.singletonList(new Key(Field.ID, false)));
+
+	private final List<Key> keys;
+
+	private final Comparator<TaskDTO> comparator;
+
+	private TaskSort(List<Key> keys) {
+		this.keys = Collections.unmodifiableList(keys);
+
+		Comparator<TaskDTO> chained = null;
+		for (Key key : keys) {
+			Comparator<TaskDTO> next = key.isDescending ? key.field.comparator.reversed() : key.field.comparator;
+			chained = null == chained ? next : chained.thenComparing(next);
+		}
+		this.comparator = chained;
+	}
+
+	/**
+	 * Parses a sortBy of comma separated fieldName, fieldName:asc or fieldName:desc
+	 *
+	 * @param sortBy optional - defaults to id:asc
+	 * @return
+	 * @throws IllegalArgumentException if a field or direction isn't recognised, or a field is repeated
+	 */
+	public static TaskSort parse(String sortBy) {
+		if (null == sortBy) {
+			return DEFAULT;
+		}
+
+		List<Key> keys = new ArrayList<>();
+		Set<Field> seen = EnumSet.noneOf(Field.class);
+		for (String part : sortBy.split(",", -1)) {
+			String fieldName = part.contains(":") ? part.substring(0, part.indexOf(":")).trim() : part.trim();
+			String direction = part.contains(":") ? part.substring(part.indexOf(":") + 1).trim() : "asc";
+
+			Field field = Field.of(fieldName);
+			if (!seen.add(field)) {
+				throw new IllegalArgumentException("Field sorted more than once: " + fieldName);
+			}
+			if (!direction.equals("asc") && !direction.equals("desc")) {
+				throw new IllegalArgumentException("Not a sort direction: " + direction);
+			}
+			keys.add(new Key(field, direction.equals("desc")));
+		}
+
+		// the id tiebreak makes the order total, which keyset paging and merging rely on
+		if (!seen.contains(Field.ID)) {
+			keys.add(new Key(Field.ID, false));
+		}
+		return new TaskSort(keys);
+	}
+
+	/**
+	 * @return the sort keys in order, always ending in (or containing) id
+	 */
+	public List<Key> getKeys() {
+		return keys;
+	}
+
+	/**
+	 * @return the compiled comparator for sorting DTOs in memory
+	 */
+	public Comparator<TaskDTO> comparator() {
+		return comparator;
+	}
+
+	@Override
+	public String toString() {
+		return keys.stream().map(Key::toString).collect(Collectors.joining(","));
+	}
+
+}
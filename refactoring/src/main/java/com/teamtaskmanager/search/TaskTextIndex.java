@@ -0,0 +1,329 @@
+package com.teamtaskmanager.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.stereotype.Component;
+
+import com.teamtaskmanager.model.Task;
+import com.teamtaskmanager.service.TaskIndex;
+
+/**
+ * An inverted index of the words in the task descriptions - for each word, a {@link PostingList} of the tasks it
+ * appears in, with its positions, so a {@link TextQuery} is answered without reading any task.
+ * <p>
+ * The words of a query are matched by stepping through their lists together, each skipping ahead to the next id
+ * the others could all share, so the rarest word decides how much is read. Deleted tasks are only noted at
+ * first and left out of the results - once they are a quarter of the postings, they are removed from the lists.
+ */
+@Component
+public class TaskTextIndex implements TaskIndex {
+
+	/**
+	 * The tasks a word of a query matches, read in id order
+	 */
+	private interface Postings {
+
+		/**
+		 * @return the first id of at least target, or Long.MAX_VALUE if there is none
+		 */
+		long advance(long target);
+
+		/**
+		 * @return the positions the word matches in the current task
+		 */
+		int[] positions();
+
+		int count();
+
+	}
+
+	private static class WordPostings implements Postings {
+
+		private final PostingList list;
+
+		private final PostingList.Cursor cursor;
+
+		WordPostings(PostingList list) {
+			this.list = list;
+			this.cursor = list.cursor();
+		}
+
+		@Override
+		public long advance(long target) {
+			return cursor.advance(target);
+		}
+
+		@Override
+		public int[] positions() {
+			return cursor.positions();
+		}
+
+		@Override
+		public int count() {
+			return list.count();
+		}
+
+	}
+
+	/**
+	 * The tasks any of the words starting with a prefix appear in - the cursors of the words are kept in a heap by
+	 * their current id, so moving on only touches the words that are behind
+	 */
+	private static class PrefixPostings implements Postings {
+
+		private final PriorityQueue<PostingList.Cursor> cursors = new PriorityQueue<>(Comparator.comparingLong(PostingList.Cursor::id));
+
+		private int count;
+
+		PrefixPostings(Iterable<PostingList> lists) {
+			for (PostingList list : lists) {
+				PostingList.Cursor cursor = list.cursor();
+				if (cursor.next()) {
+					cursors.add(cursor);
+				}
+				count += list.count();
+			}
+		}
+
+		@Override
+		public long advance(long target) {
+			while (!cursors.isEmpty() && cursors.peek().id() < target) {
+				PostingList.Cursor behind = cursors.poll();
+				if (behind.advance(target) != Long.MAX_VALUE) {
+					cursors.add(behind);
+				}
+			}
+			return cursors.isEmpty() ? Long.MAX_VALUE : cursors.peek().id();
+		}
+
+		@Override
+		public int[] positions() {
+			long id = cursors.peek().id();
+			int[] positions = new int[0];
+			for (PostingList.Cursor cursor : cursors) {
+				if (cursor.id() == id) {
+					int[] more = cursor.positions();
+					int from = positions.length;
+					positions = Arrays.copyOf(positions, from + more.length);
+					System.arraycopy(more, 0, positions, from, more.length);
+				}
+			}
+			Arrays.sort(positions);
+			return positions;
+		}
+
+		@Override
+		public int count() {
+			return count;
+		}
+
+	}
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final TreeMap<String, PostingList> lists = new TreeMap<>();
+
+	private final Set<Long> deleted = new HashSet<>();
+
+	private long postings;
+
+	private long deletedPostings;
+
+	@Override
+	public void created(Task task) {
+		Map<String, int[]> positions = positions(task.task);
+		lock.writeLock().lock();
+		try {
+			for (Map.Entry<String, int[]> word : positions.entrySet()) {
+				lists.computeIfAbsent(word.getKey(), w -> new PostingList()).add(task.id, word.getValue());
+			}
+			postings += positions.size();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void completed(Task task) {
+	}
+
+	@Override
+	public void deleted(Task task) {
+		int words = positions(task.task).size();
+		lock.writeLock().lock();
+		try {
+			if (words > 0 && deleted.add(task.id)) {
+				deletedPostings += words;
+				if (deletedPostings * 4 > postings) {
+					purge();
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void cleared() {
+		lock.writeLock().lock();
+		try {
+			lists.clear();
+			deleted.clear();
+			postings = 0;
+			deletedPostings = 0;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @param query
+	 * @return the ids of the tasks matching all of the query, in ascending order
+	 */
+	public long[] search(TextQuery query) {
+		if (query.getPhrases().isEmpty()) {
+			return new long[0];
+		}
+
+		lock.readLock().lock();
+		try {
+			List<Postings[]> phrases = new ArrayList<>();
+			List<Postings> words = new ArrayList<>();
+			for (TextQuery.Phrase phrase : query.getPhrases()) {
+				Postings[] phraseWords = new Postings[phrase.words.size()];
+				for (int i = 0; i != phraseWords.length; i++) {
+					phraseWords[i] = postings(phrase.words.get(i), phrase.isPrefix(i));
+					if (null == phraseWords[i]) {
+						return new long[0];
+					}
+					words.add(phraseWords[i]);
+				}
+				if (phraseWords.length > 1) {
+					phrases.add(phraseWords);
+				}
+			}
+			words.sort(Comparator.comparingInt(Postings::count));
+
+			long[] ids = new long[16];
+			int count = 0;
+			long candidate = 0;
+			candidates: while (true) {
+				for (Postings word : words) {
+					long id = word.advance(candidate);
+					if (id == Long.MAX_VALUE) {
+						break candidates;
+					}
+					if (id != candidate) {
+						// start again from the rarest word, at the first id this one could match
+						candidate = id;
+						continue candidates;
+					}
+				}
+
+				if (isMatch(candidate, phrases)) {
+					if (count == ids.length) {
+						ids = Arrays.copyOf(ids, count * 2);
+					}
+					ids[count++] = candidate;
+				}
+				candidate++;
+			}
+			return Arrays.copyOf(ids, count);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the postings of the word, or of all the words it's the start of, or null if there are none
+	 */
+	private Postings postings(String word, boolean isPrefix) {
+		if (!isPrefix) {
+			PostingList list = lists.get(word);
+			return null == list ? null : new WordPostings(list);
+		}
+		Map<String, PostingList> matching = lists.subMap(word, true, word + Character.MAX_VALUE, false);
+		return matching.isEmpty() ? null : new PrefixPostings(matching.values());
+	}
+
+	/**
+	 * @return whether the task, which has all the words, hasn't been deleted and has each phrase in order
+	 */
+	private boolean isMatch(long id, List<Postings[]> phrases) {
+		if (!deleted.isEmpty() && deleted.contains(id)) {
+			return false;
+		}
+		for (Postings[] phrase : phrases) {
+			if (!isInOrder(phrase)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return whether the words of a phrase appear one after the other in the current task
+	 */
+	private static boolean isInOrder(Postings[] phrase) {
+		int[][] positions = new int[phrase.length][];
+		for (int i = 0; i != phrase.length; i++) {
+			positions[i] = phrase[i].positions();
+		}
+		starts: for (int start : positions[0]) {
+			for (int i = 1; i != phrase.length; i++) {
+				if (Arrays.binarySearch(positions[i], start + i) < 0) {
+					continue starts;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the positions of each word in the text
+	 */
+	private static Map<String, int[]> positions(String text) {
+		Map<String, int[]> positions = new LinkedHashMap<>();
+		if (null == text) {
+			return positions;
+		}
+		List<String> words = TextQuery.words(text);
+		for (int i = 0; i != words.size(); i++) {
+			int[] previous = positions.get(words.get(i));
+			int[] next = null == previous ? new int[1] : Arrays.copyOf(previous, previous.length + 1);
+			next[next.length - 1] = i;
+			positions.put(words.get(i), next);
+		}
+		return positions;
+	}
+
+	/**
+	 * Takes the deleted tasks out of the lists, under the write lock
+	 */
+	private void purge() {
+		Iterator<PostingList> remaining = lists.values().iterator();
+		while (remaining.hasNext()) {
+			PostingList list = remaining.next();
+			if (list.removeAll(deleted) && list.count() == 0) {
+				remaining.remove();
+			}
+		}
+		postings -= deletedPostings;
+		deletedPostings = 0;
+		deleted.clear();
+	}
+
+}
@@ -0,0 +1,94 @@
+package com.teamtaskmanager.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A search of the task descriptions - the words of the q parameter, all of which must appear in a task.
+ * <p>
+ * Words in double quotes must appear together, in that order, and a word ending in * matches any word it's the
+ * start of, e.g. <pre>"buy milk" shop*</pre>
+ */
+public class TextQuery {
+
+	/**
+	 * Words in a row, each either the whole word or, if isPrefix, the start of one
+	 */
+	public static class Phrase {
+
+		public final List<String> words;
+
+		public final boolean isPrefix;
+
+		Phrase(List<String> words, boolean isPrefix) {
+			this.words = Collections.unmodifiableList(words);
+			this.isPrefix = isPrefix;
+		}
+
+		/**
+		 * @param i
+		 * @return whether the i-th word is only the start of a word
+		 */
+		public boolean isPrefix(int i) {
+			return isPrefix && i == words.size() - 1;
+		}
+
+	}
+
+	private static final Pattern CLAUSE = Pattern.compile("\"([^\"]*)\"?|(\\S+)");
+
+	private static final Pattern NOT_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+	private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+	private final List<Phrase> phrases;
+
+	private TextQuery(List<Phrase> phrases) {
+		this.phrases = Collections.unmodifiableList(phrases);
+	}
+
+	/**
+	 * @param q
+	 * @return the query - a query with no words in it matches nothing
+	 */
+	public static TextQuery parse(String q) {
+		List<Phrase> phrases = new ArrayList<>();
+		Matcher clauses = CLAUSE.matcher(q);
+		while (clauses.find()) {
+			String clause = null != clauses.group(1) ? clauses.group(1) : clauses.group(2);
+			boolean isPrefix = clause.endsWith("*");
+			List<String> words = words(clause);
+			if (!words.isEmpty()) {
+				phrases.add(new Phrase(words, isPrefix));
+			}
+		}
+		return new TextQuery(phrases);
+	}
+
+	/**
+	 * Splits text into words, lower cased and without accents, so that "Café" is found by "cafe"
+	 *
+	 * @param text
+	 * @return the words, in order
+	 */
+	public static List<String> words(String text) {
+		String plain = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFKD)).replaceAll("").toLowerCase(Locale.ROOT);
+		List<String> words = new ArrayList<>();
+		for (String word : NOT_WORD.split(plain)) {
+			if (!word.isEmpty()) {
+				words.add(word);
+			}
+		}
+		return words;
+	}
+
+	public List<Phrase> getPhrases() {
+		return phrases;
+	}
+
+}
@@ -0,0 +1,135 @@
+package com.teamtaskmanager.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.teamtaskmanager.bulkhead.BulkheadFullException;
+
+/**
+ * Merges requests that arrive close together into one call - each request waits at most the window for others
+ * to join it, then the whole batch is handed to a single call on the coalescer's own thread, and each request is
+ * answered with its own part of the result.
+ * <p>
+ * At most a queue depth of requests wait to join a batch - like a bulkhead, more are turned away at once.
+ *
+ * @param <K> what is requested
+ * @param <V> the answer to one request
+ */
+public class Coalescer<K, V> {
+
+	private static final Logger LOG = LoggerFactory.getLogger(Coalescer.class);
+
+	private static class Request<K, V> {
+
+		final K key;
+
+		final CompletableFuture<V> result = new CompletableFuture<>();
+
+		Request(K key) {
+			this.key = key;
+		}
+
+	}
+
+	private final String name;
+
+	private final BlockingQueue<Request<K, V>> requests;
+
+	private final long windowNanos;
+
+	private final int maxBatch;
+
+	private final Function<List<K>, Map<K, V>> call;
+
+	private final Thread thread;
+
+	private volatile boolean isRunning = true;
+
+	/**
+	 * @param name         names the thread, and the requests when they're turned away
+	 * @param windowMillis how long the first request of a batch waits for more
+	 * @param maxBatch     the most requests in one call - a full batch doesn't wait out the window
+	 * @param queueDepth   the most requests that can be waiting to join a batch
+	 * @param call         answers a batch of requests - a key missing from its result is answered with null
+	 */
+	public Coalescer(String name, long windowMillis, int maxBatch, int queueDepth, Function<List<K>, Map<K, V>> call) {
+		this.name = name;
+		this.requests = new ArrayBlockingQueue<>(queueDepth);
+		this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+		this.maxBatch = maxBatch;
+		this.call = call;
+		this.thread = new Thread(this::run, name + "-coalescer");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * @param key
+	 * @return completes with the answer once the batch the request joined has been called, or with what it threw
+	 * @throws BulkheadFullException if the queue is full
+	 */
+	public CompletableFuture<V> submit(K key) {
+		Request<K, V> request = new Request<>(key);
+		if (!requests.offer(request)) {
+			throw new BulkheadFullException(name);
+		}
+		if (!isRunning && requests.remove(request)) {
+			request.result.completeExceptionally(new IllegalStateException("Shut down"));
+		}
+		return request.result;
+	}
+
+	public void shutdown() throws InterruptedException {
+		isRunning = false;
+		thread.interrupt();
+		thread.join();
+		List<Request<K, V>> left = new ArrayList<>();
+		requests.drainTo(left);
+		left.forEach(request -> request.result.completeExceptionally(new IllegalStateException("Shut down")));
+	}
+
+	private void run() {
+		List<Request<K, V>> batch = new ArrayList<>(maxBatch);
+		while (isRunning) {
+			try {
+				batch.add(requests.take());
+				long deadline = System.nanoTime() + windowNanos;
+				while (batch.size() < maxBatch) {
+					Request<K, V> next = requests.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+					if (null == next) {
+						break;
+					}
+					batch.add(next);
+				}
+			} catch (InterruptedException e) {
+				// shutting down - answer what has been collected so far
+			}
+			if (!batch.isEmpty()) {
+				answer(batch);
+				batch.clear();
+			}
+		}
+	}
+
+	private void answer(List<Request<K, V>> batch) {
+		List<K> keys = new ArrayList<>(batch.size());
+		batch.forEach(request -> keys.add(request.key));
+		try {
+			Map<K, V> results = call.apply(keys);
+			batch.forEach(request -> request.result.complete(results.get(request.key)));
+		} catch (Throwable e) {
+			LOG.warn("A batch of {} requests failed", batch.size(), e);
+			batch.forEach(request -> request.result.completeExceptionally(e));
+		}
+	}
+
+}
@@ -0,0 +1,281 @@
+package com.teamtaskmanager.service;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.teamtaskmanager.model.Task;
+import com.teamtaskmanager.repositories.TaskRepository;
+import com.teamtaskmanager.search.TaskSort;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Counts of the tasks, for all of them and for each user, kept up to date as tasks change rather than counted
+ * when asked for.
+ * <p>
+ * The overdue count is of open tasks due before today - open tasks are also counted by due day, so when the day
+ * changes the tasks due the day before are added to it. Every application.stats.reconcile-interval-ms the tasks
+ * are counted again from the store, and if the counts have drifted they are replaced and the drift logged.
+ */
+@Component
+public class TaskCounts implements TaskIndex {
+
+	private static final Logger LOG = LoggerFactory.getLogger(TaskCounts.class);
+
+	/**
+	 * The counts, as they were when asked for
+	 */
+	public static class Totals {
+
+		public final long open;
+
+		public final long completed;
+
+		public final long overdue;
+
+		public final Map<YearMonth, Long> byDueMonth;
+
+		public final Map<Long, Long> byUserId;
+
+		Totals(Counts counts, Map<Long, Long> byUserId) {
+			this.open = counts.open;
+			this.completed = counts.completed;
+			this.overdue = counts.overdue;
+			this.byDueMonth = Collections.unmodifiableMap(new TreeMap<>(counts.byMonth));
+			this.byUserId = Collections.unmodifiableMap(byUserId);
+		}
+
+		private Totals() {
+			this(new Counts(), Collections.emptyMap());
+		}
+
+	}
+
+	/**
+	 * The counts when there are no tasks
+	 */
+	public static final Totals NONE = new Totals();
+
+	/**
+	 * The counts of all the tasks, or of one user's
+	 */
+	private static class Counts {
+
+		long open;
+
+		long completed;
+
+		long overdue;
+
+		final Map<YearMonth, Long> byMonth = new HashMap<>();
+
+		final Map<Long, Long> openByDay = new HashMap<>();
+
+		void count(Task task, int delta, long today) {
+			long day = task.due.toEpochDay();
+			add(byMonth, YearMonth.from(task.due), delta);
+			if (task.isCompleted) {
+				completed += delta;
+			} else {
+				open += delta;
+				add(openByDay, day, delta);
+				if (day < today) {
+					overdue += delta;
+				}
+			}
+		}
+
+		/**
+		 * Adds the open tasks due from the old today up to the new one to the overdue tasks
+		 */
+		void dayChanged(long from, long to) {
+			for (Map.Entry<Long, Long> day : openByDay.entrySet()) {
+				if (day.getKey() >= from && day.getKey() < to) {
+					overdue += day.getValue();
+				}
+			}
+		}
+
+		long total() {
+			return open + completed;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Counts)) {
+				return false;
+			}
+			Counts other = (Counts) o;
+			return open == other.open && completed == other.completed && overdue == other.overdue
+					&& byMonth.equals(other.byMonth) && openByDay.equals(other.openByDay);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(open, completed, overdue);
+		}
+
+		private static <K> void add(Map<K, Long> counts, K key, long delta) {
+			// drop the counts that reach 0, so counts kept up to date equal counts made afresh
+			counts.merge(key, delta, (count, more) -> count + more == 0 ? null : count + more);
+		}
+
+	}
+
+	/**
+	 * The counts of all the tasks and of each user's, as of a day
+	 */
+	private static class Tally {
+
+		final Counts all = new Counts();
+
+		final Map<Long, Counts> users = new HashMap<>();
+
+		long today;
+
+		Tally(long today) {
+			this.today = today;
+		}
+
+		void count(Task task, int delta) {
+			all.count(task, delta, today);
+			Counts user = users.computeIfAbsent(task.userId, id -> new Counts());
+			user.count(task, delta, today);
+			if (user.total() == 0) {
+				users.remove(task.userId);
+			}
+		}
+
+		void dayChanged(long to) {
+			all.dayChanged(today, to);
+			users.values().forEach(user -> user.dayChanged(today, to));
+			today = to;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Tally && all.equals(((Tally) o).all) && users.equals(((Tally) o).users);
+		}
+
+		@Override
+		public int hashCode() {
+			return all.hashCode();
+		}
+
+	}
+
+	private final TaskRepository taskRepository;
+
+	private final MeterRegistry registry;
+
+	private final int chunkSize;
+
+	private Tally tally = new Tally(LocalDate.now().toEpochDay());
+
+	/**
+	 * Counts the changes, so reconciling can tell whether tasks changed while it was counting them
+	 */
+	private long changes;
+
+	@Autowired
+	public TaskCounts(TaskRepository taskRepository, MeterRegistry registry,
+			@Value("${application.stats.reconcile-chunk-size:1000}") int chunkSize) {
+		this.taskRepository = taskRepository;
+		this.registry = registry;
+		this.chunkSize = chunkSize;
+	}
+
+	@Override
+	public synchronized void created(Task task) {
+		tally.count(task, 1);
+		changes++;
+	}
+
+	@Override
+	public synchronized void completed(Task task) {
+		Task open = new Task(task.userId, task.task, task.due, false);
+		tally.count(open, -1);
+		tally.count(task, 1);
+		changes++;
+	}
+
+	@Override
+	public synchronized void deleted(Task task) {
+		tally.count(task, -1);
+		changes++;
+	}
+
+	@Override
+	public synchronized void cleared() {
+		tally = new Tally(tally.today);
+		changes++;
+	}
+
+	/**
+	 * @param userId optional - only count this user's tasks
+	 * @return the counts
+	 */
+	public synchronized Totals get(Long userId) {
+		long today = LocalDate.now().toEpochDay();
+		if (today > tally.today) {
+			tally.dayChanged(today);
+		}
+
+		if (null == userId) {
+			Map<Long, Long> byUserId = new HashMap<>();
+			tally.users.forEach((id, counts) -> byUserId.put(id, counts.total()));
+			return new Totals(tally.all, byUserId);
+		}
+		Counts counts = tally.users.get(userId);
+		return null == counts ? NONE : new Totals(counts, Collections.singletonMap(userId, counts.total()));
+	}
+
+	/**
+	 * Counts the tasks in the store and replaces the counts if they have drifted from them - unless tasks changed
+	 * while they were being counted, when it's left to the next time
+	 *
+	 * @return whether the counts had drifted
+	 */
+	@Scheduled(initialDelayString = "${application.stats.reconcile-interval-ms:600000}",
+			fixedDelayString = "${application.stats.reconcile-interval-ms:600000}")
+	public boolean reconcile() {
+		long changesBefore;
+		Tally recount;
+		synchronized (this) {
+			changesBefore = changes;
+			recount = new Tally(tally.today);
+		}
+
+		taskRepository.scroll(null, null, null, null, TaskSort.parse("id"), true, chunkSize,
+				tasks -> tasks.forEach(task -> recount.count(task, 1)));
+
+		String result;
+		synchronized (this) {
+			if (changes != changesBefore || recount.today != tally.today) {
+				result = "skipped";
+			} else if (recount.equals(tally)) {
+				result = "ok";
+			} else {
+				LOG.warn("Task counts had drifted - counted {} open and {} completed, recounted {} and {}",
+						tally.all.open, tally.all.completed, recount.all.open, recount.all.completed);
+				tally = recount;
+				result = "drift";
+			}
+		}
+		registry.counter("taskmanager.stats.reconciliations", "result", result).increment();
+		return "drift".equals(result);
+	}
+
+}
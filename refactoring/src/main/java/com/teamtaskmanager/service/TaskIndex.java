@@ -0,0 +1,31 @@
+package com.teamtaskmanager.service;
+
+import com.teamtaskmanager.model.Task;
+
+/**
+ * Something kept up to date with the tasks, as {@link TaskService} changes them. It's called after each change is
+ * saved, and at startup with every task there is.
+ */
+public interface TaskIndex {
+
+	/**
+	 * @param task a new task, or one already saved when the index is being rebuilt
+	 */
+	void created(Task task);
+
+	/**
+	 * @param task an open task, as it was saved once completed
+	 */
+	void completed(Task task);
+
+	/**
+	 * @param task the task as it was before it was deleted
+	 */
+	void deleted(Task task);
+
+	/**
+	 * All the tasks have been deleted
+	 */
+	void cleared();
+
+}
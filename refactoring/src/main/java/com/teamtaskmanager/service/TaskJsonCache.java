@@ -0,0 +1,115 @@
+package com.teamtaskmanager.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded, least-recently-used cache of the serialized JSON of tasks, with the ETag of each.
+ * <p>
+ * Every write to the tasks moves the write generation on, and the cache refuses entries that were read before
+ * the latest write, so a slow reader can't put a stale task back after it has been invalidated. The generation
+ * also serves as the version of search results as a whole.
+ */
+@Component
+public class TaskJsonCache {
+
+	public static class Entry {
+		public final String eTag;
+		public final byte[] json;
+
+		Entry(String eTag, byte[] json) {
+			this.eTag = eTag;
+			this.json = json;
+		}
+	}
+
+	private final Map<Long, Entry> entries;
+
+	private long generation;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	public TaskJsonCache(@Value("${application.task-json-cache-size:10000}") int maxSize) {
+		this.entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	public synchronized Entry get(Long id) {
+		Entry entry = entries.get(id);
+		(null == entry ? misses : hits).increment();
+		return entry;
+	}
+
+	/**
+	 * Caches the JSON of a task, unless a task has been written since the generation it was read at
+	 *
+	 * @param id
+	 * @param version    the version of the task the JSON was made from
+	 * @param json
+	 * @param generation the write generation before the task was read
+	 * @return the entry, whether or not it was cached
+	 */
+	public synchronized Entry put(Long id, long version, byte[] json, long generation) {
+		Entry entry = new Entry(eTag(id, version), json);
+		if (this.generation == generation) {
+			entries.put(id, entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * @param id
+	 * @param version
+	 * @return the strong ETag of this version of the task
+	 */
+	public static String eTag(Long id, long version) {
+		return "\"" + id + "-" + version + "\"";
+	}
+
+	public synchronized long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Records that a task has been created, changed or deleted
+	 *
+	 * @param id
+	 */
+	public synchronized void invalidate(Long id) {
+		generation++;
+		entries.remove(id);
+	}
+
+	/**
+	 * Records that any of the tasks may have been changed
+	 */
+	public synchronized void invalidateAll() {
+		generation++;
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+}
@@ -1,19 +1,49 @@
 package com.teamtaskmanager.service;
 
 import java.io.IOException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.teamtaskmanager.changes.TaskChange;
+import com.teamtaskmanager.changes.TaskChangeFeed;
+import com.teamtaskmanager.dto.BatchResultDTO;
 import com.teamtaskmanager.dto.TaskDTO;
+import com.teamtaskmanager.dto.TaskStatsDTO;
 import com.teamtaskmanager.model.Task;
-import com.teamtaskmanager.repositories.JpaTaskRepository;
+import com.teamtaskmanager.model.TaskView;
+import com.teamtaskmanager.repositories.TaskRepository;
+import com.teamtaskmanager.search.DueCalendar;
+import com.teamtaskmanager.search.TaskCursor;
+import com.teamtaskmanager.search.TaskPage;
+import com.teamtaskmanager.search.TaskSort;
+import com.teamtaskmanager.search.TaskTextIndex;
+import com.teamtaskmanager.search.TextQuery;
 import com.teamtaskmanager.utilities.FormatDate;
 
 @Service
@@ -21,115 +51,335 @@ public class TaskService {
 
 	
 	@Autowired
-	private JpaTaskRepository jpaTaskRepository;
+	private TaskRepository taskRepository;
 	
 	@Autowired
 	private UserService userService;
 	
+	@Autowired
+	private TaskJsonCache taskJsonCache;
+	
+	@Autowired
+	private ObjectMapper objectMapper;
+	
+	@Autowired
+	private TaskTextIndex taskTextIndex;
+	
+	@Autowired
+	private DueCalendar dueCalendar;
+	
+	@Autowired
+	private List<TaskIndex> taskIndexes;
+	
+	@Autowired
+	private TaskCounts taskCounts;
+	
+	@Autowired
+	private TaskChangeFeed taskChangeFeed;
+	
+	@Value("${application.search.stream-chunk-size:500}")
+	private int streamChunkSize;
+	
+	@Value("${application.complete.coalesce-window-ms:0}")
+	private long coalesceWindowMillis;
+	
+	@Value("${application.complete.coalesce-max-batch:1000}")
+	private int coalesceMaxBatch;
+
+	@Value("${application.complete.coalesce-queue-depth:${application.bulkhead.write.queue-depth:128}}")
+	private int coalesceQueueDepth;
+	
+	private Coalescer<Long, Task> completions;
+	
+	// changes to tasks and reads of the indexes share this, a rebuild has it to itself
+	private final ReadWriteLock changes = new ReentrantReadWriteLock();
+	
 	
 	public List<Task> findAll(Class<Task> type) {
-		return jpaTaskRepository.findAll(type);
+		return taskRepository.findAll(type);
 	}
 
 	
 
 	public void clear() throws IOException {
-		findAll(Task.class).forEach(t -> jpaTaskRepository.remove(t));
+		changes.readLock().lock();
+		try {
+			taskRepository.removeAll();
+			taskJsonCache.invalidateAll();
+			taskIndexes.forEach(TaskIndex::cleared);
+			taskChangeFeed.publish(TaskChange.Type.CLEARED, null);
+		} finally {
+			changes.readLock().unlock();
+		}
 	}
 
-	public Boolean isDeleted(Task taskToDelete) {
-		if (null != taskToDelete) {
-			jpaTaskRepository.remove(taskToDelete);
-            return true;
-        } else {
-            return false;
-        }
-		
+	/**
+	 * Rebuilds the {@link TaskView}s searches read from the tasks in the store, then the {@link TaskIndex}es - at
+	 * startup, and whenever the views may have fallen behind the tasks. Changes to tasks, and searches and stats
+	 * that read the indexes, wait until it is done.
+	 */
+	@EventListener(ContextRefreshedEvent.class)
+	public void rebuild() {
+		changes.writeLock().lock();
+		try {
+			taskRepository.rebuildViews();
+			taskJsonCache.invalidateAll();
+			reindex();
+		} finally {
+			changes.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Rebuilds the {@link TaskIndex}es from the tasks in the store - after tasks have been loaded straight into the
+	 * store. As with {@link #rebuild()}, changes and searches wait until it is done.
+	 */
+	public void reindex() {
+		changes.writeLock().lock();
+		try {
+			taskIndexes.forEach(TaskIndex::cleared);
+			taskRepository.scroll(null, null, null, null, TaskSort.parse("id"), true, streamChunkSize,
+					tasks -> tasks.forEach(task -> taskIndexes.forEach(index -> index.created(task))));
+		} finally {
+			changes.writeLock().unlock();
+		}
+	}
+
+	public Boolean isDeleted(Long id) {
+		return changing(() -> {
+			Task deleted = taskRepository.removeById(id);
+			if (null != deleted) {
+				taskJsonCache.invalidate(id);
+				taskIndexes.forEach(index -> index.deleted(deleted));
+				taskChangeFeed.publish(TaskChange.Type.DELETED, deleted);
+				return true;
+			} else {
+				return false;
+			}
+		});
 	}
 
 	public Task taskFilter(Long id) {
-		return findAll(Task.class).stream().filter(t -> t.id.equals(id)).findFirst().orElse(null);
+		return taskRepository.findById(id);
+	}
+
+	/**
+	 * Gets the JSON of a task, from the cache if it's there, otherwise from the database
+	 *
+	 * @param id
+	 * @return the JSON and its ETag, or null if there is no such task
+	 * @throws JsonProcessingException
+	 */
+	public TaskJsonCache.Entry getJson(Long id) throws JsonProcessingException {
+		TaskJsonCache.Entry cached = taskJsonCache.get(id);
+		if (null != cached) {
+			return cached;
+		}
+		
+		long generation = taskJsonCache.getGeneration();
+		TaskView view = taskRepository.findViewById(id);
+		if (null == view) {
+			return null;
+		}
+		return taskJsonCache.put(view.id, view.version, objectMapper.writeValueAsBytes(viewToDTO(view)), generation);
 	}
 
-	public int sort(String sortBy, TaskDTO o1, TaskDTO o2) {
-		if (null == sortBy) {
-			return o1.id.compareTo(o2.id);
-		} else {
-			String sortField = sortBy.contains(":") ? sortBy.substring(0, sortBy.indexOf(":")) : sortBy;
-			boolean isDescending = sortBy.contains(":") && sortBy.substring(sortBy.indexOf(":") + 1).equals("desc");
+	/**
+	 * @return a number that changes whenever any task is written, to version search results by
+	 */
+	public long getWriteGeneration() {
+		return taskJsonCache.getGeneration();
+	}
 
-			Comparable f1 = selectField(o1, sortField);
-			Comparable f2 = selectField(o2, sortField);
+	/**
+	 * Search for tasks - a user that doesn't exist has no tasks, and nor do words that aren't in any task, so those
+	 * are answered without touching the task table
+	 *
+	 * @param dateBefore    optional - only tasks due before this date
+	 * @param dueWithinDays optional - only open tasks due from today to this many days from today, from the {@link DueCalendar}
+	 * @param overdue       optional - if true, only open tasks due before today, from the {@link DueCalendar}
+	 * @param q             optional - words the tasks must contain, as a {@link TextQuery}
+	 */
+	public List<TaskDTO> search(String user, String dateAfter, String dateBefore, Integer dueWithinDays, Boolean overdue, String q, TaskSort sort, Boolean includeCompleted) {
+		Long userId = null == user ? null : userService.findUserId(user);
+		long[] ids = matchingIds(dueWithinDays, overdue, q);
+		if (null != user && null == userId || null != ids && ids.length == 0) {
+			return Collections.emptyList();
+		}
 
-			// sort by ids ascending if the fields are the same
-			if (f1.equals(f2)) {
-				return o1.id.compareTo(o2.id);
+		return viewsToDTOs(taskRepository.searchViews(userId, toDate(dateAfter), toDate(dateBefore), ids, sort, Boolean.TRUE.equals(includeCompleted), null, null));
+	}
+
+	/**
+	 * Streams the results of a search rather than collecting them - the tasks are read from a database cursor and
+	 * handed over as DTOs a chunk at a time, so memory use doesn't grow with the number of results.
+	 *
+	 * @param chunks called with each chunk of DTOs, in order
+	 */
+	public void searchChunks(String user, String dateAfter, String dateBefore, Integer dueWithinDays, Boolean overdue, String q, TaskSort sort, Boolean includeCompleted, Consumer<List<TaskDTO>> chunks) {
+		Long userId = null == user ? null : userService.findUserId(user);
+		long[] ids = matchingIds(dueWithinDays, overdue, q);
+		if (null != user && null == userId || null != ids && ids.length == 0) {
+			return;
+		}
+
+		taskRepository.scrollViews(userId, toDate(dateAfter), toDate(dateBefore), ids, sort, Boolean.TRUE.equals(includeCompleted), streamChunkSize,
+				views -> chunks.accept(viewsToDTOs(views)));
+	}
+
+	/**
+	 * Returns at most limit tasks, starting after the cursor
+	 *
+	 * @param after optional - where the previous page ended, if this isn't the first page
+	 * @param limit the most tasks to return
+	 * @return the page, with a cursor for the next one if there might be more tasks
+	 */
+	public TaskPage searchPage(String user, String dateAfter, String dateBefore, Integer dueWithinDays, Boolean overdue, String q, TaskSort sort, Boolean includeCompleted, TaskCursor after, int limit) {
+		Long userId = null == user ? null : userService.findUserId(user);
+		long[] ids = matchingIds(dueWithinDays, overdue, q);
+		if (null != user && null == userId || null != ids && ids.length == 0) {
+			return new TaskPage(Collections.emptyList(), null);
+		}
+
+		// fetch one extra task to find out whether there is a next page
+		List<TaskView> views = taskRepository.searchViews(userId, toDate(dateAfter), toDate(dateBefore), ids, sort, Boolean.TRUE.equals(includeCompleted), after, limit + 1);
+		boolean hasNext = views.size() > limit;
+		List<TaskDTO> page = viewsToDTOs(hasNext ? views.subList(0, limit) : views);
+		return new TaskPage(page, hasNext ? TaskCursor.after(sort, page.get(page.size() - 1)) : null);
+	}
+
+	/**
+	 * Counts the tasks from the counts kept as they change, so it takes the same time however many tasks there are
+	 *
+	 * @param user optional - only count this user's tasks - a user that doesn't exist has none
+	 */
+	public TaskStatsDTO getStats(String user) {
+		Long userId = null == user ? null : userService.findUserId(user);
+		TaskCounts.Totals totals = null != user && null == userId ? TaskCounts.NONE : changing(() -> taskCounts.get(userId));
+
+		TaskStatsDTO stats = new TaskStatsDTO();
+		stats.open = totals.open;
+		stats.completed = totals.completed;
+		stats.overdue = totals.overdue;
+		stats.byDueMonth = new LinkedHashMap<>();
+		totals.byDueMonth.forEach((month, count) -> stats.byDueMonth.put(month.toString(), count));
+		Map<Long, String> userNames = userService.findUserNames(totals.byUserId.keySet());
+		stats.byUser = new TreeMap<>();
+		totals.byUserId.forEach((id, count) -> stats.byUser.put(userNames.get(id), count));
+		return stats;
+	}
+
+	/**
+	 * @return the ids of the tasks the indexes find for the filters, in ascending order, or null if there are no
+	 *         filters the indexes answer
+	 */
+	private long[] matchingIds(Integer dueWithinDays, Boolean overdue, String q) {
+		if (null == dueWithinDays && !Boolean.TRUE.equals(overdue) && null == q) {
+			return null;
+		}
+		TextQuery query = null == q ? null : TextQuery.parse(q);
+		return changing(() -> {
+			long[] ids = null;
+			if (null != dueWithinDays) {
+				ids = dueCalendar.dueWithin(dueWithinDays);
 			}
-			if (isDescending) {
-				return f2.compareTo(f1);
-			} else {
-				return f1.compareTo(f2);
+			if (Boolean.TRUE.equals(overdue)) {
+				ids = intersect(ids, dueCalendar.overdue());
+			}
+			if (null != query) {
+				ids = intersect(ids, taskTextIndex.search(query));
 			}
+			return ids;
+		});
+	}
+
+	/**
+	 * Runs a change to tasks, or a read of the indexes, once no rebuild is running - any number run together
+	 *
+	 * @param change
+	 * @return what the change returns
+	 */
+	private <T> T changing(Supplier<T> change) {
+		changes.readLock().lock();
+		try {
+			return change.get();
+		} finally {
+			changes.readLock().unlock();
+		}
+	}
 
+	/**
+	 * @param ids   optional - ascending
+	 * @param more  ascending
+	 * @return the ids in both, or more if there are no ids
+	 */
+	private static long[] intersect(long[] ids, long[] more) {
+		if (null == ids) {
+			return more;
 		}
+		long[] both = new long[Math.min(ids.length, more.length)];
+		int count = 0;
+		for (int i = 0, j = 0; i < ids.length && j < more.length;) {
+			if (ids[i] < more[j]) {
+				i++;
+			} else if (ids[i] > more[j]) {
+				j++;
+			} else {
+				both[count++] = ids[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(both, count);
 	}
 
-	public List<TaskDTO> search(String user, String dateAfter, String sortBy, Boolean includeCompleted) {
-		return findAll(Task.class)
-                .stream()
-                .map(this::taskToDTO)
-                .filter(t -> null == user || t.user.equals(user))
-                .filter(t -> null == dateAfter || FormatDate.toDate(dateAfter).before(FormatDate.toDate(t.due)))
-                .filter(t -> Boolean.TRUE.equals(includeCompleted) || !t.isCompleted)
-                .sorted((o1, o2) -> sort(sortBy, o1, o2))
+	private static LocalDate toDate(String date) {
+		return null == date ? null : FormatDate.toDate(date);
+	}
+
+	/**
+	 * Maps a page of views to DTOs - the views already hold their user names, so nothing is looked up
+	 */
+	private static List<TaskDTO> viewsToDTOs(List<TaskView> views) {
+		return views.stream()
+                .map(TaskService::viewToDTO)
                 .collect(Collectors.toList());
 	}
 
-	private TaskDTO taskToDTO(Task t) {
+	private static TaskDTO viewToDTO(TaskView v) {
         TaskDTO dto = new TaskDTO();
-        dto.due = t.due;
+        dto.due = FormatDate.format(v.due);
+        dto.id = v.id;
+        dto.isCompleted = v.isCompleted;
+        dto.task = v.task;
+        dto.user = v.userName;
+        return dto;
+    }
+
+	public TaskDTO taskToDTO(Task t) {
+        return taskToDTO(t, userService.findUserName(t.userId));
+    }
+
+	private TaskDTO taskToDTO(Task t, String userName) {
+        TaskDTO dto = new TaskDTO();
+        dto.due = FormatDate.format(t.due);
         dto.id = t.id;
         dto.isCompleted = t.isCompleted;
         dto.task = t.task;
-        dto.user = userService.findUserById(t.userId).name;
+        dto.user = userName;
         return dto;
     }
 	
 	public TaskDTO get(Long id) {
-		return findAll(Task.class).stream()
-                .filter(t -> t.id.equals(id))
-                .map(this::taskToDTO)
-                .findFirst().orElse(null);
+		TaskView view = taskRepository.findViewById(id);
+		return null == view ? null : viewToDTO(view);
 	}
 	
-	private Comparable<?> selectField(TaskDTO task, String field) {
-		switch (field) {
-		case "user":
-			return task.user;
-		case "id":
-			return task.id;
-		case "due":
-			return task.due;
-		case "task":
-			return task.task;
-		default:
-			throw new IllegalArgumentException("Not a field: " + field);
-		}
-	}
-
-	public Date toDate(String date) {
-		try {
-			return new SimpleDateFormat("yyyy-MM-dd").parse(date);
-		} catch (ParseException e) {
-			throw new IllegalArgumentException("Bad date: " + date, e);
-		}
-	}
-
 	public String checkBadRequest(com.teamtaskmanager.dto.TaskDTO dto) {
 		if (null == dto.due) {
 			return "Due can't be empty";
 		}
-		if ((FormatDate.toDate(dto.due)).before(new Date())) {
+		if (!FormatDate.toDate(dto.due).isAfter(LocalDate.now())) {
 			return "Due can't be in the past";
 		}
 		if (null == dto.user) {
@@ -144,19 +394,167 @@ public class TaskService {
 	public Task createTask(TaskDTO dto) {
 		Task task = new Task();
 		task.task = dto.task;
-		task.due = dto.due;
-		task.userId = userService.getOrCreateUser(dto.user).id;
-		jpaTaskRepository.persist(task);
-		return task;
+		task.due = FormatDate.toDate(dto.due);
+		task.userId = userService.getOrCreateUserId(dto.user);
+		return changing(() -> {
+			taskRepository.persist(task);
+			taskJsonCache.invalidate(task.id);
+			taskIndexes.forEach(index -> index.created(task));
+			taskChangeFeed.publish(TaskChange.Type.CREATED, task);
+			return task;
+		});
+	}
+
+	/**
+	 * Creates many tasks at once - every task is checked as {@link #checkBadRequest(TaskDTO)} would, the users of
+	 * all the good ones are found or created together, and then they are inserted in JDBC batches
+	 *
+	 * @param dtos the tasks to create
+	 * @return for each task, in the same order, either its new id or why it wasn't created
+	 */
+	public List<BatchResultDTO> createTasks(List<TaskDTO> dtos) {
+		BatchResultDTO[] results = new BatchResultDTO[dtos.size()];
+		List<Integer> accepted = new ArrayList<>();
+		for (int i = 0; i != dtos.size(); i++) {
+			String errorMessage;
+			try {
+				errorMessage = null == dtos.get(i) ? "Task can't be empty" : checkBadRequest(dtos.get(i));
+			} catch (IllegalArgumentException e) {
+				errorMessage = e.getMessage();
+			}
+			
+			if (null != errorMessage) {
+				results[i] = BatchResultDTO.failed(errorMessage);
+			} else {
+				accepted.add(i);
+			}
+		}
+		
+		Map<String, Long> userIds = userService.getOrCreateUserIds(accepted.stream().map(i -> dtos.get(i).user).collect(Collectors.toSet()));
+		List<Task> tasks = accepted.stream()
+				.map(dtos::get)
+				.map(dto -> new Task(userIds.get(dto.user), dto.task, FormatDate.toDate(dto.due), false))
+				.collect(Collectors.toList());
+		changing(() -> {
+			taskRepository.persistAll(tasks);
+			for (Task task : tasks) {
+				taskJsonCache.invalidate(task.id);
+				for (TaskIndex index : taskIndexes) {
+					index.created(task);
+				}
+				taskChangeFeed.publish(TaskChange.Type.CREATED, task);
+			}
+			return null;
+		});
+		
+		for (int i = 0; i != tasks.size(); i++) {
+			results[accepted.get(i)] = BatchResultDTO.created(tasks.get(i).id);
+		}
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * Marks a task as completed - completing a task that already is changes nothing, including when another request
+	 * completes it at the same time
+	 *
+	 * @param id
+	 * @return the completed task, or null if there is no such task
+	 */
+	public Task completeTask(Long id) {
+		Task result = changing(() -> {
+			Task completed;
+			try {
+				completed = taskRepository.complete(id);
+			} catch (OptimisticLockingFailureException e) {
+				// the other request completed it first
+				return null;
+			}
+			if (null != completed) {
+				taskJsonCache.invalidate(id);
+				taskIndexes.forEach(index -> index.completed(completed));
+				taskChangeFeed.publish(TaskChange.Type.COMPLETED, completed);
+			}
+			return completed;
+		});
+		return null == result ? taskRepository.findById(id) : result;
+	}
+
+	/**
+	 * As {@link #completeTask(Long)}, but when application.complete.coalesce-window-ms is set the task is completed
+	 * together with the others asked for within that window, in one transaction
+	 *
+	 * @param id
+	 * @return completes with the completed task, or null if there is no such task
+	 * @throws com.teamtaskmanager.bulkhead.BulkheadFullException if application.complete.coalesce-queue-depth requests are already waiting
+	 */
+	public CompletableFuture<Task> completeTaskCoalesced(Long id) {
+		if (null == completions) {
+			return CompletableFuture.completedFuture(completeTask(id));
+		}
+		return completions.submit(id);
+	}
+
+	/**
+	 * Marks all the open tasks matching the filters as completed at once
+	 *
+	 * @param ids        optional - only these tasks
+	 * @param user       optional - only this user's tasks - a user that doesn't exist has none
+	 * @param dateBefore optional - only tasks due before this date
+	 * @return the tasks that were completed - not those that already were
+	 */
+	public List<Task> completeTasks(List<Long> ids, String user, String dateBefore) {
+		LocalDate dueBefore = null == dateBefore ? null : FormatDate.toDate(dateBefore);
+		Long userId = null == user ? null : userService.findUserId(user);
+		if (null != user && null == userId || null != ids && ids.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		long[] taskIds = null == ids ? null : ids.stream().mapToLong(Long::longValue).toArray();
+		return changing(() -> {
+			List<Task> completed = taskRepository.completeAll(userId, dueBefore, taskIds);
+			for (Task task : completed) {
+				taskJsonCache.invalidate(task.id);
+				for (TaskIndex index : taskIndexes) {
+					index.completed(task);
+				}
+				taskChangeFeed.publish(TaskChange.Type.COMPLETED, task);
+			}
+			return completed;
+		});
+	}
+
+	/**
+	 * Completes a batch of coalesced requests
+	 *
+	 * @return each of the ids that is a task, to the task
+	 */
+	private Map<Long, Task> completeBatch(List<Long> ids) {
+		Map<Long, Task> results = new HashMap<>();
+		completeTasks(ids, null, null).forEach(task -> results.put(task.id, task));
+		for (Long id : ids) {
+			if (!results.containsKey(id)) {
+				// already completed, or not there at all
+				Task task = taskRepository.findById(id);
+				if (null != task) {
+					results.put(id, task);
+				}
+			}
+		}
+		return results;
+	}
+
+	@PostConstruct
+	public void startCoalescing() {
+		if (coalesceWindowMillis > 0) {
+			completions = new Coalescer<>("complete", coalesceWindowMillis, coalesceMaxBatch, coalesceQueueDepth, this::completeBatch);
+		}
 	}
 
-	public Boolean isTaskSetToComplete(Task result) {
-		if (null != result) {
-			result.isCompleted = true;
-			jpaTaskRepository.persist(result);
-			return true;
+	@PreDestroy
+	public void stopCoalescing() throws InterruptedException {
+		if (null != completions) {
+			completions.shutdown();
 		}
-		return false;
 	}
 
 }
@@ -0,0 +1,88 @@
+package com.teamtaskmanager.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory index of user name to user id.
+ * <p>
+ * Creating a user is done under a lock chosen by the hash of the name, so two requests for the same new user
+ * can't both create it, while requests for unrelated users almost never wait on each other.
+ */
+@Component
+public class UserIdIndex {
+
+	private final Map<String, Long> ids = new ConcurrentHashMap<>();
+
+	private final Object[] stripes;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	public UserIdIndex(@Value("${application.user-id-index.stripes:64}") int stripes) {
+		this.stripes = new Object[stripes];
+		for (int i = 0; i != stripes; i++) {
+			this.stripes[i] = new Object();
+		}
+	}
+
+	/**
+	 * @param name
+	 * @return the id of the user, if it's in the index
+	 */
+	public Long get(String name) {
+		Long id = ids.get(name);
+		(null == id ? misses : hits).increment();
+		return id;
+	}
+
+	public void put(String name, Long id) {
+		ids.put(name, id);
+	}
+
+	/**
+	 * Gets the id of the named user, calling findOrCreate at most once at a time per name if it isn't indexed yet
+	 *
+	 * @param name
+	 * @param findOrCreate finds the user in the database, or creates it, and returns its id
+	 * @return
+	 */
+	public Long getOrCreate(String name, Function<String, Long> findOrCreate) {
+		Long id = get(name);
+		if (null != id) {
+			return id;
+		}
+
+		synchronized (stripes[Math.floorMod(name.hashCode(), stripes.length)]) {
+			id = ids.get(name);
+			if (null == id) {
+				id = findOrCreate.apply(name);
+				ids.put(name, id);
+			}
+			return id;
+		}
+	}
+
+	public void clear() {
+		ids.clear();
+	}
+
+	public int size() {
+		return ids.size();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+}
@@ -0,0 +1,60 @@
+package com.teamtaskmanager.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded, least-recently-used cache of user id to user name, so that mapping tasks to DTOs
+ * doesn't go back to the database for users it has already seen.
+ */
+@Component
+public class UserNameCache {
+
+	private final Map<Long, String> names;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	public UserNameCache(@Value("${application.user-name-cache-size:10000}") int maxSize) {
+		this.names = new LinkedHashMap<Long, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	public synchronized String get(Long userId) {
+		String name = names.get(userId);
+		(null == name ? misses : hits).increment();
+		return name;
+	}
+
+	public synchronized void put(Long userId, String name) {
+		names.put(userId, name);
+	}
+
+	public synchronized void clear() {
+		names.clear();
+	}
+
+	public synchronized int size() {
+		return names.size();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+}
@@ -0,0 +1,107 @@
+package com.teamtaskmanager.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.teamtaskmanager.model.Task;
+import com.teamtaskmanager.model.User;
+import com.teamtaskmanager.repositories.UserRepository;
+
+/**
+ * The names of the users that have tasks, in order, kept up to date as tasks are created and deleted.
+ * <p>
+ * Each user's tasks are counted, and the user is added to the names when the count goes from 0 to 1 and removed
+ * when it goes back to 0 - the count and the names are changed together under the lock of the user's entry, so a
+ * create and a delete for the same user can't leave them out of step. The names are a skip list, so they can be
+ * read in order, from any prefix, while they change.
+ */
+@Component
+public class UserNameIndex implements TaskIndex {
+
+	private static class Entry {
+
+		final String name;
+
+		int tasks;
+
+		Entry(String name) {
+			this.name = name;
+		}
+
+	}
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private UserNameCache userNameCache;
+
+	private final ConcurrentNavigableMap<String, Long> names = new ConcurrentSkipListMap<>();
+
+	private final ConcurrentMap<Long, Entry> users = new ConcurrentHashMap<>();
+
+	@Override
+	public void created(Task task) {
+		// look the name up outside the entry's lock - it's only needed for a user's first task
+		String name = users.containsKey(task.userId) ? null : findName(task.userId);
+		users.compute(task.userId, (id, entry) -> {
+			if (null == entry) {
+				entry = new Entry(null != name ? name : findName(id));
+				names.put(entry.name, id);
+			}
+			entry.tasks++;
+			return entry;
+		});
+	}
+
+	@Override
+	public void completed(Task task) {
+	}
+
+	@Override
+	public void deleted(Task task) {
+		users.computeIfPresent(task.userId, (id, entry) -> {
+			if (--entry.tasks > 0) {
+				return entry;
+			}
+			names.remove(entry.name, id);
+			return null;
+		});
+	}
+
+	@Override
+	public void cleared() {
+		users.clear();
+		names.clear();
+	}
+
+	/**
+	 * @param prefix optional - only the users whose names start with this
+	 * @return the users with tasks, in name order
+	 */
+	public Stream<User> users(String prefix) {
+		Map<String, Long> matching = null == prefix ? names : names.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+		return matching.entrySet().stream().map(name -> {
+			User user = new User(name.getKey());
+			user.id = name.getValue();
+			return user;
+		});
+	}
+
+	private String findName(Long userId) {
+		String name = userNameCache.get(userId);
+		if (null == name) {
+			name = userRepository.findById(userId).name;
+			userNameCache.put(userId, name);
+		}
+		return name;
+	}
+
+}
@@ -1,49 +1,191 @@
 package com.teamtaskmanager.service;
 
 import java.io.IOException;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
 import com.teamtaskmanager.model.User;
-import com.teamtaskmanager.repositories.JpaUserRepository;
+import com.teamtaskmanager.repositories.UserRepository;
 
 @Service
 public class UserService {
 
 	
 	@Autowired
-	private JpaUserRepository jpaUserRepository;
+	private UserRepository userRepository;
+	
+	@Autowired
+	private UserNameCache userNameCache;
+	
+	@Autowired
+	private UserIdIndex userIdIndex;
+	
+	@Autowired
+	private UserNameIndex userNameIndex;
 	
 	public List<User> findAll(Class<User> type) {
-        return jpaUserRepository.findAll(type);
+        return userRepository.findAll(type);
     }
 
 	
 	public User findUserById(Long id) {
-        return findAll(User.class).stream().filter(u -> u.id.equals(id)).findFirst().orElse(null);
+        return userRepository.findById(id);
     }
 	
+	public String findUserName(Long id) {
+		return findUserNames(Collections.singleton(id)).get(id);
+	}
+	
+	/**
+	 * Resolves the names of many users at once - names are served from the cache where possible,
+	 * and the rest are loaded with a single query.
+	 *
+	 * @param ids distinct user ids
+	 * @return user id to user name
+	 */
+	public Map<Long, String> findUserNames(Collection<Long> ids) {
+		Map<Long, String> names = new HashMap<>();
+		List<Long> missing = new ArrayList<>();
+		for (Long id : ids) {
+			String name = userNameCache.get(id);
+			if (null != name) {
+				names.put(id, name);
+			} else {
+				missing.add(id);
+			}
+		}
+		
+		if (!missing.isEmpty()) {
+			for (User user : userRepository.findByIds(missing)) {
+				names.put(user.id, user.name);
+				userNameCache.put(user.id, user.name);
+			}
+		}
+		return names;
+	}
+	
 	public void clear() throws IOException {
-		findAll(User.class).forEach(t -> jpaUserRepository.remove(t));
+		userRepository.removeAll();
+		userNameCache.clear();
+		userIdIndex.clear();
     }
 
-	public Stream<User> getAllUsers() {
-		return findAll(User.class).stream().sorted(Comparator.comparing(u -> u.name));
+	/**
+	 * The users that have tasks, in name order, read from the {@link UserNameIndex} rather than sorted on each call
+	 *
+	 * @param prefix optional - only the users whose names start with this
+	 * @param limit optional - at most this many users
+	 */
+	public Stream<User> getUsers(String prefix, Integer limit) {
+		Stream<User> users = userNameIndex.users(prefix);
+		return null == limit ? users : users.limit(limit);
+	}
+	
+	/**
+	 * Finds or creates all of the named users with one query, rather than one lookup per name
+	 *
+	 * @param userNames distinct user names
+	 * @return user name to user id
+	 */
+	public Map<String, Long> getOrCreateUserIds(Collection<String> userNames) {
+		Map<String, Long> ids = new HashMap<>();
+		List<String> unindexed = new ArrayList<>();
+		for (String userName : userNames) {
+			Long id = userIdIndex.get(userName);
+			if (null != id) {
+				ids.put(userName, id);
+			} else {
+				unindexed.add(userName);
+			}
+		}
+		if (unindexed.isEmpty()) {
+			return ids;
+		}
+		
+		for (User user : userRepository.findByNames(unindexed)) {
+			userIdIndex.put(user.name, user.id);
+			ids.put(user.name, user.id);
+		}
+		
+		List<User> created = new ArrayList<>();
+		for (String userName : unindexed) {
+			if (!ids.containsKey(userName)) {
+				created.add(new User(userName));
+			}
+		}
+		if (created.isEmpty()) {
+			return ids;
+		}
+		
+		try {
+			userRepository.persistAll(created);
+			for (User user : created) {
+				userIdIndex.put(user.name, user.id);
+				userNameCache.put(user.id, user.name);
+				ids.put(user.name, user.id);
+			}
+		} catch (DataIntegrityViolationException e) {
+			// another request created some of these users first - fall back to creating them one at a time
+			for (User user : created) {
+				ids.put(user.name, getOrCreateUserId(user.name));
+			}
+		}
+		return ids;
 	}
 	
 	public User getOrCreateUser(String userName) {
-		User existing = findAll(User.class).stream().filter(u -> u.name.equals(userName)).findFirst().orElse(null);
-
-		if (null == existing) {
-			existing = new User();
-			existing.name = userName;
-			jpaUserRepository.persist(existing);
+		return findUserById(getOrCreateUserId(userName));
+	}
+	
+	/**
+	 * Gets the id of the named user, creating the user if needs be. Safe to call concurrently for the same new
+	 * user - only one of the callers creates it.
+	 *
+	 * @param userName
+	 * @return
+	 */
+	public Long getOrCreateUserId(String userName) {
+		return userIdIndex.getOrCreate(userName, name -> {
+			User existing = userRepository.findByName(name);
+			if (null != existing) {
+				return existing.id;
+			}
+			
+			User created = new User(name);
+			try {
+				userRepository.persist(created);
+			} catch (DataIntegrityViolationException e) {
+				// the unique index on name caught a create from outside this process
+				return userRepository.findByName(name).id;
+			}
+			userNameCache.put(created.id, created.name);
+			return created.id;
+		});
+	}
+	
+	/**
+	 * @param userName
+	 * @return the id of the named user, or null if there is no such user
+	 */
+	public Long findUserId(String userName) {
+		Long id = userIdIndex.get(userName);
+		if (null == id) {
+			User user = userRepository.findByName(userName);
+			if (null != user) {
+				id = user.id;
+				userIdIndex.put(userName, id);
+			}
 		}
-		return existing;
+		return id;
 	}
 	
 }
@@ -0,0 +1,50 @@
+package com.teamtaskmanager.shards;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Hands out connections to the database of the shard the current thread is working on, or to shard 0 outside of
+ * {@link Shards#on(int, java.util.function.Supplier)}
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+	private final List<HikariDataSource> shards;
+
+	public ShardRoutingDataSource(List<HikariDataSource> shards) {
+		this.shards = shards;
+		Map<Object, Object> targets = new HashMap<>();
+		for (int shard = 0; shard != shards.size(); shard++) {
+			targets.put(shard, shards.get(shard));
+		}
+		setTargetDataSources(targets);
+		setDefaultTargetDataSource(shards.get(0));
+		setLenientFallback(false);
+		afterPropertiesSet();
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		return Shards.current();
+	}
+
+	/**
+	 * @param shard
+	 * @return the database of the shard
+	 */
+	public DataSource getShard(int shard) {
+		return shards.get(shard);
+	}
+
+	public void close() {
+		shards.forEach(HikariDataSource::close);
+	}
+
+}
@@ -0,0 +1,46 @@
+package com.teamtaskmanager.shards;
+
+import javax.sql.DataSource;
+
+import org.hibernate.context.spi.CurrentTenantIdentifierResolver;
+import org.hibernate.engine.jdbc.connections.spi.AbstractDataSourceBasedMultiTenantConnectionProviderImpl;
+
+/**
+ * Makes each shard a Hibernate tenant, so that a session opened while working on a shard takes its connections
+ * from that shard's database.
+ * <p>
+ * Hibernate keeps the block of ids it has taken from a sequence per tenant, so ids are only ever handed out on the
+ * shard whose sequence they came from - which a routing data source on its own can't do.
+ */
+public class ShardTenants extends AbstractDataSourceBasedMultiTenantConnectionProviderImpl implements CurrentTenantIdentifierResolver {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient ShardRoutingDataSource dataSource;
+
+	public ShardTenants(ShardRoutingDataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	@Override
+	public String resolveCurrentTenantIdentifier() {
+		Integer shard = Shards.current();
+		return null == shard ? "0" : shard.toString();
+	}
+
+	@Override
+	public boolean validateExistingCurrentSessions() {
+		return false;
+	}
+
+	@Override
+	protected DataSource selectAnyDataSource() {
+		return dataSource.getShard(0);
+	}
+
+	@Override
+	protected DataSource selectDataSource(String tenantIdentifier) {
+		return dataSource.getShard(Integer.parseInt(tenantIdentifier));
+	}
+
+}
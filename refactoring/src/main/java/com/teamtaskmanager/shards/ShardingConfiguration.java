@@ -0,0 +1,150 @@
+package com.teamtaskmanager.shards;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.SequenceGenerator;
+import javax.sql.DataSource;
+
+import org.hibernate.MultiTenancyStrategy;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.tool.hbm2ddl.SchemaUpdate;
+import org.hibernate.tool.schema.TargetType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.JpaProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.teamtaskmanager.model.Task;
+import com.teamtaskmanager.model.TaskView;
+import com.teamtaskmanager.model.User;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * The databases of taskstore.engine=sharded - application.shards.count embedded H2 databases, each with the whole
+ * schema, behind one {@link ShardRoutingDataSource} that JPA is given in place of the usual data source.
+ * <p>
+ * The schema is brought up to date on every shard at startup, as spring.jpa.generate-ddl does for the one database
+ * of the jpa engine, and the sequences of each shard are moved on to the shard's {@link Shards#firstId(int)}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "taskstore.engine", havingValue = "sharded")
+public class ShardingConfiguration {
+
+	private static final Class<?>[] ENTITIES = { Task.class, TaskView.class, User.class };
+
+	@Bean(destroyMethod = "shutdown")
+	public Shards shards(@Value("${application.shards.count:4}") int count,
+			@Value("${application.shards.threads:0}") int threads) {
+		return new Shards(count, threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+	}
+
+	@Bean(destroyMethod = "close")
+	public ShardRoutingDataSource dataSource(Shards shards, JpaProperties jpaProperties, HibernateProperties hibernateProperties,
+			@Value("${application.shards.url:jdbc:h2:mem:shard%d;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE}") String url,
+			@Value("${application.shards.pool-size:10}") int poolSize) throws SQLException {
+		Map<String, Object> settings = hibernateProperties.determineHibernateProperties(jpaProperties.getProperties(), new HibernateSettings());
+
+		List<HikariDataSource> databases = new ArrayList<>();
+		for (int shard = 0; shard != shards.getCount(); shard++) {
+			HikariDataSource database = DataSourceBuilder.create()
+					.type(HikariDataSource.class)
+					.url(String.format(url, shard))
+					.username("sa")
+					.build();
+			database.setPoolName("shard-" + shard);
+			database.setMaximumPoolSize(poolSize);
+			databases.add(database);
+
+			updateSchema(database, settings);
+			if (shard != 0) {
+				moveSequences(database, Shards.firstId(shard));
+			}
+		}
+		return new ShardRoutingDataSource(databases);
+	}
+
+	@Bean
+	public HibernatePropertiesCustomizer shardTenants(ShardRoutingDataSource dataSource) {
+		ShardTenants tenants = new ShardTenants(dataSource);
+		return properties -> {
+			properties.put(AvailableSettings.MULTI_TENANT, MultiTenancyStrategy.DATABASE);
+			properties.put(AvailableSettings.MULTI_TENANT_CONNECTION_PROVIDER, tenants);
+			properties.put(AvailableSettings.MULTI_TENANT_IDENTIFIER_RESOLVER, tenants);
+		};
+	}
+
+	/**
+	 * Creates or updates the tables of the entities, named as JPA names them
+	 */
+	private void updateSchema(DataSource database, Map<String, Object> settings) {
+		StandardServiceRegistryBuilder builder = new StandardServiceRegistryBuilder()
+				.applySetting(AvailableSettings.DATASOURCE, database)
+				.applySetting(AvailableSettings.USE_SECOND_LEVEL_CACHE, false)
+				.applySetting(AvailableSettings.USE_QUERY_CACHE, false);
+		for (String setting : new String[] { AvailableSettings.PHYSICAL_NAMING_STRATEGY, AvailableSettings.IMPLICIT_NAMING_STRATEGY, AvailableSettings.USE_NEW_ID_GENERATOR_MAPPINGS }) {
+			if (settings.containsKey(setting)) {
+				builder.applySetting(setting, settings.get(setting));
+			}
+		}
+
+		StandardServiceRegistry registry = builder.build();
+		try {
+			MetadataSources sources = new MetadataSources(registry);
+			for (Class<?> entity : ENTITIES) {
+				sources.addAnnotatedClass(entity);
+			}
+			Metadata metadata = sources.buildMetadata();
+			new SchemaUpdate().execute(EnumSet.of(TargetType.DATABASE), metadata);
+		} finally {
+			StandardServiceRegistryBuilder.destroy(registry);
+		}
+	}
+
+	/**
+	 * Restarts each sequence that is still below the first id of the shard - Hibernate hands out the block of ids
+	 * up to each value it takes, so the sequence restarts a block above the first id
+	 */
+	private void moveSequences(DataSource database, long firstId) throws SQLException {
+		try (Connection connection = database.getConnection();
+				PreparedStatement current = connection.prepareStatement("select current_value from information_schema.sequences where sequence_name = ?");
+				Statement restart = connection.createStatement()) {
+			for (Class<?> entity : ENTITIES) {
+				SequenceGenerator generator;
+				try {
+					generator = entity.getField("id").getAnnotation(SequenceGenerator.class);
+				} catch (NoSuchFieldException e) {
+					throw new IllegalStateException("No id on " + entity, e);
+				}
+				if (null == generator) {
+					// takes the id of what it is a view of
+					continue;
+				}
+
+				current.setString(1, generator.sequenceName().toUpperCase());
+				try (ResultSet value = current.executeQuery()) {
+					if (value.next() && value.getLong(1) < firstId) {
+						restart.execute("alter sequence " + generator.sequenceName() + " restart with " + (firstId + generator.allocationSize()));
+					}
+				}
+			}
+		}
+	}
+
+}
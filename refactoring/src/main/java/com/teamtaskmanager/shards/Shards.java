@@ -0,0 +1,161 @@
+package com.teamtaskmanager.shards;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.teamtaskmanager.metrics.HibernateRequestCounter;
+
+/**
+ * The shards of the sharded engine, and the shard the current thread is working on.
+ * <p>
+ * A user lives on the shard its name hashes to, and its tasks with it. Each shard numbers its users and tasks
+ * from its own {@link #firstId(int)}, so an id is unique across the shards and says which shard it is on.
+ */
+public class Shards {
+
+	/**
+	 * The shard of an id is in the bits above this - ids stay below 2^53, which JavaScript clients can hold, for
+	 * up to 32 shards
+	 */
+	public static final int ID_SHIFT = 48;
+
+	public static final int MAX_COUNT = 32;
+
+	private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+	private final int count;
+
+	private final ExecutorService executor;
+
+	/**
+	 * @param count   the number of shards
+	 * @param threads the number of threads working on shards at once for scattered work
+	 */
+	public Shards(int count, int threads) {
+		if (count < 1 || count > MAX_COUNT) {
+			throw new IllegalArgumentException("Shards must be from 1 to " + MAX_COUNT + ": " + count);
+		}
+		this.count = count;
+		AtomicInteger created = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "shard-" + created.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * @return the shard the current thread is working on, or null outside of {@link #on(int, Supplier)}
+	 */
+	static Integer current() {
+		return CURRENT.get();
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @param userName
+	 * @return the shard of the user and its tasks
+	 */
+	public int ofName(String userName) {
+		return Math.floorMod(userName.hashCode(), count);
+	}
+
+	/**
+	 * @param id a user or task id
+	 * @return the shard it was numbered on - an id no shard numbered is looked for on shard 0, which can't hold it
+	 */
+	public int ofId(long id) {
+		long shard = id >>> ID_SHIFT;
+		return shard < count ? (int) shard : 0;
+	}
+
+	/**
+	 * @param shard
+	 * @return the lowest id numbered on the shard
+	 */
+	public static long firstId(int shard) {
+		return (long) shard << ID_SHIFT;
+	}
+
+	/**
+	 * Works on one shard, on this thread - everything it stores or loads goes to that shard
+	 */
+	public <T> T on(int shard, Supplier<T> work) {
+		Integer previous = CURRENT.get();
+		CURRENT.set(shard);
+		try {
+			return work.get();
+		} finally {
+			if (null == previous) {
+				CURRENT.remove();
+			} else {
+				CURRENT.set(previous);
+			}
+		}
+	}
+
+	/**
+	 * Works on many shards at once, each on its own thread
+	 *
+	 * @param shards which shards
+	 * @param work   the work for one shard
+	 * @return the result for each shard, in the same order
+	 */
+	public <T> List<T> onEach(List<Integer> shards, Function<Integer, T> work) {
+		if (shards.size() == 1) {
+			return Collections.singletonList(on(shards.get(0), () -> work.apply(shards.get(0))));
+		}
+		List<CompletableFuture<T>> results = new ArrayList<>(shards.size());
+		for (Integer shard : shards) {
+			CompletableFuture<T> result = new CompletableFuture<>();
+			executor.execute(HibernateRequestCounter.propagate(() -> {
+				try {
+					result.complete(on(shard, () -> work.apply(shard)));
+				} catch (Throwable e) {
+					result.completeExceptionally(e);
+				}
+			}));
+			results.add(result);
+		}
+
+		List<T> values = new ArrayList<>(shards.size());
+		for (CompletableFuture<T> result : results) {
+			try {
+				values.add(result.join());
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw e;
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * As {@link #onEach(List, Function)}, on every shard
+	 */
+	public <T> List<T> onAll(Function<Integer, T> work) {
+		List<Integer> all = new ArrayList<>(count);
+		for (int shard = 0; shard != count; shard++) {
+			all.add(shard);
+		}
+		return onEach(all, work);
+	}
+
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+}
@@ -1,17 +1,25 @@
 package com.teamtaskmanager.utilities;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
 
 public class FormatDate {
 
-	public static Date toDate(String date) {
+	// DateTimeFormatter is immutable and thread-safe, so one instance serves every request
+	private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("uuuu-MM-dd").withResolverStyle(ResolverStyle.STRICT);
+
+	public static LocalDate toDate(String date) {
 		try {
-			return new SimpleDateFormat("yyyy-MM-dd").parse(date);
-		} catch (ParseException e) {
+			return LocalDate.parse(date, FORMAT);
+		} catch (DateTimeParseException e) {
 			throw new IllegalArgumentException("Bad date: " + date, e);
 		}
 	}
 
+	public static String format(LocalDate date) {
+		return FORMAT.format(date);
+	}
+
 }
@@ -0,0 +1,11 @@
+-- Converts task.due from the yyyy-MM-dd strings it used to be stored as into a DATE column.
+--
+-- Only needed for a persistent H2 database created before Task.due became a LocalDate - the default
+-- in-memory database is recreated on every start. Run it once, before starting the new version.
+
+ALTER TABLE task ADD COLUMN due_date DATE;
+UPDATE task SET due_date = PARSEDATETIME(due, 'yyyy-MM-dd');
+DROP INDEX IF EXISTS idx_task_due;
+ALTER TABLE task DROP COLUMN due;
+ALTER TABLE task ALTER COLUMN due_date RENAME TO due;
+CREATE INDEX idx_task_due ON task(due);
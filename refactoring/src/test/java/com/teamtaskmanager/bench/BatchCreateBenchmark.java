@@ -0,0 +1,79 @@
+package com.teamtaskmanager.bench;
+
+import com.mashape.unirest.http.Unirest;
+import com.mashape.unirest.http.exceptions.UnirestException;
+import com.teamtaskmanager.Server;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+
+/**
+ * Compares the throughput of creating tasks one request at a time against creating them through /tasks/batch.
+ * <p>
+ * Not a test - run the main method, optionally with the number of tasks to create and the batch size, e.g.
+ * <pre>BatchCreateBenchmark 20000 1000</pre>
+ */
+public class BatchCreateBenchmark {
+
+    private static final String HOST = "http://localhost:9091";
+
+    public static void main(String[] args) throws UnirestException, IOException {
+        int tasks = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        ConfigurableApplicationContext server = SpringApplication.run(Server.class, "--server.port=9091", "--logging.level.root=WARN");
+        try {
+            // warm up both paths before measuring
+            createSingly(1000);
+            createInBatches(1000, batchSize);
+
+            Unirest.delete(HOST + "/clear").asString();
+            long singleNanos = createSingly(tasks);
+
+            Unirest.delete(HOST + "/clear").asString();
+            long batchNanos = createInBatches(tasks, batchSize);
+
+            report("POST /tasks", tasks, singleNanos);
+            report("POST /tasks/batch (" + batchSize + " per request)", tasks, batchNanos);
+        } finally {
+            Unirest.shutdown();
+            server.close();
+        }
+    }
+
+    private static long createSingly(int tasks) throws UnirestException {
+        long start = System.nanoTime();
+        for (int i = 0; i != tasks; i++) {
+            Unirest.post(HOST + "/tasks").body(task(i).toString()).asString();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long createInBatches(int tasks, int batchSize) throws UnirestException {
+        long start = System.nanoTime();
+        for (int i = 0; i < tasks; i += batchSize) {
+            JSONArray batch = new JSONArray();
+            for (int j = i; j != Math.min(tasks, i + batchSize); j++) {
+                batch.put(task(j));
+            }
+            Unirest.post(HOST + "/tasks/batch").body(batch.toString()).asString();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static JSONObject task(int i) {
+        return new JSONObject()
+                .put("user", "user" + (i % 500))
+                .put("task", "task " + i)
+                .put("due", "2525-08-" + (10 + i % 20));
+    }
+
+    private static void report(String path, int tasks, long nanos) {
+        System.out.printf("%-45s %8d tasks in %7.2f s = %10.1f tasks/s%n", path, tasks, nanos / 1e9, tasks / (nanos / 1e9));
+    }
+
+}
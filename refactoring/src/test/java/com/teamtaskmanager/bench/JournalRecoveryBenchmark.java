@@ -0,0 +1,123 @@
+package com.teamtaskmanager.bench;
+
+import com.teamtaskmanager.Server;
+import com.teamtaskmanager.journal.JournalStore;
+import com.teamtaskmanager.model.Task;
+import com.teamtaskmanager.model.User;
+import com.teamtaskmanager.repositories.TaskRepository;
+import com.teamtaskmanager.repositories.UserRepository;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures how long the log store engine takes to recover, per million records, from the journal alone and from
+ * a snapshot, and the latency of a single write with the journal sync and async.
+ * <p>
+ * Not a test - run the main method, optionally with the number of tasks to seed, e.g.
+ * <pre>JournalRecoveryBenchmark 1000000</pre>
+ */
+public class JournalRecoveryBenchmark {
+
+    private static final int USERS = 500;
+
+    private static final int WRITES = 20000;
+
+    public static void main(String[] args) throws IOException {
+        int tasks = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Path directory = Files.createTempDirectory("taskmanager-journal");
+
+        ConfigurableApplicationContext server = start(directory, true);
+        try {
+            seed(server, tasks);
+        } finally {
+            server.close();
+        }
+
+        server = start(directory, true);
+        try {
+            report("Recovery from the journal", server.getBean(JournalStore.class), tasks);
+            server.getBean(JournalStore.class).snapshot();
+        } finally {
+            server.close();
+        }
+
+        server = start(directory, true);
+        try {
+            report("Recovery from a snapshot", server.getBean(JournalStore.class), tasks);
+            writes("Write, journal sync", server);
+        } finally {
+            server.close();
+        }
+
+        server = start(directory, false);
+        try {
+            writes("Write, journal async", server);
+        } finally {
+            server.close();
+        }
+    }
+
+    private static ConfigurableApplicationContext start(Path directory, boolean isSync) {
+        return SpringApplication.run(Server.class, "--server.port=9091", "--logging.level.root=WARN",
+                "--taskstore.engine=log", "--application.journal.dir=" + directory,
+                "--application.journal.sync=" + isSync, "--application.metrics.method-timers=false", "--application.journal.snapshot-every=" + Long.MAX_VALUE);
+    }
+
+    private static void seed(ConfigurableApplicationContext server, int tasks) {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i != USERS; i++) {
+            users.add(new User("user" + i));
+        }
+        server.getBean(UserRepository.class).persistAll(users);
+
+        TaskRepository taskRepository = server.getBean(TaskRepository.class);
+        List<Task> batch = new ArrayList<>();
+        for (int i = 0; i != tasks; i++) {
+            batch.add(task(users.get(i % USERS).id, i));
+            if (batch.size() == 1000) {
+                taskRepository.persistAll(batch);
+                batch.clear();
+            }
+        }
+        taskRepository.persistAll(batch);
+    }
+
+    private static void writes(String name, ConfigurableApplicationContext server) {
+        TaskRepository taskRepository = server.getBean(TaskRepository.class);
+        long userId = server.getBean(UserRepository.class).findByName("user0").id;
+        long[] nanos = new long[WRITES];
+        for (int i = 0; i != WRITES; i++) {
+            Task task = task(userId, i);
+            long start = System.nanoTime();
+            taskRepository.persist(task);
+            nanos[i] = System.nanoTime() - start;
+        }
+
+        // the first half warms up
+        long[] measured = Arrays.copyOfRange(nanos, WRITES / 2, WRITES);
+        Arrays.sort(measured);
+        System.out.printf("%-30s p50 %8.1f us   p99 %8.1f us%n", name,
+                measured[measured.length / 2] / 1e3, measured[measured.length * 99 / 100] / 1e3);
+    }
+
+    private static Task task(long userId, int i) {
+        return new Task(userId, "task " + i, LocalDate.of(2525, 8, 10 + i % 20), i % 7 == 0);
+    }
+
+    private static void report(String name, JournalStore journalStore, int tasks) {
+        long records = journalStore.getRecordsReplayed();
+        double millis = journalStore.getRecoveryNanos() / 1e6;
+        System.out.printf("%-30s %8d records after the snapshot in %8.1f ms = %8.1f ms per million tasks%n",
+                name, records, millis, millis * 1e6 / tasks);
+    }
+
+}
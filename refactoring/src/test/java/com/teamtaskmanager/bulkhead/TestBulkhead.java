@@ -0,0 +1,81 @@
+package com.teamtaskmanager.bulkhead;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks a bulkhead turns work away once its threads and queue are full, and records how long work waited
+ */
+public class TestBulkhead {
+
+    private MeterRegistry registry;
+
+    private Bulkhead bulkhead;
+
+    @Before
+    public void setup() {
+        registry = new SimpleMeterRegistry();
+        bulkhead = new Bulkhead("test", 1, 1, work -> work, registry);
+    }
+
+    @After
+    public void teardown() {
+        bulkhead.shutdown();
+    }
+
+    @Test
+    public void rejectsWhenFull() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> running = bulkhead.submit(() -> {
+            release.await();
+            return "running";
+        });
+        CompletableFuture<String> queued = bulkhead.submit(() -> "queued");
+
+        try {
+            bulkhead.submit(() -> "rejected");
+            fail("Should have been rejected");
+        } catch (BulkheadFullException e) {
+            assertEquals("Wrong error", "Too busy to handle test requests, try again later", e.getMessage());
+        }
+        assertEquals("Rejection wasn't counted", 1, registry.get("taskmanager.bulkhead.rejected").tag("bulkhead", "test").counter().count(), 0);
+
+        release.countDown();
+        assertEquals("running", running.get());
+        assertEquals("queued", queued.get());
+        assertEquals("Queue waits weren't recorded", 2, registry.get("taskmanager.bulkhead.queue.wait").tag("bulkhead", "test").timer().count());
+
+        // there's room again once the work has finished
+        assertEquals("accepted", bulkhead.submit(() -> "accepted").get());
+
+    }
+
+    @Test
+    public void passesOnFailures() throws Exception {
+
+        CompletableFuture<String> failed = bulkhead.submit(() -> {
+            throw new IllegalStateException("failed");
+        });
+
+        try {
+            failed.get();
+            fail("Should have failed");
+        } catch (ExecutionException e) {
+            assertEquals("Wrong error", IllegalStateException.class, e.getCause().getClass());
+        }
+
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.teamtaskmanager.changes;
+
+import com.teamtaskmanager.model.Task;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestChangeRing {
+
+    /**
+     * Changes are read in order from after the last one read, up to the latest
+     */
+    @Test
+    public void readsOnFromTheLastChangeRead() {
+        ChangeRing ring = new ChangeRing(8, 100);
+        for (long id = 1; id <= 5; id++) {
+            ring.publish(TaskChange.Type.CREATED, task(id));
+        }
+        assertEquals(104, ring.last());
+
+        List<TaskChange> changes = new ArrayList<>();
+        assertTrue(ring.read(101, 10, changes));
+        assertEquals(3, changes.size());
+        assertEquals(102, changes.get(0).seq);
+        assertEquals(Long.valueOf(3), changes.get(0).task.id);
+        assertEquals(104, changes.get(2).seq);
+
+        changes.clear();
+        assertTrue(ring.read(104, 10, changes));
+        assertTrue(changes.isEmpty());
+    }
+
+    /**
+     * A reader that has fallen further behind than the ring holds is told so, rather than skipping changes
+     */
+    @Test
+    public void overwrittenChangesNeedAResync() {
+        ChangeRing ring = new ChangeRing(4, 1);
+        for (long id = 1; id <= 6; id++) {
+            ring.publish(TaskChange.Type.CREATED, task(id));
+        }
+
+        assertFalse("Changes 2 and 3 are gone", ring.read(1, 10, new ArrayList<>()));
+
+        List<TaskChange> changes = new ArrayList<>();
+        assertTrue(ring.read(2, 10, changes));
+        assertEquals(4, changes.size());
+        assertEquals(3, changes.get(0).seq);
+        assertEquals(6, changes.get(3).seq);
+
+        assertFalse("Not reached yet", ring.read(7, 10, new ArrayList<>()));
+        assertFalse("From before the ring", new ChangeRing(4, 100).read(1, 10, new ArrayList<>()));
+    }
+
+    /**
+     * Writers on many threads each get their own number, and every change can be read
+     */
+    @Test
+    public void concurrentWritersGetDistinctNumbers() throws InterruptedException {
+        ChangeRing ring = new ChangeRing(4096, 1);
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        for (int thread = 0; thread != 4; thread++) {
+            writers.execute(() -> {
+                for (long id = 0; id != 1000; id++) {
+                    ring.publish(TaskChange.Type.COMPLETED, task(id));
+                }
+            });
+        }
+        writers.shutdown();
+        assertTrue(writers.awaitTermination(10, TimeUnit.SECONDS));
+
+        List<TaskChange> changes = new ArrayList<>();
+        assertTrue(ring.read(0, 10000, changes));
+        assertEquals(4000, changes.size());
+        for (int i = 0; i != changes.size(); i++) {
+            assertEquals(i + 1, changes.get(i).seq);
+        }
+    }
+
+    private static Task task(long id) {
+        Task task = new Task(1L, "task " + id, LocalDate.of(2525, 1, 1), false);
+        task.id = id;
+        return task;
+    }
+}
@@ -4,7 +4,11 @@ import com.mashape.unirest.http.HttpResponse;
 import com.mashape.unirest.http.JsonNode;
 import com.mashape.unirest.http.Unirest;
 import com.mashape.unirest.http.exceptions.UnirestException;
+import com.mashape.unirest.request.HttpRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.teamtaskmanager.Server;
+import com.teamtaskmanager.dto.TaskDTO;
 
 import org.apache.http.HttpStatus;
 import org.json.JSONArray;
@@ -14,26 +18,51 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Starts the server and makes a few basic tests on the API
+ * <p>
+ * The server is shut down after the tests, so the same tests can be run against another store engine on the same port.
  */
 @RunWith(SpringRunner.class)
 @SpringBootTest(classes = Server.class, webEnvironment = SpringBootTest.WebEnvironment.DEFINED_PORT)
+@DirtiesContext
 public class TestServer {
 
     @Value("${local.server.port}")
     private int serverPort;
 
+    @Value("${taskstore.engine:jpa}")
+    private String engine;
+
     /**
      * Clear down the database before every test
      *
@@ -71,6 +100,34 @@ public class TestServer {
 
     }
 
+    /**
+     * Confirm that a batch creates the good tasks and reports why the bad ones weren't created
+     *
+     * @throws UnirestException
+     */
+    @Test
+    public void createTaskBatch() throws UnirestException {
+        JSONArray batch = new JSONArray()
+                .put(new JSONObject(task("Arch Stanton", "do it to it", "2525-08-26")))
+                .put(new JSONObject(task("Arch Stanton", "do it again", "1976-08-26")))
+                .put(new JSONObject(task(null, "do it to it", "2525-08-26")))
+                .put(new JSONObject(task("Bob", "and this", "2525-08-27")))
+                .put(new JSONObject(task("Cal", "and that", "2525-08-28")));
+
+        HttpResponse<JsonNode> result = Unirest.post("http://localhost:" + serverPort + "/tasks/batch")
+                .body(batch.toString()).asJson();
+        assertEquals("Batch failed", HttpStatus.SC_OK, result.getStatus());
+
+        JSONArray results = result.getBody().getArray();
+        assertEquals("Wrong number of results", 5, results.length());
+        assertEquals("Wrong error", "Due can't be in the past", results.getJSONObject(1).getString("error"));
+        assertEquals("Wrong error", "User can't be empty", results.getJSONObject(2).getString("error"));
+
+        thenTaskExists("Arch Stanton", "do it to it", "2525-08-26", String.valueOf(results.getJSONObject(0).getLong("id")));
+        thenTaskExists("Bob", "and this", "2525-08-27", String.valueOf(results.getJSONObject(3).getLong("id")));
+        thenTaskExists("Cal", "and that", "2525-08-28", String.valueOf(results.getJSONObject(4).getLong("id")));
+    }
+
     @Test
     public void getTaskThatIsNotThere() throws UnirestException {
         assertEquals(
@@ -105,6 +162,107 @@ public class TestServer {
 
     }
 
+    /**
+     * Confirm that many tasks can be completed at once, by id or by user and due date, and that only the tasks
+     * that weren't already completed are reported
+     *
+     * @throws UnirestException
+     */
+    @Test
+    public void completeManyTasks() throws UnirestException {
+
+        String A = id(givenTaskCreated("Arch", "t1", "2525-08-26"));
+        String B = id(givenTaskCreated("Arch", "t2", "2525-08-27"));
+        String C = id(givenTaskCreated("Arch", "t3", "2525-08-28"));
+        String D = id(givenTaskCreated("Bob", "t4", "2525-08-26"));
+        givenTaskCompleted(B);
+
+        HttpResponse<JsonNode> byIds = Unirest.put("http://localhost:" + serverPort + "/tasks/complete")
+                .body("[" + A + ", " + B + ", -12345]").asJson();
+        assertEquals("Complete failed", HttpStatus.SC_OK, byIds.getStatus());
+        assertEquals("Wrong tasks completed", asList(A), ids(byIds.getBody().getArray()));
+
+        HttpResponse<JsonNode> byUser = Unirest.put("http://localhost:" + serverPort + "/tasks/complete")
+                .queryString("user", "Arch").queryString("dateBefore", "2525-08-29").asJson();
+        assertEquals("Complete failed", HttpStatus.SC_OK, byUser.getStatus());
+        assertEquals("Wrong tasks completed", asList(C), ids(byUser.getBody().getArray()));
+
+        thenTaskExists("Arch", "t1", "2525-08-26", A, true);
+        thenTaskExists("Arch", "t3", "2525-08-28", C, true);
+        thenTaskExists("Bob", "t4", "2525-08-26", D, false);
+        assertEquals("Filter should be required",
+                HttpStatus.SC_BAD_REQUEST,
+                Unirest.put("http://localhost:" + serverPort + "/tasks/complete").asString().getStatus()
+        );
+
+        HttpResponse<String> malformed = Unirest.put("http://localhost:" + serverPort + "/tasks/complete").body("[" + D + ",").asString();
+        assertEquals("Ids should be JSON", HttpStatus.SC_BAD_REQUEST, malformed.getStatus());
+        assertEquals("Wrong error", "Ids must be a list of task ids", malformed.getHeaders().getFirst("Error"));
+        thenTaskExists("Bob", "t4", "2525-08-26", D, false);
+    }
+
+    /**
+     * Confirm that completes sent at the same time each get their own answer
+     *
+     * @throws Exception
+     */
+    @Test
+    public void completeTasksConcurrently() throws Exception {
+
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i != 16; i++) {
+            ids.add(id(givenTaskCreated("User" + (i % 2), "t" + i, "2525-08-26")));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<HttpResponse<JsonNode>>> results = new ArrayList<>();
+        for (String id : ids) {
+            results.add(executor.submit(() -> Unirest.put("http://localhost:" + serverPort + "/tasks/{id}/complete").routeParam("id", id).asJson()));
+        }
+        for (int i = 0; i != ids.size(); i++) {
+            HttpResponse<JsonNode> result = results.get(i).get();
+            assertEquals("Complete failed", HttpStatus.SC_OK, result.getStatus());
+            assertEquals("Wrong task", ids.get(i), String.valueOf(result.getBody().getObject().getLong("id")));
+            assertTrue("Not completed", result.getBody().getObject().getBoolean("isCompleted"));
+        }
+        executor.shutdown();
+
+        assertEquals("Tasks left open", 0, stats(null).getInt("open"));
+    }
+
+    /**
+     * Completing the same task from many requests at once succeeds for all of them, and completes it once
+     *
+     * @throws Exception
+     */
+    @Test
+    public void completeSameTaskConcurrently() throws Exception {
+
+        String id = id(givenTaskCreated("Arch", "t1", "2525-08-26"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<HttpResponse<JsonNode>>> results = new ArrayList<>();
+        for (int i = 0; i != 16; i++) {
+            results.add(executor.submit(() -> Unirest.put("http://localhost:" + serverPort + "/tasks/{id}/complete").routeParam("id", id).asJson()));
+        }
+        for (Future<HttpResponse<JsonNode>> result : results) {
+            assertEquals("Complete failed", HttpStatus.SC_OK, result.get().getStatus());
+            assertTrue("Not completed", result.get().getBody().getObject().getBoolean("isCompleted"));
+        }
+        executor.shutdown();
+
+        assertEquals("Tasks left open", 0, stats(null).getInt("open"));
+        assertEquals("Wrong completed count", 1, stats(null).getInt("completed"));
+    }
+
+    private List<String> ids(JSONArray array) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i != array.length(); i++) {
+            ids.add(String.valueOf(array.getLong(i)));
+        }
+        return ids;
+    }
+
     @Test
     public void completeTaskThatIsNotThere() throws UnirestException {
         assertEquals(
@@ -147,6 +305,57 @@ public class TestServer {
         );
     }
 
+    /**
+     * Confirm that a task is only sent again when it has changed since the ETag the client has
+     *
+     * @throws UnirestException
+     */
+    @Test
+    public void conditionalGetTask() throws UnirestException {
+        String id = id(givenTaskCreated("Arch Stanton", "do it to it", "2525-08-26"));
+
+        HttpResponse<String> first = Unirest.get("http://localhost:" + serverPort + "/tasks/{id}").routeParam("id", id).asString();
+        assertEquals("Get failed", HttpStatus.SC_OK, first.getStatus());
+        String eTag = first.getHeaders().getFirst("ETag");
+
+        assertEquals("Task hasn't changed",
+                HttpStatus.SC_NOT_MODIFIED,
+                Unirest.get("http://localhost:" + serverPort + "/tasks/{id}").routeParam("id", id)
+                        .header("If-None-Match", eTag).asString().getStatus()
+        );
+
+        givenTaskCompleted(id);
+
+        HttpResponse<JsonNode> changed = Unirest.get("http://localhost:" + serverPort + "/tasks/{id}").routeParam("id", id)
+                .header("If-None-Match", eTag).asJson();
+        assertEquals("Task has changed", HttpStatus.SC_OK, changed.getStatus());
+        thenTaskJsonHasValues(changed.getBody().getObject(), "Arch Stanton", "do it to it", "2525-08-26", true);
+    }
+
+    /**
+     * Confirm that search results are only sent again when a task has been written since the ETag the client has
+     *
+     * @throws UnirestException
+     */
+    @Test
+    public void conditionalSearch() throws UnirestException {
+        givenTaskCreated("Arch", "t1", "2525-08-26");
+
+        HttpResponse<String> first = Unirest.get("http://localhost:" + serverPort + "/tasks").asString();
+        String eTag = first.getHeaders().getFirst("ETag");
+
+        assertEquals("Nothing has changed",
+                HttpStatus.SC_NOT_MODIFIED,
+                Unirest.get("http://localhost:" + serverPort + "/tasks").header("If-None-Match", eTag).asString().getStatus()
+        );
+
+        givenTaskCreated("Bob", "t2", "2525-08-26");
+
+        HttpResponse<JsonNode> changed = Unirest.get("http://localhost:" + serverPort + "/tasks").header("If-None-Match", eTag).asJson();
+        assertEquals("A task was created", HttpStatus.SC_OK, changed.getStatus());
+        assertEquals("Wrong number of results", 2, changed.getBody().getArray().length());
+    }
+
     /**
      * Test that when a task is created in the past that the request is rejected
      *
@@ -247,6 +456,121 @@ public class TestServer {
 
     }
 
+    /**
+     * Check that we can search the task descriptions by word, phrase and prefix, along with the other filters
+     *
+     * @throws UnirestException
+     */
+    @Test
+    public void searchByWords() throws UnirestException {
+
+        String A = id(givenTaskCreated("Arch", "Buy milk at the café", "2525-08-26"));
+        String B = id(givenTaskCreated("Bob", "milk the cows, then buy bread", "2525-08-27"));
+        String C = id(givenTaskCreated("Arch", "Shopping: buy MILK", "2525-08-28"));
+        String D = id(givenTaskCreated("Arch", "buy milkshakes", "2525-08-29"));
+        String E = id(givenTaskCreated("Arch", "buy milk", "2525-08-30"));
+        givenTaskCompleted(E);
+        Unirest.delete("http://localhost:" + serverPort + "/tasks/{id}").routeParam("id", C).asString();
+
+        assertEquals("Wrong words", descendingIds(A, B), searchIds("milk buy", "id:desc", null, false));
+        assertEquals("Wrong phrase", asList(A), searchIds("\"buy milk\"", "id", null, false));
+        assertEquals("Wrong prefix", ascendingIds(A, B, D), searchIds("buy milk*", "id", null, false));
+        assertEquals("Wrong accents", asList(A), searchIds("CAFE", "id", null, false));
+        assertEquals("Wrong user", asList(D, A), searchIds("milk*", "due:desc", "Arch", false));
+        assertEquals("Wrong unknown word", asList(), searchIds("milk cheese", "id", null, false));
+        assertEquals("Wrong completed", asList(E, A), searchIds("\"buy milk\"", "id:desc", null, true));
+
+    }
+
+    /**
+     * Confirm that the counts follow tasks being created, completed and deleted
+     *
+     * @throws UnirestException
+     */
+    @Test
+    public void taskStats() throws UnirestException {
+
+        givenTaskCreated("Arch", "one", "2525-08-26");
+        String B = id(givenTaskCreated("Arch", "two", "2525-09-01"));
+        String C = id(givenTaskCreated("Bob", "three", "2525-09-02"));
+        givenTaskCreated("Bob", "four", "2525-09-03");
+        givenTaskCompleted(B);
+        givenTaskCompleted(B);
+        Unirest.delete("http://localhost:" + serverPort + "/tasks/{id}").routeParam("id", C).asString();
+
+        JSONObject all = stats(null);
+        assertEquals("Wrong open", 2, all.getInt("open"));
+        assertEquals("Wrong completed", 1, all.getInt("completed"));
+        assertEquals("Wrong overdue", 0, all.getInt("overdue"));
+        assertEquals("Wrong months", 1, all.getJSONObject("byDueMonth").getInt("2525-08"));
+        assertEquals("Wrong months", 2, all.getJSONObject("byDueMonth").getInt("2525-09"));
+        assertEquals("Wrong users", 2, all.getJSONObject("byUser").getInt("Arch"));
+        assertEquals("Wrong users", 1, all.getJSONObject("byUser").getInt("Bob"));
+
+        JSONObject bob = stats("Bob");
+        assertEquals("Wrong user open", 1, bob.getInt("open"));
+        assertEquals("Wrong user completed", 0, bob.getInt("completed"));
+        assertEquals("Wrong user users", 1, bob.getJSONObject("byUser").length());
+
+        assertEquals("Unknown user has tasks", 0, stats("nobody").getInt("open"));
+    }
+
+    private JSONObject stats(String user) throws UnirestException {
+        HttpRequest request = Unirest.get("http://localhost:" + serverPort + "/tasks/stats");
+        if (null != user) {
+            request.queryString("user", user);
+        }
+        HttpResponse<JsonNode> response = request.asJson();
+        assertEquals("Stats failed", HttpStatus.SC_OK, response.getStatus());
+        return response.getBody().getObject();
+    }
+
+    /**
+     * Confirm that tasks can be found by how soon they are due
+     *
+     * @throws UnirestException
+     */
+    @Test
+    public void searchByDueDays() throws UnirestException {
+
+        LocalDate today = LocalDate.now();
+        String A = id(givenTaskCreated("Arch", "t1", today.plusDays(1).toString()));
+        String B = id(givenTaskCreated("Arch", "t2", today.plusDays(3).toString()));
+        givenTaskCreated("Arch", "t3", today.plusDays(10).toString());
+        String D = id(givenTaskCreated("Arch", "t4", today.plusDays(2).toString()));
+        givenTaskCompleted(D);
+
+        assertEquals("Wrong due within", asList(A, B), dueIds("dueWithinDays", "3"));
+        assertEquals("Wrong due before", asList(A, B), dueIds("dateBefore", today.plusDays(10).toString()));
+        assertEquals("Wrong overdue", asList(), dueIds("overdue", "true"));
+        assertEquals("Negative days should be rejected",
+                HttpStatus.SC_BAD_REQUEST,
+                Unirest.get("http://localhost:" + serverPort + "/tasks").queryString("dueWithinDays", -1).asString().getStatus()
+        );
+    }
+
+    private List<String> dueIds(String parameter, String value) throws UnirestException {
+        HttpResponse<JsonNode> response = Unirest.get("http://localhost:" + serverPort + "/tasks")
+                .queryString(parameter, value)
+                .queryString("sortBy", "due")
+                .asJson();
+        assertEquals("Query failed", HttpStatus.SC_OK, response.getStatus());
+        return getResultIds(response);
+    }
+
+    private List<String> searchIds(String q, String sortBy, String user, boolean includeCompleted) throws UnirestException {
+        HttpRequest request = Unirest.get("http://localhost:" + serverPort + "/tasks")
+                .queryString("q", q)
+                .queryString("sortBy", sortBy)
+                .queryString("includeCompleted", includeCompleted);
+        if (null != user) {
+            request.queryString("user", user);
+        }
+        HttpResponse<JsonNode> response = request.asJson();
+        assertEquals("Query failed", HttpStatus.SC_OK, response.getStatus());
+        return getResultIds(response);
+    }
+
     private List<String> getResultIds(HttpResponse<JsonNode> response) {
         List<String> observedIds = new ArrayList<>();
         for (int i = 0; i != response.getBody().getArray().length(); i++) {
@@ -255,6 +579,28 @@ public class TestServer {
         return observedIds;
     }
 
+    /**
+     * Ties are broken by id, and ids only follow the order tasks were created in within one store - the sharded
+     * engine numbers each shard's tasks on their own
+     */
+    private List<String> ascendingIds(String... ids) {
+        List<String> sorted = new ArrayList<>(asList(ids));
+        sorted.sort(Comparator.comparing(Long::valueOf));
+        return sorted;
+    }
+
+    private List<String> descendingIds(String... ids) {
+        List<String> sorted = ascendingIds(ids);
+        Collections.reverse(sorted);
+        return sorted;
+    }
+
+    private List<String> then(List<String> first, List<String> second) {
+        List<String> joined = new ArrayList<>(first);
+        joined.addAll(second);
+        return joined;
+    }
+
     @Test
     public void includeCompleted() throws UnirestException {
 
@@ -280,6 +626,68 @@ public class TestServer {
 
     }
 
+    /**
+     * Rebuilding the views searches read from should leave searches and gets as they were
+     *
+     * @throws UnirestException
+     */
+    @Test
+    public void rebuildViews() throws UnirestException {
+
+        String A = id(givenTaskCreated("Arch", "t1", "2525-08-26"));
+        String B = id(givenTaskCreated("Bob", "t2", "2525-09-27"));
+        givenTaskCompleted(B);
+
+        assertEquals("Rebuild failed",
+                HttpStatus.SC_NO_CONTENT,
+                Unirest.post("http://localhost:" + serverPort + "/tasks/rebuild").asString().getStatus()
+        );
+
+        HttpResponse<JsonNode> response = Unirest.get("http://localhost:" + serverPort + "/tasks")
+                .queryString("includeCompleted", Boolean.TRUE)
+                .asJson();
+
+        assertEquals("Query failed", HttpStatus.SC_OK, response.getStatus());
+        assertEquals("Wrong results", ascendingIds(A, B), getResultIds(response));
+
+        HttpResponse<JsonNode> task = Unirest.get("http://localhost:" + serverPort + "/tasks/{id}").routeParam("id", B).asJson();
+        assertEquals("Get failed", HttpStatus.SC_OK, task.getStatus());
+        assertEquals("Wrong user", "Bob", task.getBody().getObject().getString("user"));
+        assertEquals("Wrong due", "2525-09-27", task.getBody().getObject().getString("due"));
+        assertTrue("Should be completed", task.getBody().getObject().getBoolean("isCompleted"));
+    }
+
+    /**
+     * Tasks created while the views and indexes are being rebuilt are neither lost nor found twice
+     *
+     * @throws Exception
+     */
+    @Test
+    public void createWhileRebuilding() throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i != 40; i++) {
+            String date = "2525-08-" + (10 + i % 20);
+            results.add(executor.submit(() -> givenTaskCreated("Arch", "rebuilding", date).getStatus()));
+            if (i % 8 == 0) {
+                results.add(executor.submit(() -> Unirest.post("http://localhost:" + serverPort + "/tasks/rebuild").asString().getStatus()));
+            }
+        }
+        for (Future<Integer> result : results) {
+            assertTrue("Request failed", result.get() < 300);
+        }
+        executor.shutdown();
+
+        HttpResponse<JsonNode> response = Unirest.get("http://localhost:" + serverPort + "/tasks")
+                .queryString("q", "rebuilding")
+                .asJson();
+
+        assertEquals("Query failed", HttpStatus.SC_OK, response.getStatus());
+        assertEquals("Wrong number of results", 40, response.getBody().getArray().length());
+        assertEquals("Wrong open count", 40, stats(null).getInt("open"));
+    }
+
     /**
      * Test that we can sort by dates descending
      *
@@ -298,7 +706,7 @@ public class TestServer {
                 .asJson();
 
         assertEquals("Query failed", HttpStatus.SC_OK, response.getStatus());
-        assertEquals("Wrong results", asList(A, B, C, D, E), getResultIds(response));
+        assertEquals("Wrong results", ascendingIds(A, B, C, D, E), getResultIds(response));
 
     }
 
@@ -321,7 +729,7 @@ public class TestServer {
                 .asJson();
 
         assertEquals("Query failed", HttpStatus.SC_OK, response.getStatus());
-        assertEquals("Wrong results", asList(E, D, C, B, A), getResultIds(response));
+        assertEquals("Wrong results", descendingIds(A, B, C, D, E), getResultIds(response));
 
     }
 
@@ -344,7 +752,7 @@ public class TestServer {
                 .asJson();
 
         assertEquals("Query failed", HttpStatus.SC_OK, response.getStatus());
-        assertEquals("Wrong results", asList(D, E, B, A, C), getResultIds(response));
+        assertEquals("Wrong results", then(asList(D, E, B), ascendingIds(A, C)), getResultIds(response));
 
     }
 
@@ -385,7 +793,230 @@ public class TestServer {
                 .asJson();
 
         assertEquals("Query failed", HttpStatus.SC_OK, response.getStatus());
-        assertEquals("Wrong results", asList(A, C, B, E, D), getResultIds(response));
+        assertEquals("Wrong results", then(ascendingIds(A, C), asList(B, E, D)), getResultIds(response));
+
+    }
+
+    @Test
+    public void sortByUserThenDateDescending() throws UnirestException {
+
+        String A = id(givenTaskCreated("Arch", "t1", "2525-08-26"));
+        String B = id(givenTaskCreated("Bob", "t1", "2525-08-26"));
+        String C = id(givenTaskCreated("Arch", "t2", "2525-08-27"));
+        String D = id(givenTaskCreated("Bob", "t3", "2525-09-27"));
+        String E = id(givenTaskCreated("Arch", "t4", "2525-08-26"));
+
+        HttpResponse<JsonNode> response = Unirest.get("http://localhost:" + serverPort + "/tasks")
+                .queryString("sortBy", "user:asc,due:desc")
+                .asJson();
+
+        assertEquals("Query failed", HttpStatus.SC_OK, response.getStatus());
+        assertEquals("Wrong results", asList(C, A, E, D, B), getResultIds(response));
+
+    }
+
+    /**
+     * Test that sorting by something that isn't a field is rejected before any searching is done
+     *
+     * @throws UnirestException
+     */
+    @Test
+    public void sortByUnknownField() throws UnirestException {
+
+        givenTaskCreated("Arch", "t1", "2525-08-26");
+
+        HttpResponse<String> response = Unirest.get("http://localhost:" + serverPort + "/tasks")
+                .queryString("sortBy", "due:desc,colour")
+                .asString();
+
+        assertEquals("Query should have failed", HttpStatus.SC_BAD_REQUEST, response.getStatus());
+        assertEquals("Wrong error", "Not a field: colour", response.getHeaders().getFirst("Error"));
+
+    }
+
+    /**
+     * Test that a streamed search returns the same tasks, as a JSON array or one task per line
+     *
+     * @throws UnirestException
+     */
+    @Test
+    public void streamSearch() throws UnirestException {
+
+        String A = id(givenTaskCreated("Arch", "t1", "2525-08-24"));
+        String B = id(givenTaskCreated("Bob", "t1", "2525-08-25"));
+        String C = id(givenTaskCreated("Cynthia", "t2", "2525-08-24"));
+        String D = id(givenTaskCreated("Arch", "t3", "2525-09-27"));
+
+        HttpResponse<JsonNode> array = Unirest.get("http://localhost:" + serverPort + "/tasks")
+                .queryString("sortBy", "due:desc")
+                .queryString("stream", Boolean.TRUE)
+                .asJson();
+
+        assertEquals("Query failed", HttpStatus.SC_OK, array.getStatus());
+        assertEquals("Wrong results", then(asList(D, B), ascendingIds(A, C)), getResultIds(array));
+
+        HttpResponse<String> lines = Unirest.get("http://localhost:" + serverPort + "/tasks")
+                .header("Accept", "application/x-ndjson")
+                .queryString("sortBy", "due:desc")
+                .asString();
+
+        assertEquals("Query failed", HttpStatus.SC_OK, lines.getStatus());
+        List<String> observedIds = new ArrayList<>();
+        for (String line : lines.getBody().split("\n")) {
+            observedIds.add(String.valueOf(new JSONObject(line).getLong("id")));
+        }
+        assertEquals("Wrong results", then(asList(D, B), ascendingIds(A, C)), observedIds);
+        thenTaskJsonHasValues(new JSONObject(lines.getBody().split("\n")[0]), "Arch", "t3", "2525-09-27");
+
+    }
+
+    /**
+     * Test that searches and gets can be answered in Smile, and searches column by column, with the same tasks
+     *
+     * @throws Exception
+     */
+    @Test
+    public void compactFormats() throws Exception {
+
+        String A = id(givenTaskCreated("Arch", "t1", "2525-08-24"));
+        String B = id(givenTaskCreated("Bob", "t2", "2525-08-25"));
+        ObjectMapper smile = new ObjectMapper(new SmileFactory());
+
+        HttpResponse<InputStream> binary = Unirest.get("http://localhost:" + serverPort + "/tasks")
+                .header("Accept", "application/x-jackson-smile")
+                .queryString("sortBy", "due")
+                .asBinary();
+
+        assertEquals("Query failed", HttpStatus.SC_OK, binary.getStatus());
+        assertTrue("Wrong content type", binary.getHeaders().getFirst("Content-Type").startsWith("application/x-jackson-smile"));
+        TaskDTO[] tasks = smile.readValue(binary.getBody(), TaskDTO[].class);
+        assertEquals("Wrong number of results", 2, tasks.length);
+        assertEquals("Wrong results", asList(A, B), asList(String.valueOf(tasks[0].id), String.valueOf(tasks[1].id)));
+        assertEquals("Wrong user", "Arch", tasks[0].user);
+        assertEquals("Wrong due", "2525-08-25", tasks[1].due);
+
+        HttpResponse<InputStream> one = Unirest.get("http://localhost:" + serverPort + "/tasks/{id}").routeParam("id", B)
+                .header("Accept", "application/x-jackson-smile")
+                .asBinary();
+        assertEquals("Get failed", HttpStatus.SC_OK, one.getStatus());
+        TaskDTO task = smile.readValue(one.getBody(), TaskDTO.class);
+        assertEquals("Wrong user", "Bob", task.user);
+        assertEquals("Wrong task", "t2", task.task);
+        assertFalse("Smile and JSON should have different ETags", one.getHeaders().getFirst("ETag").equals(
+                Unirest.get("http://localhost:" + serverPort + "/tasks/{id}").routeParam("id", B).asString().getHeaders().getFirst("ETag")));
+
+        HttpResponse<JsonNode> columns = Unirest.get("http://localhost:" + serverPort + "/tasks")
+                .header("Accept", "application/vnd.teamtaskmanager.columns+json")
+                .queryString("sortBy", "due")
+                .asJson();
+
+        assertEquals("Query failed", HttpStatus.SC_OK, columns.getStatus());
+        JSONObject body = columns.getBody().getObject();
+        assertEquals("Wrong results", asList(A, B), asList(String.valueOf(body.getJSONArray("id").getLong(0)), String.valueOf(body.getJSONArray("id").getLong(1))));
+        assertEquals("Wrong users", "Arch", body.getJSONArray("user").getString(0));
+        assertEquals("Wrong tasks", "t2", body.getJSONArray("task").getString(1));
+        assertEquals("Wrong dues", "2525-08-24", body.getJSONArray("due").getString(0));
+        assertFalse("Shouldn't be completed", body.getJSONArray("isCompleted").getBoolean(1));
+
+    }
+
+    /**
+     * Test that searches are gzipped for clients that accept it, and that a get, whose size is known before it's
+     * sent, isn't when it's below the threshold
+     *
+     * @throws Exception
+     */
+    @Test
+    public void compressesLargeResponses() throws Exception {
+
+        JSONArray batch = new JSONArray();
+        for (int i = 0; i != 50; i++) {
+            batch.put(new JSONObject(task("Arch Stanton", "do it to it " + i, "2525-08-26")));
+        }
+        assertEquals("Batch failed", HttpStatus.SC_OK,
+                Unirest.post("http://localhost:" + serverPort + "/tasks/batch").body(batch.toString()).asString().getStatus());
+
+        HttpURLConnection all = (HttpURLConnection) new URL("http://localhost:" + serverPort + "/tasks").openConnection();
+        all.setRequestProperty("Accept-Encoding", "gzip");
+        assertEquals("Query failed", HttpStatus.SC_OK, all.getResponseCode());
+        assertEquals("Should be compressed", "gzip", all.getHeaderField("Content-Encoding"));
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(all.getInputStream()), StandardCharsets.UTF_8))) {
+            assertEquals("Wrong number of results", 50, new JSONArray(reader.lines().collect(Collectors.joining())).length());
+        }
+
+        String id = String.valueOf(Unirest.get("http://localhost:" + serverPort + "/tasks").queryString("limit", 1).asJson()
+                .getBody().getArray().getJSONObject(0).getLong("id"));
+        HttpURLConnection one = (HttpURLConnection) new URL("http://localhost:" + serverPort + "/tasks/" + id).openConnection();
+        one.setRequestProperty("Accept-Encoding", "gzip");
+        assertEquals("Get failed", HttpStatus.SC_OK, one.getResponseCode());
+        assertEquals("Shouldn't be compressed", null, one.getHeaderField("Content-Encoding"));
+        one.getInputStream().close();
+
+    }
+
+    /**
+     * Test that following the cursors of a limited search returns every task exactly once, in order
+     *
+     * @throws UnirestException
+     */
+    @Test
+    public void pageThroughSearch() throws UnirestException {
+
+        String A = id(givenTaskCreated("Arch", "t1", "2525-08-24"));
+        String B = id(givenTaskCreated("Bob", "t1", "2525-08-25"));
+        String C = id(givenTaskCreated("Cynthia", "t2", "2525-08-24"));
+        String D = id(givenTaskCreated("Arch", "t3", "2525-09-27"));
+        String E = id(givenTaskCreated("Elsie", "t4", "2525-08-26"));
+        givenTaskCompleted(B);
+
+        List<String> observedIds = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            HttpRequest request = Unirest.get("http://localhost:" + serverPort + "/tasks")
+                    .queryString("sortBy", "due:desc")
+                    .queryString("includeCompleted", Boolean.TRUE)
+                    .queryString("limit", 2);
+            if (null != cursor) {
+                request = request.queryString("cursor", cursor);
+            }
+            HttpResponse<JsonNode> response = request.asJson();
+            assertEquals("Query failed", HttpStatus.SC_OK, response.getStatus());
+            observedIds.addAll(getResultIds(response));
+            cursor = response.getHeaders().getFirst("X-Next-Cursor");
+            pages++;
+        } while (null != cursor);
+
+        assertEquals("Wrong results", then(asList(D, E, B), ascendingIds(A, C)), observedIds);
+        assertEquals("Wrong number of pages", 3, pages);
+
+    }
+
+    /**
+     * Test that a cursor can't be used to continue a search with a different sort
+     *
+     * @throws UnirestException
+     */
+    @Test
+    public void cursorFromDifferentSort() throws UnirestException {
+
+        givenTaskCreated("Arch", "t1", "2525-08-24");
+        givenTaskCreated("Bob", "t1", "2525-08-25");
+
+        String cursor = Unirest.get("http://localhost:" + serverPort + "/tasks")
+                .queryString("sortBy", "due")
+                .queryString("limit", 1)
+                .asString()
+                .getHeaders().getFirst("X-Next-Cursor");
+
+        HttpResponse<String> response = Unirest.get("http://localhost:" + serverPort + "/tasks")
+                .queryString("sortBy", "user")
+                .queryString("limit", 1)
+                .queryString("cursor", cursor)
+                .asString();
+
+        assertEquals("Query should have failed", HttpStatus.SC_BAD_REQUEST, response.getStatus());
+        assertEquals("Wrong error", "Cursor doesn't match sortBy", response.getHeaders().getFirst("Error"));
 
     }
 
@@ -417,6 +1048,204 @@ public class TestServer {
 
     }
 
+    /**
+     * Confirm that only users with tasks are listed, in name order, and that they can be looked up by the start
+     * of their names
+     *
+     * @throws UnirestException
+     */
+    @Test
+    public void usersWithPrefix() throws UnirestException {
+
+        givenTaskCreated("Archie", "t1", "2525-08-26");
+        givenTaskCreated("Arch", "t2", "2525-08-26");
+        String B = id(givenTaskCreated("Bob", "t3", "2525-08-26"));
+        givenTaskCreated("Cynthia", "t4", "2525-08-26");
+        givenTaskCompleted(id(givenTaskCreated("Arch", "t5", "2525-08-26")));
+        Unirest.delete("http://localhost:" + serverPort + "/tasks/{id}").routeParam("id", B).asString();
+
+        assertEquals("Wrong users", asList("Arch", "Archie", "Cynthia"), userNames(null, null));
+        assertEquals("Wrong prefix", asList("Arch", "Archie"), userNames("Arch", null));
+        assertEquals("Wrong limit", asList("Arch"), userNames("Arch", 1));
+        assertEquals("Wrong unknown prefix", asList(), userNames("Dan", null));
+        assertEquals("Limit should be checked",
+                HttpStatus.SC_BAD_REQUEST,
+                Unirest.get("http://localhost:" + serverPort + "/users").queryString("limit", 0).asString().getStatus()
+        );
+
+    }
+
+    private List<String> userNames(String prefix, Integer limit) throws UnirestException {
+        HttpRequest request = Unirest.get("http://localhost:" + serverPort + "/users");
+        if (null != prefix) {
+            request.queryString("prefix", prefix);
+        }
+        if (null != limit) {
+            request.queryString("limit", limit);
+        }
+        HttpResponse<JsonNode> response = request.asJson();
+        assertEquals("User query failed", HttpStatus.SC_OK, response.getStatus());
+        List<String> names = new ArrayList<>();
+        JSONArray array = response.getBody().getArray();
+        for (int i = 0; i != array.length(); i++) {
+            names.add(array.getJSONObject(i).getString("name"));
+        }
+        return names;
+    }
+
+    /**
+     * Confirm that changes are streamed as they happen, only for the user asked for, that a client can carry on
+     * from the last event it had, and that it is told to resync when it asks for changes that have gone
+     *
+     * @throws Exception
+     */
+    @Test
+    public void followChanges() throws Exception {
+
+        String first;
+        try (ChangeStream changes = new ChangeStream("Arch", null)) {
+            String A = id(givenTaskCreated("Arch", "t1", "2525-08-26"));
+            givenTaskCreated("Bob", "t2", "2525-08-26");
+            givenTaskCompleted(A);
+            Unirest.delete("http://localhost:" + serverPort + "/tasks/{id}").routeParam("id", A).asString();
+
+            String[] created = changes.next();
+            assertEquals("Wrong event", "created", created[1]);
+            thenTaskJsonHasValues(new JSONObject(created[2]), "Arch", "t1", "2525-08-26");
+            assertEquals("Wrong task", A, String.valueOf(new JSONObject(created[2]).getLong("id")));
+
+            String[] completed = changes.next();
+            assertEquals("Wrong event", "completed", completed[1]);
+            thenTaskJsonHasValues(new JSONObject(completed[2]), "Arch", "t1", "2525-08-26", true);
+
+            String[] deleted = changes.next();
+            assertEquals("Wrong event", "deleted", deleted[1]);
+            assertTrue("Ids should rise", Long.parseLong(created[0]) < Long.parseLong(completed[0]));
+            assertTrue("Ids should rise", Long.parseLong(completed[0]) < Long.parseLong(deleted[0]));
+            first = created[0];
+        }
+
+        try (ChangeStream changes = new ChangeStream("Arch", first)) {
+            assertEquals("Should carry on after the last event", "completed", changes.next()[1]);
+            assertEquals("Should carry on after the last event", "deleted", changes.next()[1]);
+        }
+
+        try (ChangeStream changes = new ChangeStream(null, "1")) {
+            assertEquals("Changes that have gone should need a resync", "resync", changes.next()[1]);
+            Unirest.delete("http://localhost:" + serverPort + "/clear").asString();
+            assertEquals("Should carry on after the resync", "cleared", changes.next()[1]);
+        }
+
+    }
+
+    /**
+     * Reads the events of GET /tasks/changes
+     */
+    private class ChangeStream implements AutoCloseable {
+
+        private final HttpURLConnection connection;
+
+        private final BufferedReader reader;
+
+        ChangeStream(String user, String lastEventId) throws IOException {
+            String query = null == user ? "" : "?user=" + URLEncoder.encode(user, "UTF-8");
+            connection = (HttpURLConnection) new URL("http://localhost:" + serverPort + "/tasks/changes" + query).openConnection();
+            connection.setRequestProperty("Accept", "text/event-stream");
+            if (null != lastEventId) {
+                connection.setRequestProperty("Last-Event-ID", lastEventId);
+            }
+            connection.setReadTimeout(10000);
+            assertEquals("Subscribe failed", HttpStatus.SC_OK, connection.getResponseCode());
+            reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+            assertEquals("Should be subscribed", ":subscribed", reader.readLine());
+        }
+
+        /**
+         * @return the id, name and data of the next event with data
+         */
+        String[] next() throws IOException {
+            String[] event = new String[3];
+            for (String line = reader.readLine(); null != line; line = reader.readLine()) {
+                if (line.isEmpty()) {
+                    if (null != event[2]) {
+                        return event;
+                    }
+                    event = new String[3];
+                } else if (line.startsWith("id:")) {
+                    event[0] = line.substring(3).trim();
+                } else if (line.startsWith("event:")) {
+                    event[1] = line.substring(6).trim();
+                } else if (line.startsWith("data:")) {
+                    event[2] = line.substring(5).trim();
+                }
+            }
+            throw new IOException("The stream ended");
+        }
+
+        @Override
+        public void close() {
+            connection.disconnect();
+        }
+
+    }
+
+    /**
+     * Confirm that creating tasks for the same new user at the same time still creates only one user
+     *
+     * @throws Exception
+     */
+    @Test
+    public void uniqueUsersForConcurrentTasks() throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<HttpResponse<String>>> results = new ArrayList<>();
+        for (int i = 0; i != 32; i++) {
+            String user = "User" + (i % 2);
+            results.add(executor.submit(() -> givenTaskCreated(user, "t1", "2525-08-26")));
+        }
+        for (Future<HttpResponse<String>> result : results) {
+            assertEquals("Create failed", HttpStatus.SC_OK, result.get().getStatus());
+        }
+        executor.shutdown();
+
+        HttpResponse<JsonNode> response = Unirest.get("http://localhost:" + serverPort + "/users").asJson();
+        assertEquals("User query failed", HttpStatus.SC_OK, response.getStatus());
+        assertEquals("Users were duplicated", 2, response.getBody().getArray().length());
+
+    }
+
+    /**
+     * Confirm that requests are timed per endpoint and per service method, with their statements counted
+     *
+     * @throws UnirestException
+     */
+    @Test
+    public void metricsArePublished() throws UnirestException {
+
+        String id = givenTaskCreated("Arch", "t1", "2525-08-26").getHeaders().getFirst("Location").replaceFirst(".*/", "");
+        thenTaskExists("Arch", "t1", "2525-08-26", id);
+
+        HttpResponse<String> response = Unirest.get("http://localhost:" + serverPort + "/actuator/prometheus").asString();
+        assertEquals("Metrics failed", HttpStatus.SC_OK, response.getStatus());
+
+        String metrics = response.getBody();
+        for (String metric : asList(
+                "http_server_requests_seconds_bucket{exception=\"None\",method=\"GET\",outcome=\"SUCCESS\",status=\"200\",uri=\"/tasks/{id}\",",
+                "taskmanager_service_seconds_count{class=\"TaskService\",method=\"createTask\",}",
+                "taskmanager_repository_seconds_count{class=\"" + Character.toUpperCase(engine.charAt(0)) + engine.substring(1) + "TaskRepository\",method=\"persist\",}",
+                "taskmanager_request_statements_count{method=\"POST\",uri=\"/tasks\",}",
+                "taskmanager_request_entities_count{method=\"GET\",uri=\"/tasks/{id}\",}",
+                "taskmanager_cache_gets_total{cache=\"task-json\",result=\"hit\",}",
+                "hibernate_statements_total",
+                "jvm_gc_memory_allocated_bytes_total")) {
+            assertTrue("Missing " + metric, metrics.contains(metric));
+        }
+        if ("jpa".equals(engine)) {
+            assertFalse("Statements of a create weren't counted", metrics.contains("taskmanager_request_statements_sum{method=\"POST\",uri=\"/tasks\",} 0.0"));
+        }
+
+    }
+
     private HttpResponse<String> givenTaskCompleted(String id) throws UnirestException {
         return Unirest.put("http://localhost:" + serverPort + "/tasks/{id}/complete")
                 .routeParam("id", id)
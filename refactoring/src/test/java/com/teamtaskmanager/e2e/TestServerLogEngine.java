@@ -0,0 +1,15 @@
+package com.teamtaskmanager.e2e;
+
+import com.teamtaskmanager.Server;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Makes all the tests of {@link TestServer} against the in-memory store engine with its changes journaled, and with
+ * concurrent completes coalesced
+ */
+@SpringBootTest(classes = Server.class, webEnvironment = SpringBootTest.WebEnvironment.DEFINED_PORT,
+        properties = {"taskstore.engine=log", "application.journal.dir=${java.io.tmpdir}/taskmanager-test-journal",
+                "application.complete.coalesce-window-ms=5"})
+public class TestServerLogEngine extends TestServer {
+}
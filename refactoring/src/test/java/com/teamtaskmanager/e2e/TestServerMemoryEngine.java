@@ -0,0 +1,12 @@
+package com.teamtaskmanager.e2e;
+
+import com.teamtaskmanager.Server;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Makes all the tests of {@link TestServer} against the in-memory store engine
+ */
+@SpringBootTest(classes = Server.class, webEnvironment = SpringBootTest.WebEnvironment.DEFINED_PORT, properties = "taskstore.engine=memory")
+public class TestServerMemoryEngine extends TestServer {
+}
@@ -0,0 +1,19 @@
+package com.teamtaskmanager.e2e;
+
+import com.teamtaskmanager.Server;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Makes all the tests of {@link TestServer} against the sharded store engine, with its users spread over three shards,
+ * streamed searches merging the shards two tasks at a time, and searches for more than two ids from the indexes
+ * reading the tasks in order rather than binding the ids
+ */
+@SpringBootTest(classes = Server.class, webEnvironment = SpringBootTest.WebEnvironment.DEFINED_PORT, properties = {
+        "taskstore.engine=sharded",
+        "application.shards.count=3",
+        "application.search.stream-chunk-size=2",
+        "application.search.max-bound-ids=2"
+})
+public class TestServerShardedEngine extends TestServer {
+}
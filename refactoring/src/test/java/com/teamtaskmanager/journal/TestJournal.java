@@ -0,0 +1,109 @@
+package com.teamtaskmanager.journal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+public class TestJournal {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<Long> snapshot = new ArrayList<>();
+
+    private final List<Long> replayed = new ArrayList<>();
+
+    @Test
+    public void recordsAreReplayedAfterClosing() throws IOException {
+        Journal journal = open();
+        for (long i = 0; i != 1000; i++) {
+            append(journal, i);
+        }
+        journal.awaitDurable();
+        journal.close();
+
+        Journal reopened = open();
+        assertEquals(1000, replayed.size());
+        assertEquals(Long.valueOf(999), replayed.get(999));
+        assertEquals(1000, reopened.getRecordsReplayed());
+
+        append(reopened, 1000);
+        reopened.close();
+        open().close();
+        assertEquals(Long.valueOf(1000), replayed.get(replayed.size() - 1));
+    }
+
+    @Test
+    public void tornRecordEndsTheJournal() throws IOException {
+        Journal journal = open();
+        append(journal, 1);
+        append(journal, 2);
+        journal.close();
+
+        // flip a byte of the second record, as though the crash came part way through writing it
+        try (RandomAccessFile segment = new RandomAccessFile(files("segment").get(0).toFile(), "rw")) {
+            segment.seek(8 + 9 + 6);
+            segment.write(0xff);
+        }
+
+        Journal recovered = open();
+        assertEquals(asList(1L), replayed);
+        append(recovered, 3);
+        recovered.close();
+
+        replayed.clear();
+        open().close();
+        assertEquals(asList(1L, 3L), replayed);
+    }
+
+    @Test
+    public void snapshotReplacesTheJournalBeforeIt() throws IOException {
+        Journal journal = open();
+        for (long i = 0; i != 1000; i++) {
+            append(journal, i);
+        }
+        assertEquals(true, files("segment").size() > 1);
+
+        journal.snapshot(out -> out.writeLong(999));
+        append(journal, 1000);
+        journal.close();
+
+        assertEquals(1, files("segment").size());
+        assertEquals(1, files("snapshot").size());
+
+        open().close();
+        assertEquals(asList(999L), snapshot);
+        assertEquals(asList(1000L), replayed);
+    }
+
+    private Journal open() throws IOException {
+        Journal journal = new Journal(folder.getRoot().toPath(), SEGMENT_SIZE, true, 10);
+        journal.recover(in -> snapshot.add(in.readLong()), (type, in) -> replayed.add(in.readLong()));
+        return journal;
+    }
+
+    private void append(Journal journal, long value) throws IOException {
+        journal.append((byte) 1, out -> out.writeLong(value));
+    }
+
+    private List<Path> files(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            return files.filter(file -> file.getFileName().toString().startsWith(prefix)).collect(Collectors.toList());
+        }
+    }
+
+}
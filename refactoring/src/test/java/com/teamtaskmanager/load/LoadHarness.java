@@ -0,0 +1,271 @@
+package com.teamtaskmanager.load;
+
+import com.mashape.unirest.http.HttpResponse;
+import com.mashape.unirest.http.Unirest;
+import com.mashape.unirest.http.exceptions.UnirestException;
+import com.teamtaskmanager.Server;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Starts the server, seeds it with tasks, and drives a mixed workload against it from many concurrent clients,
+ * reporting throughput and latency percentiles per endpoint.
+ * <p>
+ * Requests are issued open loop, at a fixed rate whatever the response times, and each latency is measured from
+ * when its request was due to be sent - so a stall shows up in the percentiles rather than just slowing the load.
+ * <p>
+ * Not a test - run the main method, configured with system properties:
+ * <ul>
+ * <li>load.rate - requests per second, default 200</li>
+ * <li>load.duration - seconds to measure for, default 30, after load.warmup seconds, default 5</li>
+ * <li>load.clients - concurrent connections, default 64</li>
+ * <li>load.tasks, load.users - the size of the seeded dataset, default 10000 tasks over 100 users</li>
+ * <li>load.output - where the full percentile distribution of each endpoint is written, default build/reports/load</li>
+ * <li>load.budget - optional, e.g. "GET /tasks/{id}:p99=20,GET /tasks:p999=500" - exit with a failure if any of
+ * these latencies, in milliseconds, is exceeded</li>
+ * </ul>
+ */
+public class LoadHarness {
+
+    private static final int PORT = Integer.getInteger("load.port", 9092);
+
+    private static final String HOST = "http://localhost:" + PORT;
+
+    private static final String[] SORTS = {null, "id:desc", "due", "due:desc", "user", "user,due:desc", "task"};
+
+    private final Map<String, ConcurrentHistogram> latencies = new LinkedHashMap<>();
+
+    private final Map<String, AtomicLong> errors = new LinkedHashMap<>();
+
+    private final List<Long> ids = new ArrayList<>();
+
+    private final int users;
+
+    private volatile boolean isRecording;
+
+    private LoadHarness(int users) {
+        this.users = users;
+        for (String endpoint : new String[]{"POST /tasks", "GET /tasks/{id}", "PUT /tasks/{id}/complete", "DELETE /tasks/{id}", "GET /tasks", "GET /users"}) {
+            latencies.put(endpoint, new ConcurrentHistogram(3));
+            errors.put(endpoint, new AtomicLong());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rate = Integer.getInteger("load.rate", 200);
+        int warmup = Integer.getInteger("load.warmup", 5);
+        int duration = Integer.getInteger("load.duration", 30);
+        int clients = Integer.getInteger("load.clients", 64);
+        int tasks = Integer.getInteger("load.tasks", 10000);
+        int users = Integer.getInteger("load.users", 100);
+
+        ConfigurableApplicationContext server = SpringApplication.run(Server.class, "--server.port=" + PORT, "--logging.level.root=WARN");
+        Unirest.setConcurrency(clients, clients);
+        boolean isWithinBudget;
+        try {
+            LoadHarness harness = new LoadHarness(users);
+            harness.seed(tasks);
+
+            System.out.printf("Seeded %d tasks over %d users, running at %d requests/s from %d clients%n", tasks, users, rate, clients);
+            harness.run(rate, clients, warmup, false);
+            harness.run(rate, clients, duration, true);
+
+            harness.report(duration, new File(System.getProperty("load.output", "build/reports/load")));
+            isWithinBudget = harness.checkBudget(System.getProperty("load.budget"));
+        } finally {
+            Unirest.shutdown();
+            server.close();
+        }
+        System.exit(isWithinBudget ? 0 : 1);
+    }
+
+    private void seed(int tasks) throws UnirestException {
+        for (int from = 0; from < tasks; from += 1000) {
+            JSONArray batch = new JSONArray();
+            for (int i = from; i != Math.min(tasks, from + 1000); i++) {
+                batch.put(task(i));
+            }
+            JSONArray results = Unirest.post(HOST + "/tasks/batch").body(batch.toString()).asJson().getBody().getArray();
+            for (int i = 0; i != results.length(); i++) {
+                ids.add(results.getJSONObject(i).getLong("id"));
+            }
+        }
+    }
+
+    /**
+     * Issues requests at a fixed rate for the given time, then waits for the outstanding ones to finish
+     */
+    private void run(int rate, int clients, int seconds, boolean isRecording) throws InterruptedException {
+        this.isRecording = isRecording;
+        ExecutorService workers = Executors.newFixedThreadPool(clients);
+
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        for (long due = start; due < end; due += interval) {
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            long intended = due;
+            workers.execute(() -> request(intended));
+        }
+
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Sends one request, chosen at random by the weights of the mix, and records its latency from when it was due
+     */
+    private void request(long intended) {
+        int pick = ThreadLocalRandom.current().nextInt(100);
+        String endpoint;
+        int status;
+        try {
+            if (pick < 10) {
+                endpoint = "POST /tasks";
+                HttpResponse<String> response = Unirest.post(HOST + "/tasks").body(task(ThreadLocalRandom.current().nextInt()).toString()).asString();
+                status = response.getStatus();
+                if (status == 200) {
+                    String location = response.getHeaders().getFirst("Location");
+                    addId(Long.valueOf(location.substring(location.lastIndexOf('/') + 1)));
+                }
+            } else if (pick < 40) {
+                endpoint = "GET /tasks/{id}";
+                status = Unirest.get(HOST + "/tasks/" + randomId()).asString().getStatus();
+            } else if (pick < 50) {
+                endpoint = "PUT /tasks/{id}/complete";
+                status = Unirest.put(HOST + "/tasks/" + randomId() + "/complete").asString().getStatus();
+            } else if (pick < 55) {
+                endpoint = "DELETE /tasks/{id}";
+                status = Unirest.delete(HOST + "/tasks/" + removeRandomId()).asString().getStatus();
+            } else if (pick < 90) {
+                endpoint = "GET /tasks";
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                Map<String, Object> query = new LinkedHashMap<>();
+                if (random.nextBoolean()) {
+                    query.put("user", "user" + random.nextInt(users));
+                }
+                if (random.nextBoolean()) {
+                    query.put("dateAfter", "2525-0" + (1 + random.nextInt(9)) + "-15");
+                }
+                String sortBy = SORTS[random.nextInt(SORTS.length)];
+                if (null != sortBy) {
+                    query.put("sortBy", sortBy);
+                }
+                query.put("includeCompleted", random.nextBoolean());
+                status = Unirest.get(HOST + "/tasks").queryString(query).asString().getStatus();
+            } else {
+                endpoint = "GET /users";
+                status = Unirest.get(HOST + "/users").asString().getStatus();
+            }
+        } catch (UnirestException e) {
+            endpoint = "GET /tasks";
+            status = -1;
+        }
+
+        if (isRecording) {
+            latencies.get(endpoint).recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intended));
+            // a concurrent delete can make any id request a 404, which isn't a server error
+            if (status != 200 && status != 404) {
+                errors.get(endpoint).incrementAndGet();
+            }
+        }
+    }
+
+    private void report(int seconds, File output) throws FileNotFoundException {
+        output.mkdirs();
+        System.out.printf("%n%-26s %9s %9s %9s %9s %9s %9s %9s %7s%n", "endpoint", "req/s", "p50 ms", "p95 ms", "p99 ms", "p999 ms", "max ms", "count", "errors");
+        for (Map.Entry<String, ConcurrentHistogram> entry : latencies.entrySet()) {
+            Histogram histogram = entry.getValue();
+            System.out.printf("%-26s %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f %9d %7d%n",
+                    entry.getKey(),
+                    histogram.getTotalCount() / (double) seconds,
+                    millis(histogram, 50), millis(histogram, 95), millis(histogram, 99), millis(histogram, 99.9),
+                    histogram.getMaxValue() / 1000.0,
+                    histogram.getTotalCount(),
+                    errors.get(entry.getKey()).get());
+
+            String fileName = entry.getKey().replaceAll("[^A-Za-z]+", "_") + ".hgrm";
+            try (PrintStream out = new PrintStream(new File(output, fileName))) {
+                histogram.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+        System.out.println("\nFull percentile distributions, in ms, are in " + output.getAbsolutePath());
+    }
+
+    /**
+     * @param budget optional - comma separated endpoint:pNN=ms
+     * @return whether every latency in the budget was met
+     */
+    private boolean checkBudget(String budget) {
+        if (null == budget) {
+            return true;
+        }
+        boolean isWithinBudget = true;
+        for (String limit : budget.split(",")) {
+            String endpoint = limit.substring(0, limit.lastIndexOf(':')).trim();
+            String[] percentileAndMillis = limit.substring(limit.lastIndexOf(':') + 1).split("=");
+            double percentile = Double.parseDouble(percentileAndMillis[0].trim().substring(1).replaceFirst("^99(9+)$", "99.$1"));
+            double allowed = Double.parseDouble(percentileAndMillis[1].trim());
+
+            double observed = millis(latencies.get(endpoint), percentile);
+            if (observed > allowed) {
+                System.out.printf("OVER BUDGET: %s p%s was %.2f ms, budget %.2f ms%n", endpoint, percentileAndMillis[0].trim().substring(1), observed, allowed);
+                isWithinBudget = false;
+            }
+        }
+        return isWithinBudget;
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private synchronized void addId(Long id) {
+        ids.add(id);
+    }
+
+    private synchronized Long randomId() {
+        return ids.isEmpty() ? -1L : ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+
+    private synchronized Long removeRandomId() {
+        if (ids.isEmpty()) {
+            return -1L;
+        }
+        int index = ThreadLocalRandom.current().nextInt(ids.size());
+        Long id = ids.get(index);
+        ids.set(index, ids.get(ids.size() - 1));
+        ids.remove(ids.size() - 1);
+        return id;
+    }
+
+    private JSONObject task(int i) {
+        return new JSONObject()
+                .put("user", "user" + Math.floorMod(i, users))
+                .put("task", "task " + i)
+                .put("due", "2525-0" + (1 + Math.floorMod(i, 9)) + "-" + (10 + Math.floorMod(i, 18)));
+    }
+
+}
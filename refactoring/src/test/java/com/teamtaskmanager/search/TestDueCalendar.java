@@ -0,0 +1,97 @@
+package com.teamtaskmanager.search;
+
+import com.teamtaskmanager.model.Task;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TestDueCalendar {
+
+    private static final LocalDate TODAY = LocalDate.of(2525, 8, 26);
+
+    private final MovableClock clock = new MovableClock();
+
+    // a short wheel, so tasks also have to move onto it from further off
+    private final DueCalendar calendar = new DueCalendar(7, new SimpleMeterRegistry(), clock);
+
+    /**
+     * Tasks are found by their due day whether that is overdue, on the wheel or beyond it, and only while open
+     */
+    @Test
+    public void findsOpenTasksByDueDay() {
+        calendar.created(task(1, TODAY.minusDays(2), false));
+        calendar.created(task(2, TODAY, false));
+        calendar.created(task(3, TODAY.plusDays(3), false));
+        calendar.created(task(4, TODAY.plusDays(30), false));
+        calendar.created(task(5, TODAY.plusDays(3), true));
+        Task completed = task(6, TODAY.plusDays(1), false);
+        calendar.created(completed);
+        completed.isCompleted = true;
+        calendar.completed(completed);
+
+        assertArrayEquals(new long[]{1}, calendar.overdue());
+        assertArrayEquals(new long[]{2, 3}, calendar.dueWithin(3));
+        assertArrayEquals(new long[]{1, 2, 3, 4}, calendar.dueBetween(TODAY.minusDays(5), TODAY.plusDays(40)));
+        assertEquals(1, calendar.getOverdueCount());
+    }
+
+    /**
+     * When the day changes, the tasks of the days gone by become overdue and those further off reach the wheel
+     */
+    @Test
+    public void sweepMovesTheDaysOn() {
+        for (long id = 1; id <= 20; id++) {
+            calendar.created(task(id, TODAY.plusDays(id % 10), false));
+        }
+        calendar.deleted(task(7, TODAY.plusDays(7), false));
+
+        clock.today = TODAY.plusDays(3);
+        calendar.sweep();
+
+        assertArrayEquals(new long[]{1, 2, 10, 11, 12, 20}, calendar.overdue());
+        assertEquals(6, calendar.getOverdueCount());
+        assertArrayEquals(new long[]{3, 4, 5, 6, 8, 9, 13, 14, 15, 16, 17, 18, 19}, calendar.dueWithin(6));
+        assertArrayEquals(new long[]{9, 19}, calendar.dueBetween(TODAY.plusDays(9), TODAY.plusDays(9)));
+
+        calendar.completed(task(12, TODAY.plusDays(2), true));
+        assertEquals(5, calendar.getOverdueCount());
+    }
+
+    private static Task task(long id, LocalDate due, boolean isCompleted) {
+        Task task = new Task(1L, "task " + id, due, isCompleted);
+        task.id = id;
+        return task;
+    }
+
+    private static class MovableClock extends Clock {
+
+        LocalDate today = TODAY;
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return today.atStartOfDay(ZoneOffset.UTC).toInstant();
+        }
+
+    }
+
+}
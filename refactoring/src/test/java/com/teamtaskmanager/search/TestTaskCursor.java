@@ -0,0 +1,48 @@
+package com.teamtaskmanager.search;
+
+import com.teamtaskmanager.dto.TaskDTO;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestTaskCursor {
+
+    /**
+     * Sort key values longer than writeUTF allows survive the round trip
+     */
+    @Test
+    public void longValuesRoundTrip() {
+        TaskSort sort = TaskSort.parse("task");
+        char[] text = new char[100_000];
+        Arrays.fill(text, 'é');
+        TaskDTO last = task(7L, "2525-08-26", new String(text));
+
+        TaskCursor cursor = TaskCursor.decode(TaskCursor.after(sort, last).encode(), sort);
+
+        assertEquals(new String(text), cursor.getValues().get(0));
+    }
+
+    /**
+     * A well formed cursor whose value doesn't fit its key is rejected when it is decoded
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void badValueIsRejected() {
+        TaskSort sort = TaskSort.parse("due");
+        String token = TaskCursor.after(sort, task(7L, "not a date", "t1")).encode();
+
+        TaskCursor.decode(token, sort);
+    }
+
+    private static TaskDTO task(Long id, String due, String text) {
+        TaskDTO task = new TaskDTO();
+        task.id = id;
+        task.user = "Arch";
+        task.due = due;
+        task.task = text;
+        return task;
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.teamtaskmanager.search;
+
+import com.teamtaskmanager.model.Task;
+import com.teamtaskmanager.shards.Shards;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class TestTaskTextIndex {
+
+    private final TaskTextIndex index = new TaskTextIndex();
+
+    /**
+     * Tasks created at the same time reach the index out of order, and must still come back in order
+     */
+    @Test
+    public void tasksAddedOutOfOrderAreFoundInOrder() {
+        for (long id = 1000; id >= 1; id -= 2) {
+            index.created(task(id, "even " + (id % 7)));
+        }
+        for (long id = 1; id <= 1000; id += 2) {
+            index.created(task(id, "odd " + (id % 7)));
+        }
+
+        assertArrayEquals(LongStream.rangeClosed(1, 1000).filter(id -> id % 2 == 0).toArray(), search("even"));
+        assertArrayEquals(LongStream.rangeClosed(1, 1000).filter(id -> id % 7 == 3).toArray(), search("3"));
+        assertArrayEquals(LongStream.rangeClosed(1, 1000).filter(id -> id % 2 == 1 && id % 7 == 3).toArray(), search("\"odd 3\""));
+    }
+
+    /**
+     * The sharded engine's ids are the shard in the top bits, so tasks created on several shards at once reach the
+     * index interleaved - each shard's ids must append to its own segment, rather than rewrite the list after them
+     */
+    @Test(timeout = 5000)
+    public void interleavedShardIdsAreFoundInOrder() {
+        int shards = 4;
+        int perShard = 10000;
+        for (long seq = 1; seq <= perShard; seq++) {
+            for (int shard = 0; shard != shards; shard++) {
+                long id = Shards.firstId(shard) + seq;
+                index.created(task(id, "common " + (seq % 100 == 0 ? "rare" : "other")));
+            }
+        }
+
+        long[] all = LongStream.range(0, shards).flatMap(shard -> LongStream.rangeClosed(1, perShard).map(seq -> Shards.firstId((int) shard) + seq)).toArray();
+        assertArrayEquals(all, search("common"));
+        assertArrayEquals(Arrays.stream(all).filter(id -> (id & 0xFFFF_FFFF_FFFFL) % 100 == 0).toArray(), search("rare common"));
+        assertArrayEquals(Arrays.stream(all).filter(id -> (id & 0xFFFF_FFFF_FFFFL) % 100 == 0).toArray(), search("\"common rare\""));
+    }
+
+    /**
+     * Skipping ahead through the blocks of a long list must land on the same tasks as reading every posting
+     */
+    @Test
+    public void rareWordsSkipThroughCommonOnes() {
+        for (long id = 1; id <= 100000; id++) {
+            index.created(task(id, id % 1000 == 0 ? "common rare" : "common"));
+        }
+
+        assertArrayEquals(LongStream.rangeClosed(1, 100).map(i -> i * 1000).toArray(), search("rare common"));
+        assertArrayEquals(LongStream.rangeClosed(1, 100).map(i -> i * 1000).toArray(), search("\"common rare\""));
+        assertArrayEquals(new long[0], search("\"rare common\""));
+    }
+
+    @Test
+    public void deletedTasksAreNotFound() {
+        for (long id = 1; id <= 100; id++) {
+            index.created(task(id, "word" + id % 3 + " other"));
+        }
+        for (long id = 1; id <= 100; id += 2) {
+            index.deleted(task(id, "word" + id % 3 + " other"));
+        }
+
+        assertArrayEquals(LongStream.rangeClosed(1, 100).filter(id -> id % 2 == 0).toArray(), search("other"));
+        assertArrayEquals(LongStream.rangeClosed(1, 100).filter(id -> id % 2 == 0 && id % 3 == 0).toArray(), search("word0* other"));
+
+        index.cleared();
+        assertArrayEquals(new long[0], search("other"));
+    }
+
+    private long[] search(String q) {
+        return index.search(TextQuery.parse(q));
+    }
+
+    private static Task task(long id, String text) {
+        Task task = new Task(1L, text, LocalDate.of(2525, 8, 26), false);
+        task.id = id;
+        return task;
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.teamtaskmanager.service;
+
+import com.teamtaskmanager.bulkhead.BulkheadFullException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestCoalescer {
+
+    private final List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+
+    private Coalescer<Integer, String> coalescer;
+
+    @After
+    public void teardown() throws InterruptedException {
+        coalescer.shutdown();
+    }
+
+    /**
+     * Requests within the window are answered by one call, each with its own answer
+     */
+    @Test
+    public void requestsTogetherShareACall() throws Exception {
+        coalescer = new Coalescer<>("test", 200, 100, 100, this::answer);
+
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i != 10; i++) {
+            results.add(coalescer.submit(i));
+        }
+
+        for (int i = 0; i != 10; i++) {
+            assertEquals("Wrong answer", i % 3 == 0 ? null : "answer " + i, results.get(i).get());
+        }
+        assertEquals("Requests weren't coalesced", 1, batches.size());
+    }
+
+    /**
+     * A full batch is called without waiting out the window
+     */
+    @Test
+    public void fullBatchesDontWait() throws Exception {
+        coalescer = new Coalescer<>("test", 60000, 4, 100, this::answer);
+
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i != 8; i++) {
+            results.add(coalescer.submit(i));
+        }
+
+        assertEquals("answer 7", results.get(7).get());
+        assertEquals("Wrong batches", 2, batches.size());
+        assertEquals("Wrong batch size", 4, batches.get(0).size());
+    }
+
+    /**
+     * If the call fails, every request in the batch fails with it
+     */
+    @Test
+    public void failuresReachEveryRequest() throws Exception {
+        coalescer = new Coalescer<>("test", 100, 100, 100, keys -> {
+            throw new IllegalStateException("failed");
+        });
+
+        CompletableFuture<String> first = coalescer.submit(1);
+        CompletableFuture<String> second = coalescer.submit(2);
+        for (CompletableFuture<String> result : asList(first, second)) {
+            try {
+                result.get();
+                fail("Should have failed");
+            } catch (ExecutionException e) {
+                assertTrue("Wrong failure", e.getCause() instanceof IllegalStateException);
+            }
+        }
+    }
+
+    /**
+     * Requests beyond the queue depth are turned away rather than queued
+     */
+    @Test
+    public void fullQueueTurnsRequestsAway() throws Exception {
+        CountDownLatch called = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        coalescer = new Coalescer<>("test", 60000, 1, 1, keys -> {
+            called.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return answer(keys);
+        });
+
+        CompletableFuture<String> calling = coalescer.submit(1);
+        called.await();
+        CompletableFuture<String> queued = coalescer.submit(2);
+        try {
+            coalescer.submit(3);
+            fail("Should have been turned away");
+        } catch (BulkheadFullException e) {
+            // expected
+        }
+
+        release.countDown();
+        assertEquals("answer 1", calling.get());
+        assertEquals("answer 2", queued.get());
+    }
+
+    private Map<Integer, String> answer(List<Integer> keys) {
+        batches.add(keys);
+        Map<Integer, String> answers = new HashMap<>();
+        for (Integer key : keys) {
+            if (key % 3 != 0) {
+                answers.put(key, "answer " + key);
+            }
+        }
+        return answers;
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.teamtaskmanager.service;
+
+import com.teamtaskmanager.model.Task;
+import com.teamtaskmanager.repositories.MemoryTaskRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestTaskCounts {
+
+    private final MemoryTaskRepository store = new MemoryTaskRepository();
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final TaskCounts counts = new TaskCounts(store, registry, 1000);
+
+    /**
+     * Open tasks due before today are overdue, and stop being overdue once completed or deleted
+     */
+    @Test
+    public void openTasksDueBeforeTodayAreOverdue() {
+        LocalDate today = LocalDate.now();
+        Task late = givenTask(1L, today.minusDays(3), false);
+        Task lateToo = givenTask(2L, today.minusDays(1), false);
+        givenTask(1L, today, false);
+        givenTask(2L, today.minusDays(2), true);
+
+        assertEquals(2, counts.get(null).overdue);
+        assertEquals(1, counts.get(1L).overdue);
+
+        counts.completed(store.complete(late.id));
+        store.remove(lateToo);
+        counts.deleted(lateToo);
+
+        TaskCounts.Totals totals = counts.get(null);
+        assertEquals(0, totals.overdue);
+        assertEquals(1, totals.open);
+        assertEquals(2, totals.completed);
+        assertEquals(Long.valueOf(3), totals.byDueMonth.values().stream().reduce(0L, Long::sum));
+        assertEquals(Long.valueOf(2), totals.byUserId.get(1L));
+        assertEquals(Long.valueOf(1), totals.byUserId.get(2L));
+        assertEquals(0, counts.get(3L).open);
+    }
+
+    /**
+     * Reconciling leaves counts that match the store alone, and replaces ones that have drifted from it
+     */
+    @Test
+    public void reconcileReplacesCountsThatDrifted() {
+        LocalDate due = LocalDate.of(2525, 8, 26);
+        givenTask(1L, due, false);
+        givenTask(2L, due, true);
+        assertFalse("Counts drifted", counts.reconcile());
+
+        // a task the counts never heard of
+        store.persist(new Task(3L, "missed", due, false));
+        assertTrue("Drift not found", counts.reconcile());
+
+        TaskCounts.Totals totals = counts.get(null);
+        assertEquals(2, totals.open);
+        assertEquals(Long.valueOf(3), totals.byDueMonth.get(YearMonth.of(2525, 8)));
+        assertEquals(Long.valueOf(1), totals.byUserId.get(3L));
+        assertEquals(1.0, registry.counter("taskmanager.stats.reconciliations", "result", "drift").count(), 0);
+    }
+
+    private Task givenTask(Long userId, LocalDate due, boolean isCompleted) {
+        Task task = new Task(userId, "task", due, isCompleted);
+        store.persist(task);
+        counts.created(task);
+        return task;
+    }
+
+}
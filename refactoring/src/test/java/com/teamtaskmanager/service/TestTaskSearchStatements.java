@@ -0,0 +1,112 @@
+package com.teamtaskmanager.service;
+
+import com.teamtaskmanager.Server;
+import com.teamtaskmanager.dto.TaskDTO;
+import com.teamtaskmanager.search.TaskSort;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Counts the SQL statements issued by a search, to make sure mapping tasks to DTOs doesn't go back to the
+ * database once per task
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Server.class, webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class TestTaskSearchStatements {
+
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserNameCache userNameCache;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @Before
+    public void setup() throws IOException {
+        taskService.clear();
+        userService.clear();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    /**
+     * A search over many tasks for many users should be one query of the views, which hold the user names
+     */
+    @Test
+    public void searchReadsOnlyViews() {
+        for (int i = 0; i != 50; i++) {
+            givenTaskCreated("user" + (i % 10), "t" + i, "2525-08-26");
+        }
+        userNameCache.clear();
+        statistics.clear();
+
+        List<TaskDTO> result = taskService.search(null, null, null, null, null, null, TaskSort.parse("user"), true);
+
+        assertEquals("Wrong number of results", 50, result.size());
+        assertEquals("Wrong user name", "user0", result.get(0).user);
+        assertEquals("Too many statements for a search", 1, statistics.getPrepareStatementCount());
+        assertEquals("Tasks were loaded", 0, statistics.getEntityStatistics("com.teamtaskmanager.model.Task").getLoadCount());
+        assertEquals("Users were loaded", 0, statistics.getEntityStatistics("com.teamtaskmanager.model.User").getLoadCount());
+    }
+
+    /**
+     * Once the user names are cached a search should be a single query
+     */
+    @Test
+    public void searchUsesCachedUserNames() {
+        for (int i = 0; i != 50; i++) {
+            givenTaskCreated("user" + (i % 10), "t" + i, "2525-08-26");
+        }
+        taskService.search(null, null, null, null, null, null, TaskSort.DEFAULT, true);
+        statistics.clear();
+
+        List<TaskDTO> result = taskService.search("user3", null, null, null, null, null, TaskSort.DEFAULT, true);
+
+        assertEquals("Wrong number of results", 5, result.size());
+        assertEquals("Too many statements for a search", 1, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * A search for a user that doesn't exist shouldn't query the task table at all
+     */
+    @Test
+    public void searchForUnknownUserSkipsTasks() {
+        givenTaskCreated("user0", "t0", "2525-08-26");
+        statistics.clear();
+
+        List<TaskDTO> result = taskService.search("nobody", null, null, null, null, null, TaskSort.DEFAULT, true);
+
+        assertEquals("Wrong number of results", 0, result.size());
+        assertEquals("Wrong number of statements", 1, statistics.getPrepareStatementCount());
+        assertEquals("Tasks were loaded", 0, statistics.getEntityStatistics("com.teamtaskmanager.model.Task").getLoadCount());
+    }
+
+    private void givenTaskCreated(String user, String task, String due) {
+        TaskDTO dto = new TaskDTO();
+        dto.user = user;
+        dto.task = task;
+        dto.due = due;
+        taskService.createTask(dto);
+    }
+
+}